@@ -0,0 +1,135 @@
+package com.webonise.tomcat8.redisession;
+
+import java.util.*;
+
+/**
+ * A histogram of how long sessions were alive for, kept in a single Redis hash (see
+ * {@link Convention#SESSION_ALIVE_TIME_HISTOGRAM_KEY}). Alive times are recorded once, when a session is invalidated,
+ * into buckets whose bounds double in size: bucket {@code i} holds alive times (in seconds) of at least
+ * {@code 2^(i-1)} and less than {@code 2^i}, and bucket 0 holds alive times under a second. Alongside the buckets,
+ * the hash holds the count, sum and maximum of the recorded alive times, so that the maximum and average are exact;
+ * percentiles are accurate to within a factor of two.
+ * <p>
+ * Instances are immutable snapshots of the hash.
+ */
+public class AliveTimeHistogram {
+
+  /**
+   * The field within the histogram hash holding the number of recorded alive times.
+   */
+  public static final String COUNT_FIELD = "count";
+
+  /**
+   * The field within the histogram hash holding the sum of the recorded alive times, in seconds.
+   */
+  public static final String SUM_FIELD = "sum";
+
+  /**
+   * The field within the histogram hash holding the greatest recorded alive time, in seconds.
+   */
+  public static final String MAX_FIELD = "max";
+
+  private static final String BUCKET_FIELD_PREFIX = "bucket:";
+
+  private final long count;
+  private final long sum;
+  private final long max;
+  private final long[] buckets = new long[Long.SIZE + 1];
+
+  /**
+   * Constructor.
+   *
+   * @param hash The contents of the histogram hash; never {@code null}, but may be empty.
+   */
+  public AliveTimeHistogram(Map<String, String> hash) {
+    Objects.requireNonNull(hash, "contents of the histogram hash");
+    this.count = parseLong(hash.get(COUNT_FIELD));
+    this.sum = parseLong(hash.get(SUM_FIELD));
+    this.max = parseLong(hash.get(MAX_FIELD));
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = parseLong(hash.get(bucketField(i)));
+    }
+  }
+
+  private static long parseLong(String value) {
+    if (value == null || value.isEmpty()) return 0L;
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException nfe) {
+      return 0L;
+    }
+  }
+
+  /**
+   * Provides the index of the bucket that an alive time belongs in.
+   *
+   * @param aliveTimeSeconds The alive time, in seconds; negative values are treated as zero.
+   * @return The index of the bucket.
+   */
+  public static int bucketIndex(long aliveTimeSeconds) {
+    return Long.SIZE - Long.numberOfLeadingZeros(Math.max(0L, aliveTimeSeconds));
+  }
+
+  /**
+   * Provides the field within the histogram hash holding the given bucket.
+   *
+   * @param bucketIndex The index of the bucket.
+   * @return The field; never {@code null}.
+   */
+  public static String bucketField(int bucketIndex) {
+    return BUCKET_FIELD_PREFIX + bucketIndex;
+  }
+
+  /**
+   * Provides the greatest alive time that belongs in the given bucket.
+   */
+  private static long bucketUpperBound(int bucketIndex) {
+    if (bucketIndex >= Long.SIZE - 1) return Long.MAX_VALUE;
+    return (1L << bucketIndex) - 1L;
+  }
+
+  /**
+   * The number of recorded alive times.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * The longest recorded alive time, in seconds.
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * The average recorded alive time, in seconds; 0 if nothing has been recorded.
+   */
+  public long getAverage() {
+    if (count <= 0) return 0L;
+    return sum / count;
+  }
+
+  /**
+   * Estimates the alive time (in seconds) that the given fraction of the recorded alive times are at or below. The
+   * estimate is the upper bound of the bucket containing the percentile, capped at the maximum.
+   *
+   * @param fraction The percentile as a fraction, such as {@code 0.99}; must be within {@code [0, 1]}.
+   * @return The estimated alive time, in seconds; 0 if nothing has been recorded.
+   */
+  public long getPercentile(double fraction) {
+    if (fraction < 0 || fraction > 1) {
+      throw new IllegalArgumentException("Percentile must be a fraction between 0 and 1; was " + fraction);
+    }
+    long total = Arrays.stream(buckets).sum();
+    if (total <= 0) return 0L;
+    long rank = Math.max(1L, (long) Math.ceil(fraction * total));
+    long seen = 0L;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= rank) return Math.min(bucketUpperBound(i), max);
+    }
+    return max;
+  }
+
+}
@@ -0,0 +1,170 @@
+package com.webonise.tomcat8.redisession;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Learns which session attributes are read by requests for each request URI pattern, so that
+ * {@link RedisSessionManager} can fetch them all in one round trip the next time a request matches the same pattern.
+ * The prediction for a pattern is the set of attributes read by the most recent request which matched it, so it
+ * adapts as the application changes.
+ * <p>
+ * A URI pattern is the request URI with any path parameters removed, and with every path segment that contains a
+ * digit replaced by {@code *}, so that {@code /orders/1234/items} and {@code /orders/5678/items} share a pattern.
+ * At most {@link #getMaxPatterns()} patterns are remembered; the least recently used are forgotten first.
+ * <p>
+ * This class is thread safe.
+ */
+public class AttributePrefetcher {
+
+  /**
+   * What is known about the request in progress on a thread.
+   */
+  public static class RequestContext {
+
+    private final String pattern;
+    private final Set<String> predicted;
+    private final Set<String> read = new HashSet<>();
+
+    private RequestContext(String pattern, Set<String> predicted) {
+      this.pattern = pattern;
+      this.predicted = predicted;
+    }
+
+    /**
+     * The URI pattern of the request; never {@code null}.
+     */
+    public String getPattern() {
+      return pattern;
+    }
+
+    /**
+     * The names of the attributes the request is predicted to read; never {@code null}, but possibly empty.
+     */
+    public Set<String> getPredicted() {
+      return predicted;
+    }
+  }
+
+  private final Map<String, Set<String>> predictions;
+  private final int maxPatterns;
+  private final AtomicLong hitCount = new AtomicLong(0L);
+  private final AtomicLong missCount = new AtomicLong(0L);
+
+  /**
+   * Constructor.
+   *
+   * @param maxPatterns The most URI patterns to remember; must be positive.
+   */
+  public AttributePrefetcher(int maxPatterns) {
+    if (maxPatterns <= 0) throw new IllegalArgumentException("Maximum patterns must be positive: " + maxPatterns);
+    this.maxPatterns = maxPatterns;
+    this.predictions = new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+        return size() > AttributePrefetcher.this.maxPatterns;
+      }
+    };
+  }
+
+  /**
+   * Provides the pattern that a request URI belongs to.
+   *
+   * @param requestUri The request URI; never {@code null}.
+   * @return The pattern; never {@code null}.
+   */
+  public static String toPattern(String requestUri) {
+    Objects.requireNonNull(requestUri, "request URI to derive the pattern from");
+    StringJoiner pattern = new StringJoiner("/");
+    for (String segment : requestUri.split("/", -1)) {
+      int parameters = segment.indexOf(';');
+      if (parameters >= 0) segment = segment.substring(0, parameters);
+      pattern.add(segment.chars().anyMatch(Character::isDigit) ? "*" : segment);
+    }
+    return pattern.toString();
+  }
+
+  /**
+   * Starts tracking a request.
+   *
+   * @param requestUri The request URI; never {@code null}.
+   * @return The context of the request, holding what it is predicted to read; never {@code null}.
+   */
+  public RequestContext beginRequest(String requestUri) {
+    String pattern = toPattern(requestUri);
+    Set<String> predicted;
+    synchronized (predictions) {
+      predicted = predictions.getOrDefault(pattern, Collections.emptySet());
+    }
+    return new RequestContext(pattern, predicted);
+  }
+
+  /**
+   * Records that the request read an attribute, counting it as a hit if it was predicted and a miss otherwise. Each
+   * attribute is only counted once per request.
+   *
+   * @param context The context of the request; never {@code null}.
+   * @param name    The name of the attribute; never {@code null}.
+   */
+  public void recordRead(RequestContext context, String name) {
+    Objects.requireNonNull(context, "context of the request");
+    Objects.requireNonNull(name, "name of the attribute read");
+    synchronized (context) {
+      if (!context.read.add(name)) return;
+    }
+    (context.predicted.contains(name) ? hitCount : missCount).incrementAndGet();
+  }
+
+  /**
+   * Finishes tracking a request, learning what it read as the prediction for its pattern.
+   *
+   * @param context The context of the request; never {@code null}.
+   */
+  public void endRequest(RequestContext context) {
+    Objects.requireNonNull(context, "context of the request");
+    Set<String> read;
+    synchronized (context) {
+      read = Collections.unmodifiableSet(new HashSet<>(context.read));
+    }
+    if (read.isEmpty() && context.predicted.isEmpty()) return;
+    synchronized (predictions) {
+      if (read.isEmpty()) {
+        predictions.remove(context.pattern);
+      } else {
+        predictions.put(context.pattern, read);
+      }
+    }
+  }
+
+  /**
+   * The most URI patterns which are remembered.
+   */
+  public int getMaxPatterns() {
+    return maxPatterns;
+  }
+
+  /**
+   * The number of URI patterns which currently have a prediction.
+   */
+  public int getPatternCount() {
+    synchronized (predictions) {
+      return predictions.size();
+    }
+  }
+
+  /**
+   * The number of distinct attributes read by requests which had been predicted, and so prefetched.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * The number of distinct attributes read by requests which had not been predicted. Unless the whole attributes hash
+   * was prefetched, each of these needed its own round trip.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+}
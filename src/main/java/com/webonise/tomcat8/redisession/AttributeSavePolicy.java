@@ -0,0 +1,84 @@
+package com.webonise.tomcat8.redisession;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.*;
+import java.util.*;
+
+/**
+ * Which session attributes {@link RedisSessionManager} writes back to Redis when a request completes. Attributes
+ * which were assigned with {@code setAttribute} or removed are always written; the policies differ in which
+ * attributes that were only retrieved with {@code getAttribute} are checked for changes made in place. Checking an
+ * attribute costs serializing it again, and it is written only if its serialized form has changed.
+ * <p>
+ * Retrieved attributes are only checked when the {@link RedisSessionValve} is configured; without it, every change
+ * is written as soon as it is made, and changes made in place to a retrieved value are not written.
+ */
+public enum AttributeSavePolicy {
+
+  /**
+   * Only write attributes which are assigned or removed. Changes made in place to a retrieved value are lost unless
+   * the value is assigned again.
+   */
+  SET_ONLY,
+
+  /**
+   * Also check retrieved attributes, except those whose value is of a type known to be immutable, such as strings,
+   * boxed primitives, enums, and {@code java.time} values.
+   */
+  SET_AND_MUTABLE_GET,
+
+  /**
+   * Check every retrieved attribute. This is the default.
+   */
+  ALWAYS;
+
+  private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(
+      String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+      Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class, URI.class, Locale.class,
+      Currency.class, Class.class, Instant.class, Duration.class, Period.class, LocalDate.class, LocalTime.class,
+      LocalDateTime.class, OffsetTime.class, OffsetDateTime.class, ZonedDateTime.class, Year.class, YearMonth.class,
+      MonthDay.class
+  ));
+
+  /**
+   * Whether a retrieved attribute value should be checked for changes when the request completes.
+   *
+   * @param value The retrieved value; may be {@code null}.
+   * @return {@code true} if the value should be checked.
+   */
+  public boolean isCheckedOnGet(Object value) {
+    switch (this) {
+      case SET_ONLY:
+        return false;
+      case SET_AND_MUTABLE_GET:
+        return !isImmutable(value);
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Whether the value is of a type known to be immutable.
+   *
+   * @param value The value; may be {@code null}.
+   * @return {@code true} if the value cannot be changed in place.
+   */
+  public static boolean isImmutable(Object value) {
+    if (value == null) return true;
+    return IMMUTABLE_TYPES.contains(value.getClass()) || value instanceof Enum || value instanceof ZoneId;
+  }
+
+  /**
+   * Parses the policy from its name, ignoring case.
+   *
+   * @param name The name of the policy; never {@code null}.
+   * @return The policy; never {@code null}.
+   * @throws IllegalArgumentException If there is no policy by that name.
+   */
+  public static AttributeSavePolicy fromString(String name) {
+    if (name == null) throw new IllegalArgumentException("Attribute save policy name may not be null");
+    return valueOf(name.trim().toUpperCase());
+  }
+}
@@ -1,9 +1,8 @@
 package com.webonise.tomcat8.redisession;
 
 
+import com.webonise.tomcat8.redisession.redisclient.TimestampFormat;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.time.DateFormatUtils;
-import org.apache.commons.lang3.time.FastDateFormat;
 
 import javax.servlet.http.HttpSession;
 import java.text.ParseException;
@@ -24,7 +23,9 @@ public class Convention {
   private static final String SESSION_PREFIX = "TOMCAT_SESSION" + KEY_DELIMITER;
   private static final String METADATA_SUFFIX = "" + KEY_DELIMITER + "metadata";
   private static final String ATTRIBUTES_SUFFIX = "" + KEY_DELIMITER + "attributes";
-  private static final FastDateFormat DATE_FORMAT = DateFormatUtils.ISO_DATE_TIME_ZONE_FORMAT;
+  private static final String CHUNKS_SUFFIX = "" + KEY_DELIMITER + "chunks";
+  private static final String SESSIONS_CREATED_BUCKET_PREFIX = "SESSIONS_CREATED_IN_MINUTE" + KEY_DELIMITER;
+  private static final String SESSIONS_EXPIRED_BUCKET_PREFIX = "SESSIONS_EXPIRED_IN_MINUTE" + KEY_DELIMITER;
 
   /**
    * The pattern for {@code SCAN} that will select session attribute keys.
@@ -61,6 +62,14 @@ public class Convention {
    */
   public static final String MAX_INACTIVE_INTERVAL_HKEY = "TTL";
 
+  /**
+   * The hash key storing the version of the session, which is incremented whenever the session is written other than
+   * to record an access. A session which has never been written has no version, which counts as version 0.
+   *
+   * @see SessionNearCache
+   */
+  public static final String VERSION_HKEY = "VERSION";
+
   /**
    * The hash key storing the string representation of when the session was expired.
    *
@@ -75,9 +84,9 @@ public class Convention {
   public static final String EXPIRED_SESSIONS_COUNT_KEY = "EXPIRED_SESSIONS";
 
   /**
-   * The key holding the maximum alive time of a given session, in {@code int} seconds
+   * The key holding the total number of sessions created.
    */
-  public static final String SESSION_MAX_ALIVE_TIME_KEY = "MAX_ALIVE_TIME";
+  public static final String SESSION_COUNTER_KEY = "SESSION_COUNTER";
 
   /**
    * The key holding the maximum active sessions.
@@ -90,20 +99,27 @@ public class Convention {
   public static final String ACTIVE_SESSIONS_COUNT_KEY = "CURRENT_ACTIVE";
 
   /**
-   * The key holding the average alive time (in seconds).
+   * The key holding the histogram of how long invalidated sessions were alive for.
+   *
+   * @see AliveTimeHistogram
    */
-  public static final String SESSION_AVERAGE_ALIVE_TIME_KEY = "AVERAGE_ALIVE_TIME";
-
+  public static final String SESSION_ALIVE_TIME_HISTOGRAM_KEY = "SESSION_ALIVE_TIME_HISTOGRAM";
 
   /**
-   * The key holding the create rate for sessions, in integer sessions/minute.
+   * The key holding the sorted set of session ids, scored by the moment (in milliseconds since the epoch) when the
+   * session expires.
+   *
+   * @see ExpirationStrategy#EXPIRY_INDEX
    */
-  public static final String SESSION_CREATE_RATE_KEY = "SESSION_CREATE_RATE";
+  public static final String SESSION_EXPIRY_INDEX_KEY = "SESSION_EXPIRY_INDEX";
 
   /**
-   * The key holdint the expiration rate for sessions, in integer sessions/minute.
+   * The pub/sub channel on which nodes announce that they have written or invalidated a session, so that the other
+   * nodes evict it from their near caches.
+   *
+   * @see SessionInvalidationSubscriber
    */
-  public static final String SESSION_EXPIRE_RATE_KEY = "SESSION_EXPIRE_RATE";
+  public static final String NEAR_CACHE_INVALIDATION_CHANNEL = "SESSION_INVALIDATIONS";
 
   /**
    * The container for all the functions that convert from a session id to a key where session data is stored.
@@ -112,7 +128,8 @@ public class Convention {
   private static final List<UnaryOperator<String>> SESSION_CONVERSION_FUNCTIONS =
       Arrays.asList(
                        Convention::sessionIdToAttributesKey,
-                       Convention::sessionIdToMetadataKey
+                       Convention::sessionIdToMetadataKey,
+                       Convention::sessionIdToChunksKey
       );// TODO We should derive this via reflection using annotations
 
   public static final String AUTH_TYPE_HKEY = "AUTH_TYPE";
@@ -150,18 +167,31 @@ public class Convention {
   }
 
   /**
-   * Provides the conventional {@code String} representation of the given {@code Date}.
+   * Provides the conventional {@code String} representation of the given {@code Date}, which is
+   * {@link TimestampFormat#ISO_8601}.
    *
    * @param date The date to convert; may not be {@code null}.
    * @return The {@code String} representation of the {@code Date}; never {@code null}.
    */
   public static String stringFromDate(Date date) {
+    return stringFromDate(date, TimestampFormat.ISO_8601);
+  }
+
+  /**
+   * Provides the {@code String} representation of the given {@code Date} in the given format.
+   *
+   * @param date   The date to convert; may not be {@code null}.
+   * @param format The format to write; may not be {@code null}.
+   * @return The {@code String} representation of the {@code Date}; never {@code null}.
+   */
+  public static String stringFromDate(Date date, TimestampFormat format) {
     Objects.requireNonNull(date, "date to write to string");
-    return DATE_FORMAT.format(date);
+    Objects.requireNonNull(format, "format to write the date in");
+    return format.format(date.getTime());
   }
 
   /**
-   * Provides the {@code Date} derived from a conventional {@code String} representation of dates.
+   * Provides the {@code Date} derived from a {@code String} representation of dates, in any {@link TimestampFormat}.
    *
    * @param dateString The date to convert; may not be {@code null}.
    * @return The date represented by the string.
@@ -170,16 +200,32 @@ public class Convention {
   public static Date dateFromString(String dateString) {
     Objects.requireNonNull(dateString, "date string to parse");
     try {
-      return DATE_FORMAT.parse(dateString);
+      return new Date(TimestampFormat.parse(dateString));
     } catch (ParseException pe) {
-      throw new IllegalArgumentException(
-                                            "Could not convert string to date: " + dateString +
-                                                " (format is: " + DATE_FORMAT.getPattern() + ")",
-                                            pe
-      );
+      throw new IllegalArgumentException("Could not convert string to date: " + dateString, pe);
     }
   }
 
+  /**
+   * Provides the key of the counter of sessions created within the given minute.
+   *
+   * @param epochMinute The minute, as the number of whole minutes since the epoch.
+   * @return The key of the counter; never {@code null}.
+   */
+  public static String sessionsCreatedBucketKey(long epochMinute) {
+    return SESSIONS_CREATED_BUCKET_PREFIX + epochMinute;
+  }
+
+  /**
+   * Provides the key of the counter of sessions expired within the given minute.
+   *
+   * @param epochMinute The minute, as the number of whole minutes since the epoch.
+   * @return The key of the counter; never {@code null}.
+   */
+  public static String sessionsExpiredBucketKey(long epochMinute) {
+    return SESSIONS_EXPIRED_BUCKET_PREFIX + epochMinute;
+  }
+
   /**
    * Provides the attributes key given a session id
    *
@@ -194,6 +240,20 @@ public class Convention {
     return SESSION_PREFIX + sessionid + ATTRIBUTES_SUFFIX;
   }
 
+  /**
+   * Provides the key of the hash holding the chunks of large attribute values, given a session id.
+   *
+   * @param sessionId The session id to convert; may not be {@code null} or empty.
+   * @return The key that should be used for the chunks of that session's attributes; never {@code null}.
+   */
+  public static String sessionIdToChunksKey(String sessionId) {
+    Objects.requireNonNull(sessionId, "session id to convert to chunks key");
+    if (sessionId.isEmpty()) {
+      throw new IllegalArgumentException("Cannot convert an empty session id to a chunks key");
+    }
+    return SESSION_PREFIX + sessionId + CHUNKS_SUFFIX;
+  }
+
   public static String metadataKeyToSessionId(String metadataKey) {
     Objects.requireNonNull(metadataKey, "metadata key to convert to session id");
     if (metadataKey.isEmpty()) {
@@ -206,6 +266,19 @@ public class Convention {
     return toReturn;
   }
 
+  /**
+   * Provides all the keys where data for the session is stored.
+   *
+   * @param sessionId The session id; may not be {@code null}.
+   * @return The keys for the session; never {@code null}.
+   */
+  public static List<String> getSessionKeys(String sessionId) {
+    Objects.requireNonNull(sessionId, "the session id whose keys are desired");
+    List<String> toReturn = new ArrayList<>(SESSION_CONVERSION_FUNCTIONS.size());
+    SESSION_CONVERSION_FUNCTIONS.forEach(keyMaker -> toReturn.add(keyMaker.apply(sessionId)));
+    return toReturn;
+  }
+
   /**
    * Provides all the mappings of keys necessary to change a session id from the first argument to the second.
    *
@@ -0,0 +1,40 @@
+package com.webonise.tomcat8.redisession;
+
+/**
+ * How {@link RedisSessionManager} discovers and removes expired sessions.
+ */
+public enum ExpirationStrategy {
+
+  /**
+   * Periodically {@code SCAN} the whole keyspace for sessions, and invalidate those whose last access time plus
+   * max inactive interval is in the past. This is the default.
+   */
+  SCAN,
+
+  /**
+   * Give the session keys a native Redis expiration ({@code PEXPIRE}) of the max inactive interval, refreshed
+   * whenever the session is accessed, and let Redis remove them. No periodic sweep is performed. Since Redis removes
+   * sessions without the manager seeing it, those sessions are not counted as expired and their alive times are not
+   * recorded.
+   */
+  NATIVE_TTL,
+
+  /**
+   * Maintain a sorted set of session ids scored by their expiration time, updated whenever the session is accessed.
+   * Each background process tick reaps a bounded number of the sessions which are due, so the cost scales with the
+   * number of sessions that are actually expiring rather than the size of the keyspace.
+   */
+  EXPIRY_INDEX;
+
+  /**
+   * Parses the strategy from its name, ignoring case.
+   *
+   * @param name The name of the strategy; never {@code null}.
+   * @return The strategy; never {@code null}.
+   * @throws IllegalArgumentException If there is no strategy by that name.
+   */
+  public static ExpirationStrategy fromString(String name) {
+    if (name == null) throw new IllegalArgumentException("Expiration strategy name may not be null");
+    return valueOf(name.trim().toUpperCase());
+  }
+}
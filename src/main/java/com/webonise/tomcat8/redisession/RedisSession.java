@@ -8,9 +8,11 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.function.*;
 
 /**
@@ -20,44 +22,287 @@ public class RedisSession extends StandardSession implements Session {
 
   private static final Log log = LogFactory.getLog(RedisSession.class);
 
+  /**
+   * The allowance made for everything other than attribute values by {@link #getEstimatedSize()}, in bytes.
+   */
+  protected static final long ESTIMATED_OVERHEAD = 1024L;
+
+  /**
+   * The version of a session whose version in Redis is not known.
+   */
+  public static final long UNKNOWN_VERSION = -1L;
+
   private volatile RedisHashBackedPropertySupport<String> authProperty;
   private volatile RedisHashBackedPropertySupport<Long> creationTimeProperty;
   private volatile RedisHashBackedPropertySupport<Long> thisAccessedTimeProperty;
   private volatile RedisHashBackedPropertySupport<Long> lastAccessedTimeProperty;
   private volatile RedisHashBackedPropertySupport<Integer> maxInactiveIntervalProperty;
   private volatile RedisHashBackedPropertySupport<Serializable> principalProperty;
-  private volatile Map<String, RedisHashBackedPropertySupport<Serializable>> attributesProperties;
+  private volatile Map<String, RedisBinaryHashBackedPropertySupport<Serializable>> attributesProperties;
+  private volatile Set<String> attributesCheckedOnGet;
+  private volatile boolean attributesBulkLoadAttempted;
+  private volatile boolean attributesBulkLoaded;
+  private volatile boolean attributesPrefetchAttempted;
   private volatile RedisHashBackedPropertySupport<Boolean> isValidProperty;
+  private final AtomicLong version = new AtomicLong(0L);
+  private volatile boolean touchStaged = false;
 
   public RedisSession(RedisSessionManager manager, String id) {
+    this(manager, id, manager.getMaxInactiveInterval());
+  }
+
+  /**
+   * Constructs a session whose metadata properties are fetched lazily.
+   *
+   * @param manager             The manager responsible for this session; never {@code null}.
+   * @param id                  The id of the session; never {@code null}.
+   * @param maxInactiveInterval The max inactive interval of the session, in seconds, used to refresh its expiration.
+   */
+  public RedisSession(RedisSessionManager manager, String id, int maxInactiveInterval) {
+    this(manager, id, maxInactiveInterval, true);
+  }
+
+  /**
+   * Constructs a session whose metadata properties are fetched lazily, without necessarily creating it.
+   *
+   * @param manager             The manager responsible for this session; never {@code null}.
+   * @param id                  The id of the session; never {@code null}.
+   * @param maxInactiveInterval The max inactive interval of the session, in seconds, used to refresh its expiration.
+   * @param autovivify          Whether to create the session and record the access; {@code false} if the session has
+   *                            just been looked up and the caller records the access, as per
+   *                            {@link RedisSessionManager#touchExistingSession(String, int)}.
+   */
+  public RedisSession(RedisSessionManager manager, String id, int maxInactiveInterval, boolean autovivify) {
     super(manager);
     Objects.requireNonNull(manager, "manager responsible for this session");
     Objects.requireNonNull(manager.getRedis(), "Redis client for this session");
     Objects.requireNonNull(id, "the initial id for this session");
     this.id = id;
     initProperties();
-    manager.autovivifySession(id);
+    if (autovivify) manager.autovivifySession(id, maxInactiveInterval);
   }
 
-  protected static void triggerProperty(String name, RedisBackedPropertySupport<?> property) {
+  /**
+   * Constructs a session whose metadata has already been retrieved in bulk. The session has just been looked up, so
+   * the caller records the access, as per {@link RedisSessionManager#touchExistingSession(String, int)}.
+   *
+   * @param manager  The manager responsible for this session; never {@code null}.
+   * @param id       The id of this session; never {@code null}.
+   * @param metadata The contents of the metadata hash, as per {@link #preloadMetadata(Map)}; never {@code null}.
+   */
+  public RedisSession(RedisSessionManager manager, String id, Map<String, String> metadata) {
+    super(manager);
+    Objects.requireNonNull(manager, "manager responsible for this session");
+    Objects.requireNonNull(manager.getRedis(), "Redis client for this session");
+    Objects.requireNonNull(id, "the initial id for this session");
+    Objects.requireNonNull(metadata, "the metadata for this session");
+    this.id = id;
+    initProperties();
+    preloadMetadata(metadata);
+  }
+
+  protected static void triggerProperty(String name, AbstractRedisBackedPropertySupport<?, ?> property) {
     if (property == null) {
       throw new IllegalStateException("Property is not initialized for " + name);
     }
     property.trigger();
   }
 
-  protected static <T> void storeProperty(String name, RedisBackedPropertySupport<T> property, T value) {
+  /**
+   * Stores the value of the property. If this session is being used within a request that is bracketed by a
+   * {@link RedisSessionValve}, then the value is only staged, and it is written when the request completes.
+   * Otherwise, the value is written to Redis immediately, on one pipeline with the increment of the version.
+   */
+  protected <T> void storeProperty(String name, AbstractRedisBackedPropertySupport<T, ?> property, T value) {
+    storeProperty(name, property, value, batch -> {});
+  }
+
+  /**
+   * Stores the value of the property as per {@link #storeProperty(String, AbstractRedisBackedPropertySupport, Object)},
+   * except that when the value is written immediately, whatever {@code alsoWrite} queues is written on the same
+   * pipeline. When the value is only staged, {@code alsoWrite} is not called.
+   */
+  protected <T> void storeProperty(String name, AbstractRedisBackedPropertySupport<T, ?> property, T value,
+                                   Consumer<RedisWriteBatch> alsoWrite) {
     if (property == null) {
       throw new IllegalStateException("Property is not initialized for " + name);
     }
-    property.store(value);
+    if (isWriteBehind()) {
+      property.stage(value);
+    } else {
+      property.store(value, batch -> {
+        incrementVersion(batch);
+        alsoWrite.accept(batch);
+      });
+    }
+  }
+
+  /**
+   * The version of this session in Redis, as of when it was looked up plus the writes made through this object since.
+   *
+   * @return The version, or {@link #UNKNOWN_VERSION} if it is not known.
+   * @see Convention#VERSION_HKEY
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Sets the version of this session in Redis, as it was just looked up.
+   *
+   * @param version The version, or {@link #UNKNOWN_VERSION} if it is not known.
+   */
+  public void setVersion(long version) {
+    this.version.set(version);
+  }
+
+  /**
+   * Queues incrementing the version of this session in Redis onto the batch, to record the writes in the batch.
+   *
+   * @param batch The batch to write into; never {@code null}.
+   */
+  protected void incrementVersion(RedisWriteBatch batch) {
+    batch.hincrBy(getMetadataKey(), Convention.VERSION_HKEY, 1L);
+    getManager().publishInvalidationNotice(batch::publish, getIdInternal());
+    version.updateAndGet(current -> current == UNKNOWN_VERSION ? current : current + 1);
+  }
+
+  /**
+   * Estimates how much memory this session holds: the lengths of the attribute values which have been loaded, as they
+   * are stored in Redis, plus {@link #ESTIMATED_OVERHEAD}.
+   *
+   * @return The estimated size, in bytes.
+   */
+  public long getEstimatedSize() {
+    long size = ESTIMATED_OVERHEAD;
+    for (RedisBinaryHashBackedPropertySupport<Serializable> property : attributesProperties.values()) {
+      size += property.getStoredLength();
+    }
+    return size;
+  }
+
+  /**
+   * Prepares this session to be used by another request after it has been taken from the {@link SessionNearCache}.
+   * The access times are loaded afresh, starting from those in the metadata which was just looked up, so that the
+   * idle check made by {@link #isValid()} counts requests served by other nodes. The session's expiration is then
+   * refreshed, unless the session has gone since it was looked up.
+   *
+   * @param metadata The metadata which was looked up for the session; never {@code null}.
+   * @return {@code true} if the session can be used; {@code false} if it has gone since it was looked up.
+   */
+  public boolean reuse(Map<String, String> metadata) {
+    Objects.requireNonNull(metadata, "metadata looked up for the session");
+    initAccessTimeProperties(getRedis(), getMetadataKey(),
+                             new TimestampConverter(Date::new, getManager().getMetadataTimestampFormat()));
+    for (RedisHashBackedPropertySupport<Long> property : Arrays.asList(thisAccessedTimeProperty, lastAccessedTimeProperty)) {
+      if (metadata.containsKey(property.getHashKey())) property.preload(metadata.get(property.getHashKey()));
+    }
+    thisAccessedTime = Math.max(thisAccessedTime, lastAccessedTime);
+    return getManager().touchExistingSession(getIdInternal(), getEffectiveMaxInactiveInterval());
+  }
+
+  /**
+   * Whether this session can be taken from the {@link SessionNearCache} and reused without looking it up at all. It
+   * must be valid, with a known version, and must have been accessed within the first half of its max inactive
+   * interval. The access times held can only be earlier than those in Redis, so such a session has not expired,
+   * even allowing for some clock skew between the nodes.
+   *
+   * @return {@code true} if the session can be reused without a lookup.
+   */
+  public boolean isReusableWithoutLookup() {
+    if (!isValidInternal() || getVersion() == UNKNOWN_VERSION) return false;
+    int maxInactiveInterval = getEffectiveMaxInactiveInterval();
+    if (maxInactiveInterval <= 0) return true;
+    long idleTime = System.currentTimeMillis() - Math.max(thisAccessedTime, lastAccessedTime);
+    return idleTime < TimeUnit.SECONDS.toMillis(maxInactiveInterval) / 2;
+  }
+
+  /**
+   * Prepares this session to be reused by the request in progress without looking it up, as per
+   * {@link #isReusableWithoutLookup()}. Nothing is read from Redis; rather than refreshing the session's expiration
+   * now, the refresh is staged to be written along with the rest of the request's writes.
+   *
+   * @throws IllegalStateException If there is no request in progress to stage the refresh into.
+   */
+  public void reuseWithoutLookup() {
+    if (!isWriteBehind()) throw new IllegalStateException("No request is in progress for " + getIdInternal());
+    touchStaged = true;
+  }
+
+  /**
+   * Whether writes should be deferred until the end of the current request. As a side effect, this enlists this
+   * session to be committed when the request completes.
+   *
+   * @return {@code true} if writes should be staged; {@code false} if they should be written immediately.
+   */
+  protected boolean isWriteBehind() {
+    return getManager().enlistInRequest(this);
+  }
+
+  /**
+   * Queues all of the staged changes to this session onto the batch, along with any attribute which was retrieved,
+   * is checked under the manager's {@link AttributeSavePolicy}, and has since been changed in place. Values whose
+   * serialized form is unchanged are not written. If the session was reused without a lookup, then its access is
+   * recorded as well. The session's keys only expire as the manager's {@link ExpirationStrategy} calls for, so that
+   * they expire together. If the session has been invalidated in the meantime, the staged changes are discarded
+   * instead, so that they do not resurrect the session's keys.
+   *
+   * @param batch The batch to write into; never {@code null}.
+   */
+  public void stageChanges(RedisWriteBatch batch) {
+    Objects.requireNonNull(batch, "batch to stage changes into");
+    List<RedisHashBackedPropertySupport<?>> metadataProperties = getMetadataProperties();
+    Collection<RedisBinaryHashBackedPropertySupport<Serializable>> attributeProperties = attributesProperties.values();
+    Set<String> checkedNames = new HashSet<>(attributesCheckedOnGet);
+    attributesCheckedOnGet.removeAll(checkedNames);
+    boolean touched = touchStaged;
+    touchStaged = false;
+    if (!isValidInternal()) {
+      metadataProperties.forEach(AbstractRedisBackedPropertySupport::discard);
+      attributeProperties.forEach(AbstractRedisBackedPropertySupport::discard);
+      return;
+    }
+
+    boolean hasChanges = false;
+    for (RedisHashBackedPropertySupport<?> property : metadataProperties) {
+      hasChanges |= property.flush(batch);
+    }
+    for (RedisBinaryHashBackedPropertySupport<Serializable> property : attributeProperties) {
+      if (checkedNames.contains(property.getHashKey())) {
+        hasChanges |= property.flushChanges(batch);
+      } else {
+        hasChanges |= property.flush(batch);
+      }
+    }
+
+    if (!hasChanges && !touched) return;
+    if (hasChanges) incrementVersion(batch);
+    if (touched) getManager().stageSessionAccess(batch, getIdInternal());
+    getManager().stageSessionExpiration(batch, getIdInternal(), getEffectiveMaxInactiveInterval());
+  }
+
+  /**
+   * Provides the max inactive interval of this session, falling back to the manager's default if it has never been
+   * set on this session.
+   *
+   * @return The max inactive interval, in seconds.
+   */
+  protected int getEffectiveMaxInactiveInterval() {
+    triggerMaxInactiveIntervalLoad();
+    if (maxInactiveIntervalProperty.getLoadedValue().isPresent()) return this.maxInactiveInterval;
+    return getManager().getMaxInactiveInterval();
   }
 
   protected void initProperties() {
     Redis redis = getRedis();
     String metadataKey = getMetadataKey();
+    TimestampConverter timestampConverter = new TimestampConverter(Date::new, getManager().getMetadataTimestampFormat());
 
     attributesProperties = new ConcurrentSkipListMap<>();
+    attributesCheckedOnGet = new ConcurrentSkipListSet<>();
+    attributesBulkLoadAttempted = false;
+    attributesBulkLoaded = false;
+    attributesPrefetchAttempted = false;
 
     authProperty = new RedisHashBackedPropertySupport<>(
                                                            redis, metadataKey,
@@ -69,23 +314,11 @@ public class RedisSession extends StandardSession implements Session {
     creationTimeProperty = new RedisHashBackedPropertySupport<>(
                                                                    redis, metadataKey,
                                                                    Convention.CREATION_TIME_HKEY,
-                                                                   new TimestampConverter(Date::new),
+                                                                   timestampConverter,
                                                                    time -> this.creationTime = time
     );
 
-    thisAccessedTimeProperty = new RedisHashBackedPropertySupport<>(
-                                                                       redis, metadataKey,
-                                                                       Convention.THIS_ACCESSED_TIME_HKEY,
-                                                                       new TimestampConverter(Date::new),
-                                                                       time -> this.thisAccessedTime = time
-    );
-
-    lastAccessedTimeProperty = new RedisHashBackedPropertySupport<>(
-                                                                       redis, metadataKey,
-                                                                       Convention.LAST_ACCESS_TIME_HKEY,
-                                                                       new TimestampConverter(Date::new),
-                                                                       time -> this.lastAccessedTime = time
-    );
+    initAccessTimeProperties(redis, metadataKey, timestampConverter);
 
     maxInactiveIntervalProperty = new RedisHashBackedPropertySupport<>(
                                                                           redis, metadataKey,
@@ -97,7 +330,7 @@ public class RedisSession extends StandardSession implements Session {
     principalProperty = new RedisHashBackedPropertySupport<>(
                                                                 redis, metadataKey,
                                                                 Convention.PRINCIPAL_HKEY,
-                                                                new SerializableConverter<>(),
+                                                                new SerializableConverter<>(getManager().getValueSerializer()),
                                                                 principal -> this.principal = (Principal) principal
     );
 
@@ -109,6 +342,48 @@ public class RedisSession extends StandardSession implements Session {
     );
   }
 
+  private void initAccessTimeProperties(Redis redis, String metadataKey, TimestampConverter timestampConverter) {
+    thisAccessedTimeProperty = new RedisHashBackedPropertySupport<>(
+                                                                       redis, metadataKey,
+                                                                       Convention.THIS_ACCESSED_TIME_HKEY,
+                                                                       timestampConverter,
+                                                                       time -> this.thisAccessedTime = time
+    );
+
+    lastAccessedTimeProperty = new RedisHashBackedPropertySupport<>(
+                                                                       redis, metadataKey,
+                                                                       Convention.LAST_ACCESS_TIME_HKEY,
+                                                                       timestampConverter,
+                                                                       time -> this.lastAccessedTime = time
+    );
+  }
+
+  /**
+   * Provides the properties that are backed by the metadata hash.
+   *
+   * @return The metadata properties; never {@code null}.
+   */
+  protected List<RedisHashBackedPropertySupport<?>> getMetadataProperties() {
+    return Arrays.asList(
+                            authProperty, creationTimeProperty, thisAccessedTimeProperty, lastAccessedTimeProperty,
+                            maxInactiveIntervalProperty, principalProperty, isValidProperty
+    );
+  }
+
+  /**
+   * Fills all the metadata properties from the contents of the metadata hash, which was already retrieved in bulk
+   * (eg: via {@code HGETALL}). Properties whose hash key is missing are treated as not set, and properties that have
+   * already been loaded are left alone. Anything that cannot be preloaded falls back to being fetched lazily.
+   *
+   * @param metadata The contents of the metadata hash; never {@code null}.
+   */
+  public void preloadMetadata(Map<String, String> metadata) {
+    Objects.requireNonNull(metadata, "metadata to preload");
+    getMetadataProperties().forEach(property -> {
+      property.preload(metadata.get(property.getHashKey()));
+    });
+  }
+
   private String getKey(String type, UnaryOperator<String> impl) {
     Objects.requireNonNull(type, "type of the key to generate");
     Objects.requireNonNull(impl, "implementation to generate this key");
@@ -123,6 +398,10 @@ public class RedisSession extends StandardSession implements Session {
     return getKey("attributes", Convention::sessionIdToAttributesKey);
   }
 
+  protected String getChunksKey() {
+    return getKey("chunks", Convention::sessionIdToChunksKey);
+  }
+
   protected String getMetadataKey() {
     return getKey("metadata", Convention::sessionIdToMetadataKey);
   }
@@ -260,7 +539,8 @@ public class RedisSession extends StandardSession implements Session {
   }
 
   protected void triggerMaxInactiveIntervalStore(Integer interval) {
-    storeProperty("maxInactiveInterval", maxInactiveIntervalProperty, interval);
+    storeProperty("maxInactiveInterval", maxInactiveIntervalProperty, interval,
+                  batch -> getManager().stageSessionExpiration(batch, getIdInternal(), interval));
   }
 
   /**
@@ -367,27 +647,119 @@ public class RedisSession extends StandardSession implements Session {
    */
   @Override
   public Object getAttribute(String name) {
+    if (name != null) getManager().recordAttributeRead(name);
     triggerAttributeLoad(name);
-    return super.getAttribute(name);
+    Object value = super.getAttribute(name);
+    if (name != null && getManager().getAttributeSavePolicy().isCheckedOnGet(value) && isWriteBehind()) {
+      // Changes made in place to the retrieved value are written when the request completes
+      attributesCheckedOnGet.add(name);
+    }
+    return value;
   }
 
   protected void triggerAttributeLoad(String name) {
+    if (getManager().getBulkAttributeLoad()) {
+      loadAllAttributes();
+    } else {
+      prefetchAttributes();
+    }
     attributesProperties.computeIfAbsent(name, this::makeAttributeProperty).trigger();
   }
 
-  protected RedisHashBackedPropertySupport<Serializable> makeAttributeProperty(String name) {
+  protected RedisBinaryHashBackedPropertySupport<Serializable> makeAttributeProperty(String name) {
     Redis redis = getRedis();
     String redisKey = getAttributesKey();
     String hashKey = name;
-    RedisConverter<Serializable> converter = new SerializableConverter<>();
+    RedisBinaryConverter<Serializable> converter =
+        new SerializableBinaryConverter<>(getManager().getValueSerializer(), getManager().getBase64Attributes());
     Consumer<Serializable> setter = value -> this.attributes.put(name, value);
-    return
-        new RedisHashBackedPropertySupport<>(
+    // Base64 values are written for older servers, which cannot read chunks either
+    int chunkSize = getManager().getBase64Attributes() ? 0 : getManager().getAttributeChunkSize();
+    RedisBinaryHashBackedPropertySupport<Serializable> property =
+        new RedisChunkedHashBackedPropertySupport<>(
                                                 redis,
                                                 redisKey, hashKey,
+                                                getChunksKey(), chunkSize,
                                                 converter,
                                                 setter
         );
+    // After a bulk load, an attribute which did not get a property then is known not to be in Redis
+    if (attributesBulkLoaded) property.preload(null);
+    return property;
+  }
+
+  /**
+   * Retrieves all of the attributes with a single {@code HGETALL}, holding each one as raw bytes until it is first
+   * retrieved. This is attempted once per session; if it fails, attributes are fetched one at a time instead.
+   */
+  protected void loadAllAttributes() {
+    if (attributesBulkLoadAttempted) return;
+    synchronized (attributesProperties) {
+      if (attributesBulkLoadAttempted) return;
+      attributesBulkLoadAttempted = true;
+      try {
+        Map<byte[], byte[]> rawAttributes = getRedis().withRedis(jedis -> {
+          return jedis.hgetAll(getAttributesKey().getBytes(StandardCharsets.UTF_8));
+        });
+        rawAttributes.forEach((field, value) -> {
+          preloadAttributeLazily(new String(field, StandardCharsets.UTF_8), value);
+        });
+        attributesBulkLoaded = true;
+      } catch (Exception e) {
+        log.warn("Could not load the attributes of " + getIdInternal() + " in bulk; fetching them one at a time", e);
+      }
+    }
+  }
+
+  /**
+   * Retrieves the attributes which the current request is predicted to read in a single round trip, holding each one
+   * as raw bytes until it is first retrieved. If the session has few enough attributes, then all of them are
+   * retrieved. This is attempted once per session, and only if there is a prediction.
+   *
+   * @see RedisSessionManager#getAttributePrefetch()
+   */
+  protected void prefetchAttributes() {
+    if (attributesPrefetchAttempted) return;
+    List<String> names = new ArrayList<>(getManager().getPredictedAttributeNames());
+    if (names.isEmpty()) return;
+    synchronized (attributesProperties) {
+      if (attributesPrefetchAttempted) return;
+      attributesPrefetchAttempted = true;
+      List<byte[]> keys = Collections.singletonList(getAttributesKey().getBytes(StandardCharsets.UTF_8));
+      List<byte[]> args = new ArrayList<>(names.size() + 1);
+      args.add(Integer.toString(getManager().getPrefetchWholeHashSize()).getBytes(StandardCharsets.UTF_8));
+      names.forEach(name -> args.add(name.getBytes(StandardCharsets.UTF_8)));
+      try {
+        List<?> reply = (List<?>) getRedis().withRedis(jedis -> {
+          return SessionScripts.PREFETCH_ATTRIBUTES.evalBinary(jedis, keys, args);
+        });
+        List<?> values = (List<?>) reply.get(1);
+        if (Long.valueOf(1L).equals(reply.get(0))) {
+          for (int i = 0; i + 1 < values.size(); i += 2) {
+            String name = new String((byte[]) values.get(i), StandardCharsets.UTF_8);
+            preloadAttributeLazily(name, (byte[]) values.get(i + 1));
+          }
+          attributesBulkLoadAttempted = true;
+          attributesBulkLoaded = true;
+        } else {
+          for (int i = 0; i < names.size(); i++) {
+            preloadAttributeLazily(names.get(i), (byte[]) values.get(i));
+          }
+        }
+      } catch (Exception e) {
+        log.warn("Could not prefetch the attributes of " + getIdInternal() + "; fetching them one at a time", e);
+      }
+    }
+  }
+
+  /**
+   * Hands a raw attribute value which has been retrieved in bulk to the attribute's property.
+   *
+   * @param name     The name of the attribute; never {@code null}.
+   * @param rawValue The raw value; {@code null} if the attribute is not set in Redis.
+   */
+  protected void preloadAttributeLazily(String name, byte[] rawValue) {
+    attributesProperties.computeIfAbsent(name, this::makeAttributeProperty).preloadLazily(rawValue);
   }
 
   /**
@@ -413,7 +785,17 @@ public class RedisSession extends StandardSession implements Session {
       Set<String> names = getRedis().withRedis(jedis -> {
         return jedis.hkeys(getAttributesKey());
       });
-      return new TreeSet<>(names);
+      SortedSet<String> toReturn = new TreeSet<>(names);
+      // Overlay anything which has been staged but not yet written
+      attributesProperties.forEach((name, property) -> {
+        if (!property.isDirty()) return;
+        if (property.getLoadedValue().isPresent()) {
+          toReturn.add(name);
+        } else {
+          toReturn.remove(name);
+        }
+      });
+      return toReturn;
     } catch (Exception e) {
       log.error("Could not retrieve attribute names; using empty set", e);
       return Collections.emptySortedSet();
@@ -433,7 +815,8 @@ public class RedisSession extends StandardSession implements Session {
   }
 
   protected void doRedisInvalidation() {
-    getManager().invalidateSession(getIdInternal());
+    long creationTime = getCreationTimeInternal();
+    getManager().invalidateSession(getIdInternal(), creationTime > 0 ? new Date(creationTime) : null);
   }
 
   /**
@@ -456,13 +839,20 @@ public class RedisSession extends StandardSession implements Session {
   }
 
   protected void doRemoveAttribute(String name) {
+    if (isWriteBehind()) {
+      attributesProperties.computeIfAbsent(name, this::makeAttributeProperty).stage(null);
+      return;
+    }
     try {
-      getRedis().withRedis(jedis -> {
-        jedis.hdel(getAttributesKey(), name);
-      });
+      RedisWriteBatch batch = new RedisWriteBatch();
+      // Going through the property also removes any chunks of the value
+      attributesProperties.computeIfAbsent(name, this::makeAttributeProperty).clear(batch);
+      incrementVersion(batch);
+      getRedis().withRedisPipeline(batch::queue);
       attributesProperties.remove(name);
     } catch (Exception e) {
       log.error("Could not remove attribute from " + getIdInternal() + " for name " + name, e);
+      version.set(UNKNOWN_VERSION);
     }
   }
 
@@ -515,7 +905,10 @@ public class RedisSession extends StandardSession implements Session {
   }
 
   protected void triggerAttributeStore(String name, Serializable value) {
-    attributesProperties.computeIfAbsent(name, this::makeAttributeProperty).store(value);
+    int maxInactiveInterval = getEffectiveMaxInactiveInterval();
+    // The attributes key may be created by the write, so it needs its expiration
+    storeProperty(name, attributesProperties.computeIfAbsent(name, this::makeAttributeProperty), value,
+                  batch -> getManager().stageSessionExpiration(batch, getIdInternal(), maxInactiveInterval));
   }
 
   /**
@@ -604,7 +997,7 @@ public class RedisSession extends StandardSession implements Session {
   }
 
   protected void triggerIsValidStore(boolean isValid) {
-    isValidProperty.store(isValid);
+    storeProperty("isValid", isValidProperty, isValid);
   }
 
   /**
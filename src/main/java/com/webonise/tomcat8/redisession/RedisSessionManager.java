@@ -2,11 +2,22 @@ package com.webonise.tomcat8.redisession;
 
 import com.webonise.tomcat8.redisession.redisclient.BooleanConverter;
 import com.webonise.tomcat8.redisession.redisclient.Redis;
+import com.webonise.tomcat8.redisession.redisclient.RedisConfig;
+import com.webonise.tomcat8.redisession.redisclient.RedisWriteBatch;
+import com.webonise.tomcat8.redisession.redisclient.TimestampFormat;
+import com.webonise.tomcat8.redisession.serializer.CompressingSessionSerializer;
+import com.webonise.tomcat8.redisession.serializer.CompressionCodec;
+import com.webonise.tomcat8.redisession.serializer.DeflateCompressionCodec;
+import com.webonise.tomcat8.redisession.serializer.JdkSessionSerializer;
+import com.webonise.tomcat8.redisession.serializer.SessionSerializer;
 import org.apache.catalina.*;
+import org.apache.catalina.util.LifecycleBase;
 import org.apache.catalina.util.StandardSessionIdGenerator;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.params.sortedset.ZAddParams;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
@@ -20,19 +31,888 @@ import java.util.stream.*;
 /**
  * Responsible for creating sessions that persist into Redis.
  */
-public class RedisSessionManager implements Manager {
+public class RedisSessionManager extends LifecycleBase implements Manager {
 
   private static final Log LOG = LogFactory.getLog(RedisSessionManager.class);
-  private final AtomicLong sessionCounter = new AtomicLong(0L);
+
+  /**
+   * The maximum number of commands to queue onto a single pipeline when sweeping across sessions.
+   */
+  protected static final int PIPELINE_BATCH_SIZE = 500;
+
+  /**
+   * How many background passes there are between reconciliations of the active session count, under the
+   * {@link ExpirationStrategy#NATIVE_TTL} strategy.
+   */
+  protected static final int ACTIVE_SESSIONS_RECONCILE_TICKS = 60;
+
+  /**
+   * The lifecycle states in which the Redis client must not be created.
+   */
+  private static final Set<LifecycleState> STOPPED_STATES = Collections.unmodifiableSet(EnumSet.of(
+      LifecycleState.STOPPING_PREP, LifecycleState.STOPPING, LifecycleState.STOPPED,
+      LifecycleState.DESTROYING, LifecycleState.DESTROYED
+  ));
+
   private final PropertyChangeSupport changeListeners = new PropertyChangeSupport(this);
-  private final Redis redis = new Redis(); // TODO Allow this to be populated from XML config
+  private final RedisConfig redisConfig = new RedisConfig();
+  private volatile Redis redis;
   private volatile Context context;
   private volatile boolean distributable = true;
   private volatile int getMaxInactiveInterval = (int) TimeUnit.HOURS.toSeconds(1L);
   private volatile SessionIdGenerator sessionIdGenerator = new StandardSessionIdGenerator();
+  private volatile boolean bulkMetadataLoad = true;
+  private volatile boolean bulkAttributeLoad = false;
+  private volatile boolean attributePrefetch = false;
+  private volatile int prefetchWholeHashSize = 32;
+  private volatile ExpirationStrategy expirationStrategy = ExpirationStrategy.SCAN;
+  private volatile boolean expiryIndexBackfilled = false;
+  private volatile int expiryReapBatchSize = 1000;
+  private volatile int rateWindowMinutes = 10;
+  private volatile boolean pinConnectionPerRequest = false;
+  private volatile boolean base64Attributes = false;
+  private volatile TimestampFormat timestampFormat = TimestampFormat.ISO_8601;
+  private volatile AttributeSavePolicy savePolicy = AttributeSavePolicy.ALWAYS;
+  private volatile SessionSerializer sessionSerializer = new JdkSessionSerializer();
+  private volatile CompressionCodec compressionCodec = new DeflateCompressionCodec();
+  private volatile int compressionThreshold = 0;
+  private volatile SessionSerializer valueSerializer =
+      new CompressingSessionSerializer(sessionSerializer, compressionCodec, compressionThreshold);
+  private volatile int attributeChunkSize = 0;
+  private final ThreadLocal<Set<RedisSession>> requestSessions = new ThreadLocal<>();
+  private final ThreadLocal<Redis> requestPinnedRedis = new ThreadLocal<>();
+  private final ThreadLocal<AttributePrefetcher.RequestContext> requestPrefetch = new ThreadLocal<>();
+  private final AttributePrefetcher attributePrefetcher = new AttributePrefetcher(1000);
+  private volatile SessionNearCache nearCache = new SessionNearCache(0L);
+  private volatile boolean nearCacheInvalidation = false;
+  private volatile SessionInvalidationSubscriber invalidationSubscriber;
+  private final AtomicBoolean statisticsInProgress = new AtomicBoolean(false);
+  private final AtomicInteger backgroundTicks = new AtomicInteger(0);
 
+  /**
+   * Provides the client for Redis, creating it from the connection settings the first time it is needed. Once the
+   * manager is stopping, the client is not created again until the manager is started again, so that a late caller
+   * such as the background thread cannot leave a connection pool open behind the stopped manager.
+   *
+   * @return The client; never {@code null}.
+   * @throws IllegalStateException If the manager is stopping, stopped or destroyed.
+   */
   public Redis getRedis() {
-    return redis;
+    Redis current = redis;
+    if (current != null) return current;
+    synchronized (redisConfig) {
+      if (redis == null) {
+        LifecycleState state = getState();
+        if (STOPPED_STATES.contains(state)) {
+          throw new IllegalStateException("The Redis client is not available while the manager is " + state);
+        }
+        redis = new Redis(redisConfig);
+      }
+      return redis;
+    }
+  }
+
+  /**
+   * The host of the Redis server. Defaults to {@code localhost}.
+   */
+  public String getHost() {
+    return redisConfig.getHost();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getHost()}. Takes effect the next time the manager is started.
+   */
+  public void setHost(String host) {
+    synchronized (redisConfig) {
+      redisConfig.setHost(host);
+    }
+  }
+
+  /**
+   * The port of the Redis server. Defaults to 6379.
+   */
+  public int getPort() {
+    return redisConfig.getPort();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getPort()}. Takes effect the next time the manager is started.
+   */
+  public void setPort(int port) {
+    synchronized (redisConfig) {
+      redisConfig.setPort(port);
+    }
+  }
+
+  /**
+   * The index of the Redis database to use. Defaults to 0.
+   */
+  public int getDatabase() {
+    return redisConfig.getDatabase();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getDatabase()}. Takes effect the next time the manager is started.
+   */
+  public void setDatabase(int database) {
+    synchronized (redisConfig) {
+      redisConfig.setDatabase(database);
+    }
+  }
+
+  /**
+   * The password to authenticate to Redis with; {@code null} (the default) if none is needed.
+   */
+  public String getPassword() {
+    return redisConfig.getPassword();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getPassword()}. Takes effect the next time the manager is started.
+   */
+  public void setPassword(String password) {
+    synchronized (redisConfig) {
+      redisConfig.setPassword(password);
+    }
+  }
+
+  /**
+   * How long (in milliseconds) to wait when connecting to Redis.
+   */
+  public int getConnectionTimeout() {
+    return redisConfig.getConnectionTimeout();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getConnectionTimeout()}. Takes effect the next time the manager is started.
+   */
+  public void setConnectionTimeout(int connectionTimeout) {
+    synchronized (redisConfig) {
+      redisConfig.setConnectionTimeout(connectionTimeout);
+    }
+  }
+
+  /**
+   * How long (in milliseconds) to wait for a reply from Redis.
+   */
+  public int getSocketTimeout() {
+    return redisConfig.getSocketTimeout();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getSocketTimeout()}. Takes effect the next time the manager is started.
+   */
+  public void setSocketTimeout(int socketTimeout) {
+    synchronized (redisConfig) {
+      redisConfig.setSocketTimeout(socketTimeout);
+    }
+  }
+
+  /**
+   * The maximum number of pooled Redis connections, which should be sized to the number of request threads.
+   */
+  public int getMaxTotal() {
+    return redisConfig.getMaxTotal();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getMaxTotal()}. Takes effect the next time the manager is started.
+   */
+  public void setMaxTotal(int maxTotal) {
+    synchronized (redisConfig) {
+      redisConfig.setMaxTotal(maxTotal);
+    }
+  }
+
+  /**
+   * The maximum number of idle pooled Redis connections.
+   */
+  public int getMaxIdle() {
+    return redisConfig.getMaxIdle();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getMaxIdle()}. Takes effect the next time the manager is started.
+   */
+  public void setMaxIdle(int maxIdle) {
+    synchronized (redisConfig) {
+      redisConfig.setMaxIdle(maxIdle);
+    }
+  }
+
+  /**
+   * The number of idle Redis connections that the pool tries to keep ready.
+   */
+  public int getMinIdle() {
+    return redisConfig.getMinIdle();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getMinIdle()}. Takes effect the next time the manager is started.
+   */
+  public void setMinIdle(int minIdle) {
+    synchronized (redisConfig) {
+      redisConfig.setMinIdle(minIdle);
+    }
+  }
+
+  /**
+   * How long (in milliseconds) to wait for a Redis connection when the pool is exhausted: 0 (the default) fails
+   * immediately, and a negative value waits indefinitely.
+   */
+  public long getMaxWaitMillis() {
+    return redisConfig.getMaxWaitMillis();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getMaxWaitMillis()}. Takes effect the next time the manager is started.
+   */
+  public void setMaxWaitMillis(long maxWaitMillis) {
+    synchronized (redisConfig) {
+      redisConfig.setMaxWaitMillis(maxWaitMillis);
+    }
+  }
+
+  /**
+   * How long (in milliseconds) between runs of the idle Redis connection evictor.
+   */
+  public long getTimeBetweenEvictionRunsMillis() {
+    return redisConfig.getTimeBetweenEvictionRunsMillis();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getTimeBetweenEvictionRunsMillis()}. Takes effect the next time the manager is started.
+   */
+  public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+    synchronized (redisConfig) {
+      redisConfig.setTimeBetweenEvictionRunsMillis(timeBetweenEvictionRunsMillis);
+    }
+  }
+
+  /**
+   * How long (in milliseconds) a Redis connection may sit idle before it may be evicted.
+   */
+  public long getMinEvictableIdleTimeMillis() {
+    return redisConfig.getMinEvictableIdleTimeMillis();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getMinEvictableIdleTimeMillis()}. Takes effect the next time the manager is started.
+   */
+  public void setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+    synchronized (redisConfig) {
+      redisConfig.setMinEvictableIdleTimeMillis(minEvictableIdleTimeMillis);
+    }
+  }
+
+  /**
+   * The number of threads which perform background and asynchronous Redis work.
+   */
+  public int getAsyncThreads() {
+    return redisConfig.getAsyncThreads();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getAsyncThreads()}. Takes effect the next time the manager is started.
+   */
+  public void setAsyncThreads(int asyncThreads) {
+    synchronized (redisConfig) {
+      redisConfig.setAsyncThreads(asyncThreads);
+    }
+  }
+
+  /**
+   * The number of asynchronous Redis tasks which may wait for a thread; beyond that, tasks run on the caller's
+   * thread.
+   */
+  public int getAsyncQueueSize() {
+    return redisConfig.getAsyncQueueSize();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getAsyncQueueSize()}. Takes effect the next time the manager is started.
+   */
+  public void setAsyncQueueSize(int asyncQueueSize) {
+    synchronized (redisConfig) {
+      redisConfig.setAsyncQueueSize(asyncQueueSize);
+    }
+  }
+
+  /**
+   * Whether asynchronous Redis work runs on virtual threads, if the JDK supports them (JDK 21 or later).
+   */
+  public boolean getAsyncVirtualThreads() {
+    return redisConfig.getAsyncVirtualThreads();
+  }
+
+  /**
+   * Sets the Redis connection setting; see {@link #getAsyncVirtualThreads()}. Takes effect the next time the manager is started.
+   */
+  public void setAsyncVirtualThreads(boolean asyncVirtualThreads) {
+    synchronized (redisConfig) {
+      redisConfig.setAsyncVirtualThreads(asyncVirtualThreads);
+    }
+  }
+
+  /**
+   * The number of asynchronous Redis tasks currently waiting for a thread, or 0 if the Redis client has not been
+   * created.
+   */
+  public int getAsyncQueueDepth() {
+    Redis current = redis;
+    return current == null ? 0 : current.getExecutor().getQueueDepth();
+  }
+
+  /**
+   * The number of asynchronous Redis tasks which found the queue full, and so ran on the caller's thread, or 0 if the
+   * Redis client has not been created.
+   */
+  public long getAsyncRejectedCount() {
+    Redis current = redis;
+    return current == null ? 0L : current.getExecutor().getRejectedCount();
+  }
+
+  /**
+   * Whether {@link #findSession(String)} loads all of the session metadata with a single {@code HGETALL}, rather than
+   * having each metadata property fetch itself lazily. Defaults to {@code true}.
+   */
+  public boolean getBulkMetadataLoad() {
+    return bulkMetadataLoad;
+  }
+
+  /**
+   * Sets whether {@link #findSession(String)} loads all of the session metadata with a single {@code HGETALL}.
+   *
+   * @param bulkMetadataLoad {@code true} to load the metadata in bulk; {@code false} to load each property lazily.
+   */
+  public void setBulkMetadataLoad(boolean bulkMetadataLoad) {
+    this.bulkMetadataLoad = bulkMetadataLoad;
+  }
+
+  /**
+   * Whether a session loads all of its attributes with a single {@code HGETALL} the first time any attribute is
+   * needed, rather than fetching each attribute with its own {@code HGET}. Each attribute is still only deserialized
+   * when it is first retrieved. Defaults to {@code false}.
+   */
+  public boolean getBulkAttributeLoad() {
+    return bulkAttributeLoad;
+  }
+
+  /**
+   * Sets whether a session loads all of its attributes with a single {@code HGETALL}. This saves round trips when
+   * requests use several attributes, at the cost of transferring attributes which the request does not use.
+   *
+   * @param bulkAttributeLoad {@code true} to load the attributes in bulk; {@code false} to load each one lazily.
+   */
+  public void setBulkAttributeLoad(boolean bulkAttributeLoad) {
+    this.bulkAttributeLoad = bulkAttributeLoad;
+  }
+
+  /**
+   * Whether the attributes that requests read are learned per request URI pattern, so that the attributes a request
+   * is predicted to read are fetched in a single round trip when it first needs an attribute. This requires
+   * {@link RedisSessionValve}, and it does nothing if {@link #getBulkAttributeLoad()} is set. Defaults to
+   * {@code false}.
+   *
+   * @see AttributePrefetcher
+   */
+  public boolean getAttributePrefetch() {
+    return attributePrefetch;
+  }
+
+  /**
+   * Sets whether the attributes that requests read are learned and prefetched.
+   *
+   * @param attributePrefetch {@code true} to prefetch attributes.
+   */
+  public void setAttributePrefetch(boolean attributePrefetch) {
+    this.attributePrefetch = attributePrefetch;
+  }
+
+  /**
+   * The most attributes a session may have for a prefetch to fetch all of them with {@code HGETALL}, rather than
+   * only the predicted ones with {@code HMGET}. Defaults to 32.
+   */
+  public int getPrefetchWholeHashSize() {
+    return prefetchWholeHashSize;
+  }
+
+  /**
+   * Sets the most attributes a session may have for a prefetch to fetch all of them.
+   *
+   * @param prefetchWholeHashSize The number of attributes; 0 to always fetch only the predicted attributes.
+   */
+  public void setPrefetchWholeHashSize(int prefetchWholeHashSize) {
+    if (prefetchWholeHashSize < 0) {
+      throw new IllegalArgumentException("Prefetch whole hash size must be nonnegative: " + prefetchWholeHashSize);
+    }
+    this.prefetchWholeHashSize = prefetchWholeHashSize;
+  }
+
+  /**
+   * The number of distinct attributes read by requests which had been predicted, and so prefetched.
+   */
+  public long getPrefetchHitCount() {
+    return attributePrefetcher.getHitCount();
+  }
+
+  /**
+   * The number of distinct attributes read by requests which had not been predicted.
+   */
+  public long getPrefetchMissCount() {
+    return attributePrefetcher.getMissCount();
+  }
+
+  /**
+   * The most bytes of recently used sessions to keep in memory, by their estimated size, so that a request which
+   * returns to this node can reuse the attributes already loaded, as long as the session's version in Redis shows
+   * that it has not been changed since. Defaults to 0, which keeps no sessions in memory.
+   *
+   * @see SessionNearCache
+   */
+  public long getNearCacheSize() {
+    return nearCache.getMaxSize();
+  }
+
+  /**
+   * Sets the most bytes of recently used sessions to keep in memory. Any sessions currently held are discarded.
+   *
+   * @param nearCacheSize The size in bytes; 0 to keep no sessions in memory.
+   */
+  public void setNearCacheSize(long nearCacheSize) {
+    this.nearCache = new SessionNearCache(nearCacheSize);
+  }
+
+  /**
+   * The number of sessions found in the near cache at their current version.
+   */
+  public long getNearCacheHitCount() {
+    return nearCache.getHitCount();
+  }
+
+  /**
+   * The number of sessions which had to be loaded from Redis because they were not in the near cache at their current
+   * version. This is only counted while the near cache is enabled.
+   */
+  public long getNearCacheMissCount() {
+    return nearCache.getMissCount();
+  }
+
+  /**
+   * Whether the near cache is kept current by invalidation notices published over Redis pub/sub, so that a session in
+   * the near cache can be reused without looking it up at all. When this is set, every write to a session publishes a
+   * notice, and a background thread subscribes to the notices of the other nodes. It must be set on every node which
+   * shares the sessions. Defaults to {@code false}, in which case the near cache checks the version of each session.
+   *
+   * @see SessionInvalidationSubscriber
+   */
+  public boolean getNearCacheInvalidation() {
+    return nearCacheInvalidation;
+  }
+
+  /**
+   * Sets whether the near cache is kept current by invalidation notices. Takes effect the next time the manager is
+   * started.
+   *
+   * @param nearCacheInvalidation {@code true} to publish and subscribe to invalidation notices.
+   */
+  public void setNearCacheInvalidation(boolean nearCacheInvalidation) {
+    this.nearCacheInvalidation = nearCacheInvalidation;
+  }
+
+  /**
+   * The number of sessions reused from the near cache without looking them up, because the near cache was being kept
+   * current by invalidation notices. These are also counted as hits.
+   */
+  public long getNearCacheTrustedHitCount() {
+    return nearCache.getTrustedHitCount();
+  }
+
+  /**
+   * The number of invalidation notices received from other nodes since the manager was started.
+   */
+  public long getNearCacheInvalidationCount() {
+    SessionInvalidationSubscriber subscriber = invalidationSubscriber;
+    return subscriber == null ? 0L : subscriber.getReceivedCount();
+  }
+
+  /**
+   * Publishes a notice that the session has been written or invalidated, so that the other nodes evict it from their
+   * near caches, if {@link #getNearCacheInvalidation()} is set.
+   *
+   * @param publisher Publishes a message to a channel, such as {@code Jedis::publish} or
+   *                  {@link RedisWriteBatch#publish(String, String)}; never {@code null}.
+   * @param sessionId The session which was written or invalidated; never {@code null}.
+   */
+  public void publishInvalidationNotice(BiConsumer<String, String> publisher, String sessionId) {
+    Objects.requireNonNull(publisher, "means of publishing the notice");
+    Objects.requireNonNull(sessionId, "session id to give notice of");
+    SessionInvalidationSubscriber subscriber = invalidationSubscriber;
+    if (subscriber != null) publisher.accept(subscriber.getChannel(), subscriber.noticeFor(sessionId));
+  }
+
+  /**
+   * Provides the names of the attributes which the request in progress on the current thread is predicted to read.
+   *
+   * @return The names; never {@code null}, and empty if prefetching is off or there is no prediction.
+   */
+  public Set<String> getPredictedAttributeNames() {
+    AttributePrefetcher.RequestContext context = requestPrefetch.get();
+    return context == null ? Collections.emptySet() : context.getPredicted();
+  }
+
+  /**
+   * Records that the request in progress on the current thread read an attribute, so that it is predicted for the
+   * next request matching the same URI pattern.
+   *
+   * @param name The name of the attribute; never {@code null}.
+   */
+  public void recordAttributeRead(String name) {
+    AttributePrefetcher.RequestContext context = requestPrefetch.get();
+    if (context != null) attributePrefetcher.recordRead(context, name);
+  }
+
+  /**
+   * Provides the name of the strategy used to expire sessions, which is {@link ExpirationStrategy#SCAN} by default.
+   */
+  public String getExpirationStrategy() {
+    return expirationStrategy.name();
+  }
+
+  /**
+   * Sets the strategy used to expire sessions. When the strategy becomes {@link ExpirationStrategy#EXPIRY_INDEX}, the
+   * sessions which are already in Redis are added to the index by the next background pass.
+   *
+   * @param expirationStrategy The name of an {@link ExpirationStrategy}, case insensitive; never {@code null}.
+   */
+  public void setExpirationStrategy(String expirationStrategy) {
+    ExpirationStrategy strategy = ExpirationStrategy.fromString(expirationStrategy);
+    if (strategy != this.expirationStrategy) expiryIndexBackfilled = false;
+    this.expirationStrategy = strategy;
+  }
+
+  /**
+   * Provides the maximum number of sessions reaped per background process tick when the expiration strategy is
+   * {@link ExpirationStrategy#EXPIRY_INDEX}, which is 1000 by default.
+   */
+  public int getExpiryReapBatchSize() {
+    return expiryReapBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of sessions reaped per background process tick.
+   *
+   * @param expiryReapBatchSize The maximum number of sessions to reap, which must be positive.
+   */
+  public void setExpiryReapBatchSize(int expiryReapBatchSize) {
+    if (expiryReapBatchSize <= 0) {
+      throw new IllegalArgumentException("Reap batch size must be positive; was " + expiryReapBatchSize);
+    }
+    this.expiryReapBatchSize = expiryReapBatchSize;
+  }
+
+  /**
+   * Provides the width of the sliding window, in minutes, over which the session create and expire rates are
+   * calculated. Defaults to 10.
+   */
+  public int getRateWindowMinutes() {
+    return rateWindowMinutes;
+  }
+
+  /**
+   * Sets the width of the sliding window over which the session create and expire rates are calculated. The
+   * per-minute counters backing the rates are kept in Redis for this long.
+   *
+   * @param rateWindowMinutes The width of the window in minutes, which must be positive.
+   */
+  public void setRateWindowMinutes(int rateWindowMinutes) {
+    if (rateWindowMinutes <= 0) {
+      throw new IllegalArgumentException("Rate window must be positive; was " + rateWindowMinutes);
+    }
+    this.rateWindowMinutes = rateWindowMinutes;
+  }
+
+  /**
+   * Provides the class name of the {@link SessionSerializer} used for session attributes and principals, which is
+   * {@link JdkSessionSerializer} by default.
+   */
+  public String getSerializer() {
+    return sessionSerializer.getClass().getName();
+  }
+
+  /**
+   * Sets the {@link SessionSerializer} used for session attributes and principals, by class name. The class must
+   * have a public no-argument constructor. The built-in serializers can read each other's output, so switching
+   * between them does not lose existing sessions.
+   *
+   * @param className The class name of the serializer; never {@code null}.
+   * @throws IllegalArgumentException If the serializer could not be instantiated.
+   */
+  public void setSerializer(String className) {
+    this.sessionSerializer = instantiate(className, SessionSerializer.class, "session serializer");
+    rebuildValueSerializer();
+  }
+
+  /**
+   * Creates an instance of a configured class, loading it with the thread's context class loader.
+   *
+   * @param className   The class name; never {@code null}.
+   * @param type        The type that the class must implement; never {@code null}.
+   * @param description What the class is, for error messages; never {@code null}.
+   * @return The new instance; never {@code null}.
+   * @throws IllegalArgumentException If the class could not be instantiated.
+   */
+  protected static <T> T instantiate(String className, Class<T> type, String description) {
+    Objects.requireNonNull(className, "class name of the " + description);
+    ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+    ClassLoader loader = contextLoader == null ? RedisSessionManager.class.getClassLoader() : contextLoader;
+    try {
+      Class<?> implementation = Class.forName(className.trim(), true, loader);
+      return implementation.asSubclass(type).newInstance();
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("Could not create the " + description + " " + className, e);
+    }
+  }
+
+  /**
+   * Provides the serializer used for session attributes and principals.
+   *
+   * @return The serializer; never {@code null}.
+   */
+  public SessionSerializer getSessionSerializer() {
+    return sessionSerializer;
+  }
+
+  /**
+   * Sets the serializer used for session attributes and principals.
+   *
+   * @param sessionSerializer The serializer; never {@code null}.
+   */
+  public void setSessionSerializer(SessionSerializer sessionSerializer) {
+    Objects.requireNonNull(sessionSerializer, "serializer for sessions");
+    this.sessionSerializer = sessionSerializer;
+    rebuildValueSerializer();
+  }
+
+  /**
+   * Provides the class name of the {@link CompressionCodec} used to compress large attribute values and principals,
+   * which is {@link DeflateCompressionCodec} by default.
+   */
+  public String getCompressionCodec() {
+    return compressionCodec.getClass().getName();
+  }
+
+  /**
+   * Sets the {@link CompressionCodec} used to compress large attribute values and principals, by class name. The
+   * class must have a public no-argument constructor. Values compressed by {@link DeflateCompressionCodec} can
+   * always be read, whatever codec is configured.
+   *
+   * @param className The class name of the codec; never {@code null}.
+   * @throws IllegalArgumentException If the codec could not be instantiated.
+   */
+  public void setCompressionCodec(String className) {
+    this.compressionCodec = instantiate(className, CompressionCodec.class, "compression codec");
+    rebuildValueSerializer();
+  }
+
+  /**
+   * The smallest serialized size, in bytes, at which attribute values and principals are compressed. Defaults to 0,
+   * which disables compression; compressed values are read either way.
+   */
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  /**
+   * Sets the smallest serialized size, in bytes, at which attribute values and principals are compressed.
+   *
+   * @param compressionThreshold The size in bytes; 0 to disable compression.
+   */
+  public void setCompressionThreshold(int compressionThreshold) {
+    if (compressionThreshold < 0) {
+      throw new IllegalArgumentException("Compression threshold must be nonnegative: " + compressionThreshold);
+    }
+    this.compressionThreshold = compressionThreshold;
+    rebuildValueSerializer();
+  }
+
+  /**
+   * The most bytes of an attribute value to store in a single field. Larger values are split into chunks of this
+   * size, which are stored in a separate hash and streamed into the deserializer when the value is read, so that no
+   * single Redis command has to carry the whole value. Defaults to 0, which stores every value whole; chunked values
+   * are read either way. Values are never split while {@link #getBase64Attributes()} is set.
+   */
+  public int getAttributeChunkSize() {
+    return attributeChunkSize;
+  }
+
+  /**
+   * Sets the most bytes of an attribute value to store in a single field.
+   *
+   * @param attributeChunkSize The size in bytes; 0 to never split values.
+   */
+  public void setAttributeChunkSize(int attributeChunkSize) {
+    if (attributeChunkSize < 0) {
+      throw new IllegalArgumentException("Attribute chunk size must be nonnegative: " + attributeChunkSize);
+    }
+    this.attributeChunkSize = attributeChunkSize;
+  }
+
+  /**
+   * Provides the serializer which sessions use for attribute values and principals: the {@link SessionSerializer},
+   * compressing its output as configured.
+   *
+   * @return The serializer; never {@code null}.
+   */
+  public SessionSerializer getValueSerializer() {
+    return valueSerializer;
+  }
+
+  /**
+   * Builds the serializer provided by {@link #getValueSerializer()} from the current settings. This is synchronized
+   * so that when settings change concurrently, the last build sees all of them.
+   */
+  private synchronized void rebuildValueSerializer() {
+    this.valueSerializer = new CompressingSessionSerializer(sessionSerializer, compressionCodec, compressionThreshold);
+  }
+
+  /**
+   * Whether a single Redis connection is borrowed when a request begins and used for all of the request's Redis
+   * calls, rather than borrowing a connection for each call. This requires {@link RedisSessionValve}. Defaults to
+   * {@code false}.
+   */
+  public boolean getPinConnectionPerRequest() {
+    return pinConnectionPerRequest;
+  }
+
+  /**
+   * Sets whether a single Redis connection is used for all of a request's Redis calls. With many request threads,
+   * the pool must then have at least as many connections as there are concurrent requests.
+   *
+   * @param pinConnectionPerRequest {@code true} to pin a connection for each request.
+   */
+  public void setPinConnectionPerRequest(boolean pinConnectionPerRequest) {
+    this.pinConnectionPerRequest = pinConnectionPerRequest;
+  }
+
+  /**
+   * Whether session attribute values are written Base64 encoded, as earlier versions wrote them, rather than as the
+   * raw serialized bytes. Values in either form are always read. Defaults to {@code false}.
+   */
+  public boolean getBase64Attributes() {
+    return base64Attributes;
+  }
+
+  /**
+   * Sets whether session attribute values are written Base64 encoded. Enable this while servers running earlier
+   * versions, which can only read Base64 encoded values, share the same Redis.
+   *
+   * @param base64Attributes {@code true} to write Base64 encoded values.
+   */
+  public void setBase64Attributes(boolean base64Attributes) {
+    this.base64Attributes = base64Attributes;
+  }
+
+  /**
+   * Provides the name of the format in which timestamps are written into the session metadata, which is
+   * {@link TimestampFormat#ISO_8601} by default. Timestamps in every format are always read.
+   */
+  public String getTimestampFormat() {
+    return timestampFormat.name();
+  }
+
+  /**
+   * Sets the format in which timestamps are written into the session metadata. {@link TimestampFormat#EPOCH_MILLIS}
+   * is much cheaper to write and read, but servers running earlier versions cannot read it.
+   *
+   * @param timestampFormat The name of a {@link TimestampFormat}, case insensitive; never {@code null}.
+   */
+  public void setTimestampFormat(String timestampFormat) {
+    this.timestampFormat = TimestampFormat.fromString(timestampFormat);
+  }
+
+  /**
+   * Provides the format in which timestamps are written into the session metadata.
+   *
+   * @return The format; never {@code null}.
+   */
+  public TimestampFormat getMetadataTimestampFormat() {
+    return timestampFormat;
+  }
+
+  /**
+   * Provides the name of the policy deciding which session attributes are written back when a request completes,
+   * which is {@link AttributeSavePolicy#ALWAYS} by default.
+   */
+  public String getSavePolicy() {
+    return savePolicy.name();
+  }
+
+  /**
+   * Sets the policy deciding which session attributes are written back when a request completes.
+   *
+   * @param savePolicy The name of an {@link AttributeSavePolicy}, case insensitive; never {@code null}.
+   */
+  public void setSavePolicy(String savePolicy) {
+    this.savePolicy = AttributeSavePolicy.fromString(savePolicy);
+  }
+
+  /**
+   * Provides the policy deciding which session attributes are written back when a request completes.
+   *
+   * @return The policy; never {@code null}.
+   */
+  public AttributeSavePolicy getAttributeSavePolicy() {
+    return savePolicy;
+  }
+
+  @Override
+  protected void initInternal() throws LifecycleException {
+    // Nothing to initialize
+  }
+
+  /**
+   * Connects to Redis using the configured connection settings.
+   */
+  @Override
+  protected void startInternal() throws LifecycleException {
+    try {
+      getRedis();
+    } catch (Exception e) {
+      throw new LifecycleException("Could not create the Redis client", e);
+    }
+    if (nearCacheInvalidation) {
+      invalidationSubscriber = new SessionInvalidationSubscriber(
+                                                                    getRedis(), Convention.NEAR_CACHE_INVALIDATION_CHANNEL,
+                                                                    id -> nearCache.invalidate(id), () -> nearCache.clear()
+      );
+      invalidationSubscriber.start();
+    }
+    setState(LifecycleState.STARTING);
+  }
+
+  /**
+   * Closes the Redis connection pool. If the manager is started again, a new pool is created from the connection
+   * settings at that time.
+   */
+  @Override
+  protected void stopInternal() throws LifecycleException {
+    setState(LifecycleState.STOPPING);
+    SessionInvalidationSubscriber subscriber = invalidationSubscriber;
+    invalidationSubscriber = null;
+    if (subscriber != null) subscriber.stop();
+    nearCache.clear();
+    synchronized (redisConfig) {
+      if (redis != null) {
+        redis.close();
+        redis = null;
+      }
+    }
+  }
+
+  @Override
+  protected void destroyInternal() throws LifecycleException {
+    // Nothing to destroy
   }
 
   /**
@@ -171,114 +1051,359 @@ public class RedisSessionManager implements Manager {
   }
 
   /**
-   * Returns the total number of sessions created by this manager.
-   *
-   * @return Total number of sessions created by this manager.
+   * Returns the total number of sessions created by this manager. The count is kept in Redis, and so it is shared
+   * by every manager using the same Redis.
+   *
+   * @return Total number of sessions created by this manager.
+   */
+  @Override
+  public long getSessionCounter() {
+    return fetchLongKey(Convention.SESSION_COUNTER_KEY);
+  }
+
+  /**
+   * Sets the total number of sessions created by this manager.
+   *
+   * @param sessionCounter Total number of sessions created by this manager, which must be nonnegative.
+   */
+  @Override
+  public void setSessionCounter(long sessionCounter) {
+    if (sessionCounter < 0) {
+      throw new IllegalArgumentException("Session counter must be nonnegative; was " + sessionCounter);
+    }
+    storeLongKey(Convention.SESSION_COUNTER_KEY, sessionCounter);
+  }
+
+  /**
+   * Gets the maximum number of sessions that have been active at the same
+   * time.
+   *
+   * @return Maximum number of sessions that have been active at the same
+   * time
+   */
+  @Override
+  public int getMaxActive() {
+    return fetchIntegerKey(Convention.SESSION_MAX_ACTIVE_KEY);
+  }
+
+  /**
+   * (Re)sets the maximum number of sessions that have been active at the
+   * same time.
+   *
+   * @param maxActive Maximum number of sessions that have been active at
+   *                  the same time, which must be nonnegative.
+   */
+  @Override
+  public void setMaxActive(int maxActive) {
+    if (maxActive < 0) {
+      throw new IllegalArgumentException("Maximum active sesions must be nonnegative");
+    }
+    storeIntegerKey(Convention.SESSION_MAX_ACTIVE_KEY, maxActive);
+  }
+
+  /**
+   * Gets the number of currently active sessions. This count is maintained incrementally as sessions are created
+   * and invalidated.
+   *
+   * @return Number of currently active sessions
+   */
+  @Override
+  public int getActiveSessions() {
+    return fetchIntegerKey(Convention.ACTIVE_SESSIONS_COUNT_KEY);
+  }
+
+  /**
+   * Overwrites the count of currently active sessions, raising the maximum active sessions if need be.
+   *
+   * @param activeSessions The number of currently active sessions.
+   */
+  public void setActiveSessions(int activeSessions) {
+    try {
+      getRedis().withRedis(jedis -> {
+        jedis.set(Convention.ACTIVE_SESSIONS_COUNT_KEY, Integer.toString(activeSessions));
+        SessionScripts.RAISE_MAX.eval(jedis,
+                                         Collections.singletonList(Convention.SESSION_MAX_ACTIVE_KEY),
+                                         Collections.singletonList(Integer.toString(activeSessions))
+        );
+      });
+    } catch (Exception e) {
+      LOG.error("Could not store the active sessions count of " + activeSessions, e);
+    }
+  }
+
+  /**
+   * Performs the periodic expiration work required by the configured {@link ExpirationStrategy}.
+   */
+  protected void expireSessions() throws Exception {
+    switch (expirationStrategy) {
+      case SCAN:
+        cleanSessions();
+        break;
+      case NATIVE_TTL:
+        // Redis expires the keys itself
+        break;
+      case EXPIRY_INDEX:
+        if (!expiryIndexBackfilled) backfillExpiryIndex();
+        reapExpiredSessions();
+        break;
+      default:
+        throw new IllegalStateException("Unknown expiration strategy: " + expirationStrategy);
+    }
+  }
+
+  /**
+   * Reaps at most {@link #getExpiryReapBatchSize()} sessions from the expiry index whose expiration has passed.
+   * <p>
+   * Each due session is claimed by removing it from the index, so only one node reaps it. Since the session may
+   * have been accessed between reading the index and claiming it, the expiration is re-checked against the
+   * metadata: sessions which are still valid and alive are put back into the index with their current expiration,
+   * sessions which are already invalid or gone are left out of it, and the rest are invalidated via
+   * {@link #invalidateSession(String, Date)}.
+   */
+  protected void reapExpiredSessions() throws Exception {
+    long now = System.currentTimeMillis();
+    Set<String> dueSessionIds = getRedis().withRedis(jedis -> {
+      return jedis.zrangeByScore(Convention.SESSION_EXPIRY_INDEX_KEY, Double.NEGATIVE_INFINITY, now, 0, expiryReapBatchSize);
+    });
+    if (dueSessionIds == null || dueSessionIds.isEmpty()) return;
+
+    Map<String, Response<Long>> claims = new LinkedHashMap<>(dueSessionIds.size());
+    Map<String, Response<List<String>>> metadata = new LinkedHashMap<>(dueSessionIds.size());
+    getRedis().withRedisPipeline(pipeline -> {
+      dueSessionIds.forEach(sessionId -> {
+        claims.put(sessionId, pipeline.zrem(Convention.SESSION_EXPIRY_INDEX_KEY, sessionId));
+        metadata.put(sessionId, pipeline.hmget(Convention.sessionIdToMetadataKey(sessionId),
+                                                  Convention.LAST_ACCESS_TIME_HKEY, Convention.MAX_INACTIVE_INTERVAL_HKEY,
+                                                  Convention.CREATION_TIME_HKEY, Convention.IS_VALID_HKEY
+        ));
+      });
+    });
+
+    BooleanConverter booleanConverter = new BooleanConverter();
+    RedisWriteBatch stillAlive = new RedisWriteBatch();
+    claims.forEach((sessionId, claim) -> {
+      if (!Long.valueOf(1L).equals(claim.get())) return; // Another node got to it first
+      List<String> values = metadata.get(sessionId).get();
+      if (!isValidFlag(booleanConverter, sessionId, values.get(3))) return; // Already invalidated or gone
+      Date expDate = parseExpirationDate(sessionId, values.get(0), values.get(1));
+      if (expDate.getTime() <= now) {
+        invalidateSession(sessionId, parseMetadataDate(sessionId, values.get(2)));
+      } else {
+        stillAlive.zadd(Convention.SESSION_EXPIRY_INDEX_KEY, expDate.getTime(), sessionId);
+      }
+    });
+    getRedis().withRedisPipeline(stillAlive::queue);
+  }
+
+  private static boolean isValidFlag(BooleanConverter booleanConverter, String sessionId, String isValidString) {
+    try {
+      return booleanConverter.convertFromString(isValidString);
+    } catch (NumberFormatException e) {
+      LOG.warn("Could not parse the validity of " + sessionId + ": " + isValidString + "; treating it as invalid", e);
+      return false;
+    }
+  }
+
+  /**
+   * Adds every valid session which expires to the expiry index, scanning the metadata keys, so that sessions created
+   * before the strategy was {@link ExpirationStrategy#EXPIRY_INDEX} are reaped too. Sessions already in the index
+   * keep their score, since that was written when they were last accessed. This is done once, by the first
+   * background pass after the strategy is set.
    */
-  @Override
-  public long getSessionCounter() {
-    return sessionCounter.get();
+  protected void backfillExpiryIndex() throws Exception {
+    BooleanConverter booleanConverter = new BooleanConverter();
+    Map<String, Double> expirations = new LinkedHashMap<>();
+    forEachSessionMetadata(createSessionIdStream(), (sessionId, values) -> {
+      if (!isValidFlag(booleanConverter, sessionId, values.get(0))) return;
+      Date expDate = parseExpirationDate(sessionId, values.get(1), values.get(2));
+      if (expDate.getTime() != Long.MAX_VALUE) expirations.put(sessionId, (double) expDate.getTime());
+    }, Convention.IS_VALID_HKEY, Convention.LAST_ACCESS_TIME_HKEY, Convention.MAX_INACTIVE_INTERVAL_HKEY);
+
+    List<String> sessionIds = new ArrayList<>(expirations.keySet());
+    for (int start = 0; start < sessionIds.size(); start += PIPELINE_BATCH_SIZE) {
+      Map<String, Double> batch = new HashMap<>();
+      sessionIds.subList(start, Math.min(sessionIds.size(), start + PIPELINE_BATCH_SIZE))
+          .forEach(sessionId -> batch.put(sessionId, expirations.get(sessionId)));
+      getRedis().withRedis(jedis -> {
+        jedis.zadd(Convention.SESSION_EXPIRY_INDEX_KEY, batch, ZAddParams.zAddParams().nx());
+      });
+    }
+    expiryIndexBackfilled = true;
+    LOG.info("Added " + expirations.size() + " existing sessions to the expiry index");
   }
 
   /**
-   * Sets the total number of sessions created by this manager.
+   * Queues the expiration of the session's keys onto the batch, if the {@link ExpirationStrategy} calls for it. When
+   * the strategy is {@link ExpirationStrategy#NATIVE_TTL}, the keys are set to expire after the max inactive
+   * interval, or to never expire if the interval is not positive. When the strategy is
+   * {@link ExpirationStrategy#EXPIRY_INDEX}, the session's entry in the index is scored with its new expiration, or
+   * removed if the interval is not positive.
    *
-   * @param sessionCounter Total number of sessions created by this manager, which must be nonnegative.
+   * @param batch               The batch to write to; never {@code null}
+   * @param sessionId           The session whose keys should expire; never {@code null}
+   * @param maxInactiveInterval The max inactive interval of the session, in seconds
    */
-  @Override
-  public void setSessionCounter(long sessionCounter) {
-    this.sessionCounter.set(sessionCounter);
+  public void stageSessionExpiration(RedisWriteBatch batch, String sessionId, int maxInactiveInterval) {
+    Objects.requireNonNull(batch, "batch to stage expiration into");
+    Objects.requireNonNull(sessionId, "session id whose keys expire");
+    switch (expirationStrategy) {
+      case SCAN:
+        break;
+      case NATIVE_TTL:
+        Convention.getSessionKeys(sessionId).forEach(key -> {
+          if (maxInactiveInterval > 0) {
+            batch.pexpire(key, TimeUnit.SECONDS.toMillis(maxInactiveInterval));
+          } else {
+            batch.persist(key);
+          }
+        });
+        break;
+      case EXPIRY_INDEX:
+        if (maxInactiveInterval > 0) {
+          long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(maxInactiveInterval);
+          batch.zadd(Convention.SESSION_EXPIRY_INDEX_KEY, expiresAt, sessionId);
+        } else {
+          batch.zrem(Convention.SESSION_EXPIRY_INDEX_KEY, sessionId);
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unknown expiration strategy: " + expirationStrategy);
+    }
   }
 
   /**
-   * Gets the maximum number of sessions that have been active at the same
-   * time.
+   * Queues recording an access to the session onto the batch, as {@link #touchExistingSession(String, int)} records it
+   * when the session is looked up. The caller is responsible for also staging the session's expiration.
    *
-   * @return Maximum number of sessions that have been active at the same
-   * time
+   * @param batch     The batch to write to; never {@code null}
+   * @param sessionId The session which was accessed; never {@code null}
    */
-  @Override
-  public int getMaxActive() {
-    return fetchIntegerKey(Convention.SESSION_MAX_ACTIVE_KEY);
+  public void stageSessionAccess(RedisWriteBatch batch, String sessionId) {
+    Objects.requireNonNull(batch, "batch to stage the access into");
+    Objects.requireNonNull(sessionId, "session id which was accessed");
+    batch.hset(Convention.sessionIdToMetadataKey(sessionId), Convention.LAST_ACCESS_TIME_HKEY,
+               timestampFormat.format(System.currentTimeMillis()));
   }
 
   /**
-   * (Re)sets the maximum number of sessions that have been active at the
-   * same time.
+   * Parses the max inactive interval stored in the metadata, defaulting to {@link #getMaxInactiveInterval()}.
    *
-   * @param maxActive Maximum number of sessions that have been active at
-   *                  the same time, which must be nonnegative.
+   * @param maxInactiveIntervalString The raw max inactive interval (in seconds); may be {@code null}.
+   * @return The max inactive interval, in seconds.
    */
-  @Override
-  public void setMaxActive(int maxActive) {
-    if (maxActive < 0) {
-      throw new IllegalArgumentException("Maximum active sesions must be nonnegative");
+  protected int parseMaxInactiveInterval(String maxInactiveIntervalString) {
+    if (maxInactiveIntervalString == null || maxInactiveIntervalString.isEmpty()) return getMaxInactiveInterval();
+    try {
+      return Integer.parseInt(maxInactiveIntervalString);
+    } catch (NumberFormatException nfe) {
+      LOG.warn("Could not parse max inactive interval: " + maxInactiveIntervalString + "; using the default", nfe);
+      return getMaxInactiveInterval();
     }
-    storeIntegerKey(Convention.SESSION_MAX_ACTIVE_KEY, maxActive);
   }
 
   /**
-   * Gets the number of currently active sessions.
+   * Parses the version of a session from its metadata.
    *
-   * @return Number of currently active sessions
+   * @param versionString The stored version; {@code null} if the session has never been written.
+   * @return The version, or {@link RedisSession#UNKNOWN_VERSION} if it could not be parsed.
+   * @see Convention#VERSION_HKEY
    */
-  @Override
-  public int getActiveSessions() {
-    return fetchIntegerKey(Convention.ACTIVE_SESSIONS_COUNT_KEY);
-  }
-
-  public void setActiveSessions(int activeSessions) {
-    redis.withRedisAsync(jedis -> {
-      jedis.set(Convention.ACTIVE_SESSIONS_COUNT_KEY, Integer.toString(activeSessions));
-    });
-    int maxActive = getMaxActive();
-    if (maxActive < activeSessions) setMaxActive(activeSessions);
+  protected long parseVersion(String versionString) {
+    if (versionString == null) return 0L;
+    try {
+      return Long.parseLong(versionString);
+    } catch (NumberFormatException e) {
+      LOG.warn("Could not parse session version: " + versionString, e);
+      return RedisSession.UNKNOWN_VERSION;
+    }
   }
 
   /**
-   * Cleans all the sessions as per {@link #cleanSession(String)}.
+   * Invalidates every session whose expiration has passed, scanning the metadata keys once and fetching the metadata
+   * in pipelined batches. Sessions which are already invalid are skipped.
    */
   protected void cleanSessions() throws Exception {
-    createAttributesKeyStream()
-        .map(Convention::attributesKeyToSessionId)
-        .forEach(sessionId -> this.cleanSession(sessionId));
+    Date now = new Date();
+    BooleanConverter booleanConverter = new BooleanConverter();
+    forEachSessionMetadata(createSessionIdStream(), (sessionId, values) -> {
+      try {
+        if (!booleanConverter.convertFromString(values.get(0))) return;
+        Date expDate = parseExpirationDate(sessionId, values.get(1), values.get(2));
+        if (expDate.before(now)) invalidateSession(sessionId, parseMetadataDate(sessionId, values.get(3)));
+      } catch (Exception e) {
+        LOG.warn("Exception when checking for expiration; the session may not be invalidated", e);
+      }
+    }, Convention.IS_VALID_HKEY, Convention.LAST_ACCESS_TIME_HKEY, Convention.MAX_INACTIVE_INTERVAL_HKEY,
+        Convention.CREATION_TIME_HKEY
+    );
   }
 
   /**
-   * Cleans up the state of the session, invalidating it if its expiration has passed or it is otherwise nonsensical.
+   * Invalidates the session in Redis. If it was valid, then the active and expired session counts are updated, and
+   * how long it was alive for is recorded into the {@link AliveTimeHistogram}.
    *
-   * @param sessionid The session id to check; never {@code null}
-   * @return {@code true} if the session is still valid after cleaning; {@code false} if the session is now invalid
-   * @throws Exception
+   * @param sessionid    The session to invalidate; never {@code null}
+   * @param creationTime When the session was created; if {@code null}, its alive time is not recorded
+   * @return {@code true} if the session was valid and is now invalid; {@code false} if it was already invalid, did
+   * not exist, or could not be invalidated.
    */
-  protected boolean cleanSession(String sessionid) {
-    try {
-      Date expDate = getSessionExpirationDate(sessionid);
-
-      // If the expiration date is in the past, expire it.
-      if (expDate.before(new Date())) {
-        invalidateSession(sessionid);
-        return false;
-      }
-
-      return true;
-    } catch (Exception e) {
-      LOG.warn("Exception when checking for expiration; the session may not be invalidated", e);
-      return true;
-    }
+  protected boolean invalidateSession(String sessionid, Date creationTime) {
+    return invalidateSession(sessionid, creationTime, true);
   }
 
-  protected void invalidateSession(String sessionid) {
-    String metadataKey = Convention.sessionIdToMetadataKey(sessionid);
+  /**
+   * Invalidates the session in Redis, as per {@link #invalidateSession(String, Date)}, optionally leaving the
+   * expiration statistics alone. The active session count is updated either way.
+   *
+   * @param sessionid        The session to invalidate; never {@code null}
+   * @param creationTime     When the session was created; if {@code null}, its alive time is not recorded
+   * @param updateStatistics Whether to count the session as expired and record its alive time
+   * @return {@code true} if the session was valid and is now invalid; {@code false} if it was already invalid, did
+   * not exist, or could not be invalidated.
+   */
+  protected boolean invalidateSession(String sessionid, Date creationTime, boolean updateStatistics) {
+    nearCache.remove(sessionid);
+    Date now = new Date();
+    long aliveTimeSeconds = creationTime == null ? 0L :
+                                Math.max(0L, TimeUnit.MILLISECONDS.toSeconds(now.getTime() - creationTime.getTime()));
+    BooleanConverter booleanConverter = new BooleanConverter();
+    List<String> bucket = currentBucket(Convention::sessionsExpiredBucketKey);
+    List<String> keys = Arrays.asList(
+                                         Convention.sessionIdToMetadataKey(sessionid),
+                                         Convention.sessionIdToAttributesKey(sessionid),
+                                         Convention.SESSION_EXPIRY_INDEX_KEY,
+                                         Convention.ACTIVE_SESSIONS_COUNT_KEY,
+                                         Convention.EXPIRED_SESSIONS_COUNT_KEY,
+                                         bucket.get(0),
+                                         Convention.SESSION_ALIVE_TIME_HISTOGRAM_KEY,
+                                         Convention.sessionIdToChunksKey(sessionid)
+    );
+    List<String> args = Arrays.asList(
+                                         sessionid,
+                                         Convention.IS_VALID_HKEY,
+                                         booleanConverter.convertToString(true),
+                                         booleanConverter.convertToString(false),
+                                         Convention.EXPIRED_TIME_HKEY,
+                                         Convention.stringFromDate(now, timestampFormat),
+                                         bucket.get(1),
+                                         creationTime == null ? "" :
+                                             AliveTimeHistogram.bucketField(AliveTimeHistogram.bucketIndex(aliveTimeSeconds)),
+                                         AliveTimeHistogram.COUNT_FIELD,
+                                         AliveTimeHistogram.SUM_FIELD,
+                                         AliveTimeHistogram.MAX_FIELD,
+                                         Long.toString(aliveTimeSeconds),
+                                         updateStatistics ? "1" : "0"
+    );
     try {
-      redis.withRedis(jedis -> {
-        // Ordering is significant: invalid requires expired time to be set, and deleting attributes requires invalid
-        jedis.hset(metadataKey, Convention.EXPIRED_TIME_HKEY, Convention.stringFromDate(new Date()));
-        jedis.hset(metadataKey, Convention.IS_VALID_HKEY, new BooleanConverter().convertToString(false));
-        jedis.del(Convention.sessionIdToAttributesKey(sessionid));
+      Object result = getRedis().withRedis(jedis -> {
+        Object invalidated = SessionScripts.INVALIDATE.eval(jedis, keys, args);
+        publishInvalidationNotice(jedis::publish, sessionid);
+        return invalidated;
       });
+      return Long.valueOf(1L).equals(result);
     } catch (Exception e) {
       LOG.error("Could not invalidate session with id: " + sessionid, e);
+      return false;
     }
   }
 
@@ -305,7 +1430,7 @@ public class RedisSessionManager implements Manager {
   protected long fetchLongKey(String key) {
     try {
       // See if we have a cached value
-      String valueString = redis.withRedis(jedis -> {
+      String valueString = getRedis().withRedis(jedis -> {
         return jedis.get(key);
       });
       if (valueString == null || valueString.isEmpty()) return 0L;
@@ -318,7 +1443,7 @@ public class RedisSessionManager implements Manager {
 
   protected void storeLongKey(String key, long value) {
     try {
-      redis.withRedis(jedis -> {
+      getRedis().withRedis(jedis -> {
         jedis.set(key, Long.toString(value));
       });
     } catch (Exception e) {
@@ -347,7 +1472,7 @@ public class RedisSessionManager implements Manager {
    */
   @Override
   public int getSessionMaxAliveTime() {
-    return fetchIntegerKey(Convention.SESSION_MAX_ALIVE_TIME_KEY);
+    return (int) Math.min(Integer.MAX_VALUE, getSessionAliveTimeHistogram().getMax());
   }
 
   /**
@@ -359,53 +1484,69 @@ public class RedisSessionManager implements Manager {
    */
   @Override
   public void setSessionMaxAliveTime(int sessionMaxAliveTime) {
-    storeIntegerKey(Convention.SESSION_MAX_ALIVE_TIME_KEY, sessionMaxAliveTime);
+    try {
+      getRedis().withRedis(jedis -> {
+        jedis.hset(Convention.SESSION_ALIVE_TIME_HISTOGRAM_KEY, AliveTimeHistogram.MAX_FIELD,
+                      Integer.toString(sessionMaxAliveTime)
+        );
+      });
+    } catch (Exception e) {
+      LOG.error("Could not set the maximum session alive time in Redis", e);
+    }
   }
 
   /**
-   * Provides how long the session was alive for, assuming it was expired.
+   * Provides a snapshot of the histogram of how long invalidated sessions were alive for, read with a single
+   * {@code HGETALL}.
    *
-   * @param sessionId The session to check; never {@code null}
-   * @return How long the session was alive for (in milliseconds); may be {@code null} if  it could not be determined.
+   * @return The histogram; never {@code null}, but empty if it could not be read.
    */
-  protected Long getSessionAliveTime(String sessionId) {
-    if (sessionId == null || sessionId.isEmpty()) return null;
+  public AliveTimeHistogram getSessionAliveTimeHistogram() {
     try {
-      String metadataKey = Convention.metadataKeyToSessionId(sessionId);
-
-      List<String> results = redis.withRedis(jedis -> {
-        return jedis.hmget(metadataKey, Convention.CREATION_TIME_HKEY, Convention.EXPIRED_TIME_HKEY);
+      Map<String, String> hash = getRedis().withRedis(jedis -> {
+        return jedis.hgetAll(Convention.SESSION_ALIVE_TIME_HISTOGRAM_KEY);
       });
-      String creationTimeString = results.get(0);
-      String expiredTimeString = results.get(1);
-
-      if (creationTimeString == null || expiredTimeString == null) return null;
-      if (creationTimeString.isEmpty() || expiredTimeString.isEmpty()) return null;
-
-      Date creationTime = Convention.dateFromString(creationTimeString);
-      Date expiredTime = Convention.dateFromString(expiredTimeString);
-      return expiredTime.getTime() - creationTime.getTime();
+      return new AliveTimeHistogram(hash == null ? Collections.emptyMap() : hash);
     } catch (Exception e) {
-      LOG.info("Could not determine the session alive time for " + sessionId, e);
-      return null;
+      LOG.error("Could not retrieve the session alive time histogram from Redis; treating it as empty", e);
+      return new AliveTimeHistogram(Collections.emptyMap());
     }
   }
 
+  /**
+   * Gets the median time (in seconds) that expired sessions had been alive, accurate to within a factor of two.
+   *
+   * @return The median alive time (in seconds).
+   */
+  public int getSessionMedianAliveTime() {
+    return (int) Math.min(Integer.MAX_VALUE, getSessionAliveTimeHistogram().getPercentile(0.5));
+  }
+
+  /**
+   * Gets the time (in seconds) that 99% of expired sessions had been alive for at most, accurate to within a factor
+   * of two.
+   *
+   * @return The 99th percentile alive time (in seconds).
+   */
+  public int getSession99thPercentileAliveTime() {
+    return (int) Math.min(Integer.MAX_VALUE, getSessionAliveTimeHistogram().getPercentile(0.99));
+  }
+
   /**
    * Gets the average time (in seconds) that expired sessions had been
-   * alive. This may be based on sample data.
+   * alive.
    *
    * @return Average time (in seconds) that expired sessions had been
    * alive.
    */
   @Override
   public int getSessionAverageAliveTime() {
-    return fetchIntegerKey(Convention.SESSION_AVERAGE_ALIVE_TIME_KEY);
+    return (int) Math.min(Integer.MAX_VALUE, getSessionAliveTimeHistogram().getAverage());
   }
 
   protected int fetchIntegerKey(String key) {
     try {
-      String valueString = redis.withRedis(jedis -> {
+      String valueString = getRedis().withRedis(jedis -> {
         return jedis.get(key);
       });
       if (valueString == null || valueString.isEmpty()) return 0;
@@ -418,7 +1559,7 @@ public class RedisSessionManager implements Manager {
 
   protected void storeIntegerKey(String key, int value) {
     try {
-      redis.withRedis(jedis -> {
+      getRedis().withRedis(jedis -> {
         jedis.set(key, Integer.toString(value));
       });
     } catch (Exception e) {
@@ -427,40 +1568,69 @@ public class RedisSessionManager implements Manager {
   }
 
   /**
-   * Gets the current rate of session creation (in session per minute). This
-   * may be based on sample data.
+   * Gets the current rate of session creation (in session per minute), averaged over the last
+   * {@link #getRateWindowMinutes()} minutes.
    *
    * @return The current rate (in sessions per minute) of session creation
    */
   @Override
   public int getSessionCreateRate() {
-    return fetchIntegerKey(Convention.SESSION_CREATE_RATE_KEY);
+    return calculateRate(Convention::sessionsCreatedBucketKey);
   }
 
-  public void setSessionCreateRate(int sessionsPerMinute) {
-    storeIntegerKey(Convention.SESSION_CREATE_RATE_KEY, sessionsPerMinute);
+  /**
+   * Calculates a rate from the per-minute bucket counters within the sliding window, using a single {@code MGET}.
+   * The current minute is only partially elapsed, so it is weighted accordingly.
+   *
+   * @param bucketKey Provides the key of the bucket for a given minute since the epoch; never {@code null}.
+   * @return The rate, in events per minute; 0 if it could not be calculated.
+   */
+  protected int calculateRate(LongFunction<String> bucketKey) {
+    Objects.requireNonNull(bucketKey, "provider of bucket keys");
+    long now = System.currentTimeMillis();
+    long currentMinute = TimeUnit.MILLISECONDS.toMinutes(now);
+    int window = rateWindowMinutes;
+    String[] keys = new String[window];
+    for (int i = 0; i < window; i++) {
+      keys[i] = bucketKey.apply(currentMinute - i);
+    }
+    try {
+      List<String> counts = getRedis().withRedis(jedis -> {
+        return jedis.mget(keys);
+      });
+      long total = counts.stream().filter(it -> it != null && !it.isEmpty()).mapToLong(Long::parseLong).sum();
+      double elapsedMinutes = (window - 1) + (now - TimeUnit.MINUTES.toMillis(currentMinute)) / (double) TimeUnit.MINUTES.toMillis(1L);
+      if (elapsedMinutes <= 0) return (int) Math.min(Integer.MAX_VALUE, total);
+      return (int) Math.min(Integer.MAX_VALUE, total / elapsedMinutes);
+    } catch (Exception e) {
+      LOG.error("Could not calculate rate from buckets; returning 0", e);
+      return 0;
+    }
   }
 
-  protected int calculateSessionCreateRate() throws Exception {
-    return
-        createSessionIdStream()
-            .map(this::getSessionCreateDate).filter(it -> it != null)
-            .map(SessionRateData::new)
-            .reduce(SessionRateData::merge)
-            .map(SessionRateData::getSessionsPerMinute).orElse(0);
+  /**
+   * Provides the key of the current minute's bucket, and how long (in seconds) that bucket should live.
+   */
+  private List<String> currentBucket(LongFunction<String> bucketKey) {
+    long currentMinute = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    long ttl = TimeUnit.MINUTES.toSeconds(rateWindowMinutes + 1L);
+    return Arrays.asList(bucketKey.apply(currentMinute), Long.toString(ttl));
   }
 
-  private Date getSessionCreateDate(String sessionId) {
+  /**
+   * Parses a date stored in the metadata, such as the creation time.
+   *
+   * @param sessionId  The session being checked, used for logging; never {@code null}
+   * @param dateString The raw date; may be {@code null}
+   * @return The date, or {@code null} if it could not be determined.
+   */
+  protected Date parseMetadataDate(String sessionId, String dateString) {
     try {
-      String metadataKey = Convention.sessionIdToMetadataKey(sessionId);
-      String createDateString = redis.withRedis(jedis -> {
-        return jedis.hget(metadataKey, Convention.CREATION_TIME_HKEY);
-      });
-      if (createDateString == null || createDateString.isEmpty()) return new Date();
-      return Convention.dateFromString(createDateString);
+      if (dateString == null || dateString.isEmpty()) return null;
+      return Convention.dateFromString(dateString);
     } catch (Exception e) {
-      LOG.warn("Could not get the create date for sessionId " + sessionId + "; defaulting to now", e);
-      return new Date();
+      LOG.warn("Could not parse a date in the metadata for sessionId " + sessionId, e);
+      return null;
     }
   }
 
@@ -469,26 +1639,14 @@ public class RedisSessionManager implements Manager {
   }
 
   /**
-   * Gets the current rate of session expiration (in session per minute). This
-   * may be based on sample data
+   * Gets the current rate of session expiration (in session per minute), averaged over the last
+   * {@link #getRateWindowMinutes()} minutes.
    *
    * @return The current rate (in sessions per minute) of session expiration
    */
   @Override
   public int getSessionExpireRate() {
-    return fetchIntegerKey(Convention.SESSION_EXPIRE_RATE_KEY);
-  }
-
-  public void setSessionExpireRate(int rate) {
-    storeIntegerKey(Convention.SESSION_EXPIRE_RATE_KEY, rate);
-  }
-
-  public int calculateSessionExpireRate() throws Exception {
-    return createExpiredSessionIdStream()
-               .map(this::getSessionExpirationDate).filter(it -> it != null)
-               .map(SessionRateData::new)
-               .reduce(SessionRateData::merge)
-               .map(SessionRateData::getSessionsPerMinute).orElse(0);
+    return calculateRate(Convention::sessionsExpiredBucketKey);
   }
 
   /**
@@ -535,21 +1693,35 @@ public class RedisSessionManager implements Manager {
   @Override
   public void changeSessionId(Session session, String newId) {
     Objects.requireNonNull(session, "session to change the id");
-    Objects.requireNonNull(redis, "the Redis client");
 
     String oldId = session.getId();
     Map<String, String> keyMapping = Convention.getChangeSessionIdMapping(oldId, newId);
-
+    nearCache.remove(oldId);
+
+    String oldMetadataKey = Convention.sessionIdToMetadataKey(oldId);
+    List<String> keys = new ArrayList<>(2 * keyMapping.size() + 1);
+    keys.add(Convention.SESSION_EXPIRY_INDEX_KEY);
+    keys.add(oldMetadataKey);
+    keys.add(keyMapping.get(oldMetadataKey));
+    keyMapping.forEach((oldKey, newKey) -> {
+      if (oldKey.equals(oldMetadataKey)) return;
+      keys.add(oldKey);
+      keys.add(newKey);
+    });
+    final Object result;
     try {
-      redis.withRedis(jedis -> {
-        keyMapping.entrySet().forEach(entry -> {
-          jedis.rename(entry.getKey(), entry.getValue());
-        });
+      result = getRedis().withRedis(jedis -> {
+        Object moved = SessionScripts.CHANGE_SESSION_ID.eval(jedis, keys, Arrays.asList(oldId, newId));
+        publishInvalidationNotice(jedis::publish, oldId);
+        return moved;
       });
     } catch (Exception e) {
       throw new RuntimeException("Could not change session id for " + oldId + " to " + newId, e);
     }
-
+    if (!Long.valueOf(1L).equals(result)) {
+      throw new IllegalStateException("Could not change session id for " + oldId + " to " + newId +
+                                          ": the session does not exist in Redis");
+    }
   }
 
   /**
@@ -582,7 +1754,11 @@ public class RedisSessionManager implements Manager {
       Objects.requireNonNull(this.sessionIdGenerator, "session id generator");
       sessionId = this.sessionIdGenerator.generateSessionId();
     }
-    return new RedisSession(this, sessionId);
+    SessionNearCache nearCache = this.nearCache;
+    long checkedAt = nearCache.getInvalidationSequence();
+    RedisSession session = new RedisSession(this, sessionId);
+    nearCache.put(session, checkedAt);
+    return session;
   }
 
   /**
@@ -597,14 +1773,45 @@ public class RedisSessionManager implements Manager {
    */
   @Override
   public RedisSession findSession(String id) throws IOException {
+    if (id == null || id.isEmpty()) return null;
     try {
-      boolean found = redis.withRedis(jedis -> {
-        return jedis.exists(Convention.sessionIdToMetadataKey(id));
-      });
-      if (!found) return null;
-      RedisSession session = new RedisSession(this, id);
-      boolean isValid = session.isValidInternal();
-      if (!isValid) return null;
+      SessionNearCache nearCache = this.nearCache;
+      SessionInvalidationSubscriber subscriber = invalidationSubscriber;
+      if (subscriber != null && requestSessions.get() != null && subscriber.isCurrent()) {
+        RedisSession session = nearCache.getTrusted(id, RedisSession::isReusableWithoutLookup);
+        if (session != null) {
+          session.reuseWithoutLookup();
+          return session;
+        }
+      }
+      long checkedAt = nearCache.getInvalidationSequence();
+      // A cached session only needs its version checked, so the rest of the metadata is not worth loading
+      boolean loadAll = bulkMetadataLoad && !nearCache.contains(id);
+      SessionLookup lookup = lookupSession(id, loadAll);
+      if (!lookup.isValid()) {
+        nearCache.remove(id);
+        return null;
+      }
+      long version = parseVersion(lookup.getMetadata().get(Convention.VERSION_HKEY));
+      RedisSession session = nearCache.get(id, version);
+      if (session != null) {
+        if (!session.reuse(lookup.getMetadata())) {
+          nearCache.remove(id);
+          return null;
+        }
+        nearCache.put(session, checkedAt);
+        return session;
+      }
+      int maxInactiveInterval = parseMaxInactiveInterval(lookup.getMetadata().get(Convention.MAX_INACTIVE_INTERVAL_HKEY));
+      // The session expired between the lookup and recording the access, so it must not be created again
+      if (!touchExistingSession(id, maxInactiveInterval)) return null;
+      if (loadAll) {
+        session = new RedisSession(this, id, lookup.getMetadata());
+      } else {
+        session = new RedisSession(this, id, maxInactiveInterval, false);
+      }
+      session.setVersion(version);
+      nearCache.put(session, checkedAt);
       return session;
     } catch (Exception e) {
       LOG.error("Could not retrieve session for id " + id, e);
@@ -612,6 +1819,51 @@ public class RedisSessionManager implements Manager {
     }
   }
 
+  /**
+   * Determines whether the session exists and is valid with a single read, and without writing anything. Either the
+   * entire metadata hash is loaded with {@code HGETALL}, so that it can be preloaded into the session, or only the
+   * fields needed to check validity and to reuse a cached copy of the session are loaded with {@code HMGET}. A session
+   * which is marked as valid but is past its expiration is reported as invalid, and is left for the expiration
+   * strategy to clean up.
+   *
+   * @param id      The session id to look up; never {@code null}
+   * @param loadAll Whether to load the entire metadata hash
+   * @return The result of the lookup; never {@code null}
+   */
+  protected SessionLookup lookupSession(String id, boolean loadAll) throws Exception {
+    Objects.requireNonNull(id, "session id to look up");
+    String metadataKey = Convention.sessionIdToMetadataKey(id);
+    Map<String, String> metadata;
+    if (loadAll) {
+      metadata = getRedis().withRedis(jedis -> {
+        return jedis.hgetAll(metadataKey);
+      });
+    } else {
+      String[] hkeys = {
+          Convention.IS_VALID_HKEY, Convention.LAST_ACCESS_TIME_HKEY, Convention.MAX_INACTIVE_INTERVAL_HKEY,
+          Convention.VERSION_HKEY, Convention.THIS_ACCESSED_TIME_HKEY
+      };
+      List<String> values = getRedis().withRedis(jedis -> {
+        return jedis.hmget(metadataKey, hkeys);
+      });
+      metadata = new HashMap<>(hkeys.length);
+      for (int i = 0; i < hkeys.length; i++) {
+        if (values.get(i) != null) metadata.put(hkeys[i], values.get(i));
+      }
+    }
+    if (metadata == null || metadata.isEmpty()) return SessionLookup.missing();
+
+    boolean isValid = new BooleanConverter().convertFromString(metadata.get(Convention.IS_VALID_HKEY));
+    if (!isValid) return SessionLookup.invalid();
+
+    Date expirationDate = parseExpirationDate(
+        id, metadata.get(Convention.LAST_ACCESS_TIME_HKEY), metadata.get(Convention.MAX_INACTIVE_INTERVAL_HKEY)
+    );
+    if (!expirationDate.after(new Date())) return SessionLookup.invalid();
+
+    return SessionLookup.valid(metadata);
+  }
+
   /**
    * Return the set of active Sessions associated with this Manager.
    * If this Manager has no active Sessions, a zero-length array is returned.
@@ -660,7 +1912,9 @@ public class RedisSessionManager implements Manager {
   }
 
   /**
-   * Remove this Session from the active Sessions for this Manager.
+   * Remove this Session from the active Sessions for this Manager. As in
+   * {@link org.apache.catalina.session.ManagerBase}, the session is only counted as expired, and its alive time
+   * recorded, if {@code update} is set.
    *
    * @param session Session to be removed
    * @param update  Should the expiration statistics be updated
@@ -670,18 +1924,8 @@ public class RedisSessionManager implements Manager {
     Objects.requireNonNull(session, "session to remove");
     String sessionId = session.getId();
     Objects.requireNonNull(sessionId, "id of session to remove");
-    invalidateSession(sessionId);
-
-    if (update) {
-      try {
-        doAllInBackground(
-                             () -> setSessionExpireRate(calculateSessionExpireRate()),
-                             () -> setExpiredSessions(countCurrentExpiredSessions())
-        ).forEach(ForkJoinTask::join);
-      } catch (Exception e) {
-        throw new RuntimeException("Could not update the expiration statistics", e);
-      }
-    }
+    long creationTime = session.getCreationTimeInternal();
+    invalidateSession(sessionId, creationTime > 0 ? new Date(creationTime) : null, update);
   }
 
   /**
@@ -706,10 +1950,6 @@ public class RedisSessionManager implements Manager {
     // DO NOTHING
   }
 
-  public List<ForkJoinTask<Void>> doAllInBackground(Procedure... procedures) {
-    return Arrays.asList(procedures).parallelStream().map(this::doInBackground).collect(Collectors.toList());
-  }
-
   /**
    * This method will be invoked by the context/container on a periodic
    * basis and allows the manager to implement
@@ -717,142 +1957,102 @@ public class RedisSessionManager implements Manager {
    */
   @Override
   public void backgroundProcess() {
-    doAllInBackground(
-                         this::cleanSessions,
-                         () -> setActiveSessions(countCurrentActiveSessions()),
-                         () -> setExpiredSessions(countCurrentExpiredSessions()),
-                         () -> setSessionMaxAliveTime(calculateSessionMaxAliveTime()),
-                         () -> setSessionAverageAliveTime(calculateSessionAverageAliveTime()),
-                         () -> setSessionCreateRate(calculateSessionCreateRate()),
-                         () -> setSessionExpireRate(calculateSessionExpireRate())
-    );
-  }
-
-
-  /**
-   * Returns the session average alive time in seconds.
-   *
-   * @return The average time that a session has been alive, in seconds; or 0 if that cannot be calculated.
-   */
-  protected int calculateSessionAverageAliveTime() {
+    // Skip this tick if the previous pass is still running, rather than piling passes up on the executor
+    if (!statisticsInProgress.compareAndSet(false, true)) return;
     try {
-      Collector<String, ?, Double> averager = Collectors.averagingLong(this::getSessionAliveTime);
-      Double average = createExpiredSessionIdStream().collect(averager);
-      if (average == null) return 0;
-      return Double.valueOf(average / 1000).intValue();
-    } catch (Exception e) {
-      LOG.error("Could not calculate the average session alive time; defaulting to 0", e);
-      return 0;
+      doInBackground(this::updateStatistics).whenComplete((result, error) -> statisticsInProgress.set(false));
+    } catch (IllegalStateException e) {
+      // The manager is stopping, so there is no Redis client to do the pass with
+      statisticsInProgress.set(false);
+      LOG.debug("Skipping the background pass", e);
     }
   }
 
-  protected int setSessionAverageAliveTime(int averageAliveTimeSeconds) {
-    if (averageAliveTimeSeconds < 0) {
-      throw new IllegalArgumentException("Average alive time must be nonnegative; was " + averageAliveTimeSeconds);
-    }
-    try {
-      redis.withRedis(jedis -> {
-        jedis.set(Convention.SESSION_AVERAGE_ALIVE_TIME_KEY, Integer.toString(averageAliveTimeSeconds));
-      });
-    } catch (Exception e) {
-      LOG.error("Could not set the average session alive time in Redis", e);
+  /**
+   * Does the {@link ExpirationStrategy}'s expiration work. The session counts, rates and alive times are all maintained
+   * incrementally as sessions are created and invalidated, so nothing else needs to sweep the sessions. The exception
+   * is the {@link ExpirationStrategy#NATIVE_TTL} strategy: Redis removes those sessions without us seeing it, so the
+   * active count is reconciled every {@link #ACTIVE_SESSIONS_RECONCILE_TICKS} passes. Those sessions are never counted
+   * as expired, nor are their alive times recorded, since nothing records when or whether they expired.
+   */
+  protected void updateStatistics() throws Exception {
+    expireSessions();
+    if (expirationStrategy == ExpirationStrategy.NATIVE_TTL &&
+            backgroundTicks.getAndIncrement() % ACTIVE_SESSIONS_RECONCILE_TICKS == 0) {
+      reconcileActiveSessions();
     }
-    return getSessionAverageAliveTime();
   }
 
-
-  protected int calculateSessionMaxAliveTime() {
-    try {
-      Optional<Long> result =
-          createMetadataKeyStream()
-              .map(this::getSessionAliveTime)
-              .max(Comparator.naturalOrder());
-      Long maxAliveTime = result.orElse(null);
-      if (maxAliveTime == null) return 0;
-      maxAliveTime = TimeUnit.MILLISECONDS.toSeconds(maxAliveTime);
-      return (int) Math.min(Integer.MAX_VALUE, maxAliveTime);
-    } catch (Exception e) {
-      LOG.error("Error determining the session max alive time; defaulting to 0", e);
-      return 0;
-    }
+  /**
+   * Overwrites the active session count with the number of valid sessions, as found by scanning the metadata keys and
+   * fetching only their validity.
+   */
+  protected void reconcileActiveSessions() throws Exception {
+    BooleanConverter booleanConverter = new BooleanConverter();
+    AtomicInteger activeSessions = new AtomicInteger(0);
+    forEachSessionMetadata(createSessionIdStream(), (sessionId, values) -> {
+      if (booleanConverter.convertFromString(values.get(0))) activeSessions.incrementAndGet();
+    }, Convention.IS_VALID_HKEY);
+    setActiveSessions(activeSessions.get());
   }
 
-  protected ForkJoinTask<Void> doInBackground(Procedure action) {
-    return ForkJoinPool.commonPool().submit(() -> {
+  /**
+   * Executes the action on the Redis client's executor for asynchronous calls, logging any failure.
+   *
+   * @param action The action to execute; never {@code null}.
+   * @return The future completion of the action; never {@code null}.
+   */
+  protected CompletableFuture<Void> doInBackground(Procedure action) {
+    Objects.requireNonNull(action, "action to execute in the background");
+    return doInBackground(() -> {
       action.apply();
       return null;
     });
   }
 
-  protected <T> ForkJoinTask<T> doInBackground(Supplier<T> action) {
-    return ForkJoinPool.commonPool().submit(action::get);
-  }
-
-  protected long countCurrentExpiredSessions() {
-    try {
-      return
-          createMetadataKeyStream()
-              .map(Convention::metadataKeyToSessionId)
-              .filter(sessionId -> !getSessionValidity(sessionId))
-              .distinct().count();
-    } catch (Exception e) {
-      LOG.error("Error counting the current expired sessions; returning 0", e);
-      return 0L;
-    }
+  /**
+   * Executes the action on the Redis client's executor for asynchronous calls, logging any failure.
+   *
+   * @param action The action to execute; never {@code null}.
+   * @return The future result of the action; never {@code null}.
+   */
+  protected <T> CompletableFuture<T> doInBackground(Callable<T> action) {
+    Objects.requireNonNull(action, "action to execute in the background");
+    CompletableFuture<T> future = getRedis().doAsync(action);
+    future.whenComplete((result, error) -> {
+      if (error != null) LOG.error("Background work with Redis failed", error);
+    });
+    return future;
   }
 
   /**
-   * Given a session id, provides the expiration date for that session.
+   * Given the raw metadata for a session, provides the expiration date for that session.
    *
-   * @param sessionId The session whose expiry is desired; never {@code null}.
+   * @param sessionId                 The session being checked, used for logging; never {@code null}.
+   * @param lastAccessTimeString      The raw last access time from the metadata; may be {@code null}.
+   * @param maxInactiveIntervalString The raw max inactive interval (in seconds) from the metadata; if {@code null},
+   *                                  the manager's default is used.
    * @return The expiration date for that session, if known; otherwise, {@code new Date(0)}.
    */
-  protected Date getSessionExpirationDate(String sessionId) {
-    Objects.requireNonNull(sessionId, "session id whose expiration date is desired");
+  protected Date parseExpirationDate(String sessionId, String lastAccessTimeString, String maxInactiveIntervalString) {
     Date defaultDate = new Date(0L);
-    String metadataKey = Convention.sessionIdToMetadataKey(sessionId);
     try {
-      List<String> results = redis.withRedis(jedis -> {
-        return jedis.hmget(metadataKey, Convention.LAST_ACCESS_TIME_HKEY, Convention.MAX_INACTIVE_INTERVAL_HKEY);
-      });
-      String lastAccessTimeString = results.get(0);
       if (lastAccessTimeString == null || lastAccessTimeString.isEmpty()) {
         LOG.info("No last access time in Redis for " + sessionId + "; returning " + defaultDate);
         return defaultDate;
       }
       Date lastAccessTime = Convention.dateFromString(lastAccessTimeString);
 
-      String maxInactiveIntervalString = results.get(1);
-      if (maxInactiveIntervalString == null || maxInactiveIntervalString.isEmpty()) {
-        LOG.info("No max inactive inveral in Redis for " + sessionId + "; returning " + defaultDate);
-        return defaultDate;
-      }
-      long maxInactiveInterval = Long.parseLong(maxInactiveIntervalString);
+      long maxInactiveInterval = parseMaxInactiveInterval(maxInactiveIntervalString);
+      if (maxInactiveInterval <= 0) return new Date(Long.MAX_VALUE);
 
-      return new Date(lastAccessTime.getTime() + maxInactiveInterval);
+      return new Date(lastAccessTime.getTime() + TimeUnit.SECONDS.toMillis(maxInactiveInterval));
     } catch (Exception e) {
       LOG.error("Error while determining the session expiration date for " + sessionId + "; returning " + defaultDate, e);
       return defaultDate;
     }
   }
 
-  protected boolean getSessionValidity(String sessionId) {
-    Objects.requireNonNull(sessionId, "session id whose expiration date is desired");
-    String metadataKey = Convention.sessionIdToMetadataKey(sessionId);
-    try {
-      String validityString = redis.withRedis(jedis -> {
-        return jedis.hget(metadataKey, Convention.IS_VALID_HKEY);
-      });
-      return new BooleanConverter().convertFromString(validityString);
-    } catch (Exception e) {
-      LOG.error("Error while determining session validity for " + sessionId +
-                    "; returning invalid", e
-      );
-      return false;
-    }
-
-  }
-
   /**
    * Provides a stream of the metadata keys (some of which may be duplicated).
    *
@@ -862,107 +2062,252 @@ public class RedisSessionManager implements Manager {
     return createKeyScanStream(Convention.METADATA_KEY_PATTERN);
   }
 
-  /**
-   * Provides a stream of attribute keys (some of which may be duplicated).
-   *
-   * @return The stream of attribute keys.
-   */
-  protected Stream<String> createAttributesKeyStream() throws Exception {
-    return createKeyScanStream(Convention.ATTRIBUTES_KEY_PATTERN);
-  }
-
   /**
    * Creates a key scan stream that matches keys with the given pattern.
    *
    * @param pattern The Redis pattern to match.
    */
   protected Stream<String> createKeyScanStream(String pattern) throws Exception {
-    return redis.fullScan(() -> {
+    return getRedis().fullScan(() -> {
       ScanParams param = new ScanParams();
       param.match(pattern);
       return param;
-    }).parallel();
+    });
   }
 
   protected Stream<String> createValidSessionIdStream() throws Exception {
-    cleanSessions();
+    expireSessions();
     return createSessionIdStreamWithValidityFilter(true);
   }
 
-  protected Stream<String> createExpiredSessionIdStream() throws Exception {
-    return createSessionIdStreamWithValidityFilter(false);
+  protected Stream<String> createSessionIdStreamWithValidityFilter(boolean valid) throws Exception {
+    BooleanConverter converter = new BooleanConverter();
+    return fetchSessionMetadata(createSessionIdStream(), Convention.IS_VALID_HKEY)
+               .entrySet().stream()
+               .filter(entry -> converter.convertFromString(entry.getValue().get(0)) == valid)
+               .map(Map.Entry::getKey);
   }
 
-  protected Stream<String> createSessionIdStreamWithValidityFilter(boolean valid) throws Exception {
-    Predicate<String> validityTest = this::getSessionValidity;
-    if (!valid) validityTest = validityTest.negate();
-    return createSessionIdStream().filter(validityTest);
+  /**
+   * Retrieves the given metadata fields for each of the sessions, pipelining the {@code HMGET} calls in batches of
+   * {@link #PIPELINE_BATCH_SIZE} so that each batch costs a single round trip.
+   *
+   * @param sessionIds The ids of the sessions to fetch (duplicates are ignored); never {@code null}
+   * @param hashKeys   The metadata hash keys to fetch; never {@code null}
+   * @return A map from session id onto the values of the hash keys, in the order they were requested; never
+   * {@code null}. Sessions whose metadata could not be retrieved are omitted.
+   */
+  protected Map<String, List<String>> fetchSessionMetadata(Stream<String> sessionIds, String... hashKeys) {
+    Map<String, List<String>> toReturn = new LinkedHashMap<>();
+    forEachSessionMetadata(sessionIds, toReturn::put, hashKeys);
+    return toReturn;
+  }
+
+  /**
+   * Retrieves the given metadata fields for each of the sessions, pipelining the {@code HMGET} calls in batches of
+   * {@link #PIPELINE_BATCH_SIZE}, and hands each session's values to the consumer as each batch arrives.
+   *
+   * @param sessionIds The ids of the sessions to fetch (duplicates are ignored); never {@code null}
+   * @param consumer   Receives the session id and the values of the hash keys, in the order they were requested;
+   *                   never {@code null}. Sessions whose metadata could not be retrieved are skipped.
+   * @param hashKeys   The metadata hash keys to fetch; never {@code null}
+   */
+  protected void forEachSessionMetadata(Stream<String> sessionIds, BiConsumer<String, List<String>> consumer, String... hashKeys) {
+    Objects.requireNonNull(sessionIds, "session ids whose metadata to fetch");
+    Objects.requireNonNull(consumer, "consumer of the metadata");
+    Objects.requireNonNull(hashKeys, "metadata hash keys to fetch");
+
+    List<String> ids = sessionIds.distinct().collect(Collectors.toList());
+    for (int start = 0; start < ids.size(); start += PIPELINE_BATCH_SIZE) {
+      List<String> batch = ids.subList(start, Math.min(ids.size(), start + PIPELINE_BATCH_SIZE));
+      final Map<String, Response<List<String>>> responses;
+      try {
+        responses = getRedis().withRedisPipelineResult(pipeline -> {
+          Map<String, Response<List<String>>> queued = new LinkedHashMap<>(batch.size());
+          batch.forEach(sessionId -> {
+            queued.put(sessionId, pipeline.hmget(Convention.sessionIdToMetadataKey(sessionId), hashKeys));
+          });
+          return queued;
+        });
+      } catch (Exception e) {
+        LOG.error("Could not fetch metadata for a batch of " + batch.size() + " sessions; skipping them", e);
+        continue;
+      }
+      responses.forEach((sessionId, response) -> consumer.accept(sessionId, response.get()));
+    }
   }
 
-  protected int countCurrentActiveSessions() {
+  /**
+   * Marks the start of a request on the current thread. Until {@link #endRequest()} is called on this thread, sessions
+   * stage their writes rather than sending them to Redis, and if {@link #getPinConnectionPerRequest()} is set, then
+   * all Redis calls on this thread share a single connection.
+   */
+  public void beginRequest() {
+    beginRequest(null);
+  }
+
+  /**
+   * Marks the start of a request on the current thread, as per {@link #beginRequest()}. If
+   * {@link #getAttributePrefetch()} is set, then the attributes read during the request are also learned for the
+   * pattern of its URI. This is called by {@link RedisSessionValve}.
+   *
+   * @param requestUri The URI of the request; may be {@code null} if it is not known.
+   */
+  public void beginRequest(String requestUri) {
+    requestSessions.set(Collections.newSetFromMap(new IdentityHashMap<>()));
+    if (attributePrefetch && !bulkAttributeLoad && requestUri != null) {
+      requestPrefetch.set(attributePrefetcher.beginRequest(requestUri));
+    }
+    if (!pinConnectionPerRequest) return;
     try {
-      long count = createValidSessionIdStream().distinct().count();
-      return (int) Math.min(Integer.MAX_VALUE, count);
+      Redis redis = getRedis();
+      redis.pinConnection();
+      requestPinnedRedis.set(redis);
     } catch (Exception e) {
-      LOG.error("Could not calculate max active; returning 0", e);
-      return 0;
+      LOG.warn("Could not pin a Redis connection for the request; connections will be borrowed per call", e);
     }
   }
 
-  public void autovivifySession(String sessionId) {
-    Objects.requireNonNull(sessionId, "session id to autovivify");
-    String metadataId = Convention.sessionIdToMetadataKey(sessionId);
-    String dateString = Convention.stringFromDate(new Date());
-    String isValidString = new BooleanConverter().convertToString(true);
-
-    // Do this work simultaneously, but ensure it's done before we exit the method
-    Stream.<Redis.RedisConsumer>of(
-                                      jedis -> {
-                                        jedis.hsetnx(metadataId, Convention.IS_VALID_HKEY, isValidString);
-                                      },
-                                      jedis -> {
-                                        jedis.hsetnx(metadataId, Convention.CREATION_TIME_HKEY, dateString);
-                                      },
-                                      jedis -> {
-                                        jedis.hset(metadataId, Convention.LAST_ACCESS_TIME_HKEY, dateString);
-                                      }
-    ).map(consumer -> doInBackground(() -> redis.withRedis(consumer))).forEach(ForkJoinTask::join);
+  /**
+   * Marks the end of a request on the current thread, committing the staged writes of every session used within the
+   * request in a single pipeline, and then releasing the request's pinned connection (if any). This is called by
+   * {@link RedisSessionValve}.
+   */
+  public void endRequest() {
+    try {
+      commitRequest();
+    } finally {
+      AttributePrefetcher.RequestContext prefetch = requestPrefetch.get();
+      requestPrefetch.remove();
+      if (prefetch != null) attributePrefetcher.endRequest(prefetch);
+      Redis pinned = requestPinnedRedis.get();
+      requestPinnedRedis.remove();
+      if (pinned != null) pinned.unpinConnection();
+    }
   }
 
-  private interface Procedure {
-    void apply() throws Exception;
-  }
+  /**
+   * Commits the staged writes of every session used within the current thread's request in a single pipeline.
+   */
+  protected void commitRequest() {
+    Set<RedisSession> sessions = requestSessions.get();
+    requestSessions.remove();
+    if (sessions == null || sessions.isEmpty()) return;
+
+    RedisWriteBatch batch = new RedisWriteBatch();
+    sessions.forEach(session -> {
+      try {
+        session.stageChanges(batch);
+      } catch (Exception e) {
+        LOG.error("Could not stage the changes for session " + session.getIdInternal() + "; they will be lost", e);
+      }
+    });
 
-  private static class SessionRateData {
-    private final long earliestCreateMoment;
-    private final long sessionCount;
+    // The sessions may have loaded more attributes during the request, so their sizes are estimated again
+    SessionNearCache nearCache = this.nearCache;
+    sessions.forEach(session -> {
+      if (!session.isValidInternal() || session.getVersion() == RedisSession.UNKNOWN_VERSION) {
+        nearCache.remove(session.getIdInternal());
+      } else {
+        nearCache.update(session);
+      }
+    });
 
-    public SessionRateData(Date earliestCreateTime) {
-      this(earliestCreateTime.getTime(), 1L);
-    }
+    if (batch.isEmpty()) return;
 
-    public SessionRateData(long earliestCreateMoment, long sessionCount) {
-      this.earliestCreateMoment = earliestCreateMoment;
-      this.sessionCount = sessionCount;
+    try {
+      getRedis().withRedisPipeline(batch::queue);
+    } catch (Exception e) {
+      LOG.error("Could not commit the changes for " + sessions.size() + " session(s); they have been lost", e);
+      sessions.forEach(session -> nearCache.remove(session.getIdInternal()));
     }
+  }
 
-    public static SessionRateData merge(SessionRateData left, SessionRateData right) {
-      final long newEarliestMoment = Math.min(left.earliestCreateMoment, right.earliestCreateMoment);
-      final long newSessionCount = left.sessionCount + right.sessionCount;
-      return new SessionRateData(newEarliestMoment, newSessionCount);
-    }
+  /**
+   * If a request is in progress on the current thread, records that the session was used within it, so that its
+   * staged writes are committed when the request ends.
+   *
+   * @param session The session to enlist; never {@code null}.
+   * @return {@code true} if the session was enlisted, and so should stage its writes; {@code false} if there is no
+   * request in progress, and so the session should write immediately.
+   */
+  public boolean enlistInRequest(RedisSession session) {
+    Objects.requireNonNull(session, "session to enlist in the request");
+    Set<RedisSession> sessions = requestSessions.get();
+    if (sessions == null) return false;
+    sessions.add(session);
+    return true;
+  }
 
-    public int getSessionsPerMinute() {
-      long count = sessionCount;
-      if (count == 0) return 0;
-      long now = System.currentTimeMillis();
-      long earliest = earliestCreateMoment;
-      if (earliest >= now) return 0;
+  public void autovivifySession(String sessionId) {
+    autovivifySession(sessionId, getMaxInactiveInterval());
+  }
+
+  /**
+   * Ensures that the metadata for the session exists, and records that it has been accessed, using a single
+   * {@link SessionScripts#TOUCH_SESSION} call. This also refreshes the session's expiration and, if the session is
+   * new, updates the session counts.
+   *
+   * @param sessionId           The session id to autovivify; never {@code null}.
+   * @param maxInactiveInterval The max inactive interval of the session, in seconds, used to refresh its expiration.
+   */
+  public void autovivifySession(String sessionId, int maxInactiveInterval) {
+    Objects.requireNonNull(sessionId, "session id to autovivify");
+    touchSession(sessionId, maxInactiveInterval, false);
+  }
 
-      double rate = (count * 1.0) / (now - earliest);
-      rate = rate / (1000 * 60); // Convert from millis to minutes
-      return Double.valueOf(rate).intValue();
+  /**
+   * Records that a session which has just been looked up has been accessed, as {@link #autovivifySession(String, int)}
+   * does, except that a session whose metadata has gone since the lookup, such as by expiring, is not created again.
+   *
+   * @param sessionId           The session id to touch; never {@code null}.
+   * @param maxInactiveInterval The max inactive interval of the session, in seconds, used to refresh its expiration.
+   * @return {@code true} if the session still exists; {@code false} if it has gone, and nothing was written.
+   */
+  public boolean touchExistingSession(String sessionId, int maxInactiveInterval) {
+    Objects.requireNonNull(sessionId, "session id to touch");
+    return touchSession(sessionId, maxInactiveInterval, true);
+  }
+
+  private boolean touchSession(String sessionId, int maxInactiveInterval, boolean mustExist) {
+    long now = System.currentTimeMillis();
+    List<String> bucket = currentBucket(Convention::sessionsCreatedBucketKey);
+    List<String> keys = Arrays.asList(
+                                         Convention.sessionIdToMetadataKey(sessionId),
+                                         Convention.sessionIdToAttributesKey(sessionId),
+                                         Convention.SESSION_EXPIRY_INDEX_KEY,
+                                         Convention.SESSION_COUNTER_KEY,
+                                         Convention.ACTIVE_SESSIONS_COUNT_KEY,
+                                         Convention.SESSION_MAX_ACTIVE_KEY,
+                                         bucket.get(0),
+                                         Convention.sessionIdToChunksKey(sessionId)
+    );
+    List<String> args = Arrays.asList(
+                                         sessionId,
+                                         Convention.IS_VALID_HKEY,
+                                         new BooleanConverter().convertToString(true),
+                                         Convention.CREATION_TIME_HKEY,
+                                         Convention.LAST_ACCESS_TIME_HKEY,
+                                         Convention.MAX_INACTIVE_INTERVAL_HKEY,
+                                         timestampFormat.format(now),
+                                         Integer.toString(maxInactiveInterval),
+                                         bucket.get(1),
+                                         expirationStrategy.name(),
+                                         Long.toString(now + TimeUnit.SECONDS.toMillis(maxInactiveInterval)),
+                                         mustExist ? "1" : "0"
+    );
+    try {
+      Object result = getRedis().withRedis(jedis -> {
+        return SessionScripts.TOUCH_SESSION.eval(jedis, keys, args);
+      });
+      return !Long.valueOf(-1L).equals(result);
+    } catch (Exception e) {
+      throw new RuntimeException("Could not autovivify session " + sessionId, e);
     }
+  }
 
+  private interface Procedure {
+    void apply() throws Exception;
   }
+
 }
@@ -0,0 +1,61 @@
+package com.webonise.tomcat8.redisession;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Manager;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+/**
+ * Marks the request boundary for {@link RedisSessionManager}. Within a request that passes through this valve,
+ * changes to {@link RedisSession}s are buffered in memory, and they are all committed to Redis in a single pipeline
+ * once the rest of the pipeline has processed the request. If the manager pins connections per request, the valve
+ * also delimits how long the request's Redis connection is held, and if it prefetches attributes, the valve tells
+ * it the request URI to learn from.
+ * <p>
+ * Configure this in the {@code context.xml} alongside the manager:
+ * <pre>{@code
+ * <Valve className="com.webonise.tomcat8.redisession.RedisSessionValve" />
+ * }</pre>
+ * If the context is not using a {@link RedisSessionManager}, this valve does nothing.
+ */
+public class RedisSessionValve extends ValveBase {
+
+  public RedisSessionValve() {
+    super(true);
+  }
+
+  @Override
+  public void invoke(Request request, Response response) throws IOException, ServletException {
+    RedisSessionManager manager = findManager(request);
+    if (manager == null) {
+      getNext().invoke(request, response);
+      return;
+    }
+
+    manager.beginRequest(request.getRequestURI());
+    try {
+      getNext().invoke(request, response);
+    } finally {
+      manager.endRequest();
+    }
+  }
+
+  /**
+   * Provides the manager for the request, if it is a {@link RedisSessionManager}.
+   *
+   * @param request The request being processed; never {@code null}
+   * @return The manager, or {@code null} if the request has no {@link RedisSessionManager}.
+   */
+  protected RedisSessionManager findManager(Request request) {
+    Context context = request.getContext();
+    if (context == null) return null;
+    Manager manager = context.getManager();
+    if (manager instanceof RedisSessionManager) return (RedisSessionManager) manager;
+    return null;
+  }
+
+}
@@ -0,0 +1,219 @@
+package com.webonise.tomcat8.redisession;
+
+import com.webonise.tomcat8.redisession.redisclient.Redis;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Listens on a pub/sub channel for notices that other nodes have written or invalidated a session, so that the
+ * {@link SessionNearCache} can evict it. The subscription is held by a daemon thread, which resubscribes whenever the
+ * connection is lost. Every node publishes with its own node id, and notices published by this node are ignored,
+ * since its own cache already holds what it wrote.
+ * <p>
+ * Notices may be missed while the subscription is down, so the cache is reset both when the subscription is lost and
+ * when it is made again. The subscription is only {@linkplain #isCurrent() current} if something has been heard on
+ * it recently; a ping is sent whenever it has been quiet for a while, so that a connection which has silently died
+ * is not trusted for long.
+ * <p>
+ * Keyspace notifications are not used, since they need the server to be configured for them, and they would also
+ * fire for the writes which only record an access.
+ */
+public class SessionInvalidationSubscriber {
+
+  private static final Log LOG = LogFactory.getLog(SessionInvalidationSubscriber.class);
+
+  private static final String THREAD_NAME = "redis-session-invalidations";
+
+  /**
+   * How long the subscription may be quiet before a ping is sent, in milliseconds.
+   */
+  public static final long HEARTBEAT_INTERVAL = TimeUnit.SECONDS.toMillis(5L);
+
+  /**
+   * How long the subscription may be quiet before it is no longer current, in milliseconds.
+   */
+  public static final long HEARTBEAT_TIMEOUT = 2 * HEARTBEAT_INTERVAL;
+
+  private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(1L);
+
+  private final Redis redis;
+  private final String channel;
+  private final String nodeId = UUID.randomUUID().toString();
+  private final Consumer<String> onInvalidated;
+  private final Runnable onReset;
+  private final AtomicLong lastHeardAt = new AtomicLong(0L);
+  private final AtomicLong lastPingAt = new AtomicLong(0L);
+  private final AtomicLong receivedCount = new AtomicLong(0L);
+  private volatile boolean running = false;
+  private volatile Listener listener;
+  private volatile Thread thread;
+
+  private class Listener extends JedisPubSub {
+
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+      if (!running) {
+        unsubscribe();
+        return;
+      }
+      onReset.run();
+      lastHeardAt.set(System.currentTimeMillis());
+      LOG.info("Subscribed to " + channel + " to keep the near cache current");
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+      lastHeardAt.set(System.currentTimeMillis());
+      int separator = message.indexOf(' ');
+      if (separator < 0) {
+        LOG.warn("Ignoring malformed invalidation notice on " + channel + ": " + message);
+        return;
+      }
+      if (message.substring(0, separator).equals(nodeId)) return;
+      receivedCount.incrementAndGet();
+      onInvalidated.accept(message.substring(separator + 1));
+    }
+
+    @Override
+    public void onPong(String pattern) {
+      lastHeardAt.set(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param redis         The Redis client to subscribe with; never {@code null}. The subscription holds one of its
+   *                      pooled connections.
+   * @param channel       The channel to subscribe to; never {@code null}.
+   * @param onInvalidated Called with the id of each session which another node has written or invalidated; never
+   *                      {@code null}.
+   * @param onReset       Called whenever notices may have been missed; never {@code null}.
+   */
+  public SessionInvalidationSubscriber(Redis redis, String channel, Consumer<String> onInvalidated, Runnable onReset) {
+    Objects.requireNonNull(redis, "Redis client to subscribe with");
+    this.redis = redis;
+    Objects.requireNonNull(channel, "channel to subscribe to");
+    this.channel = channel;
+    Objects.requireNonNull(onInvalidated, "callback for invalidated sessions");
+    this.onInvalidated = onInvalidated;
+    Objects.requireNonNull(onReset, "callback for when notices may have been missed");
+    this.onReset = onReset;
+  }
+
+  /**
+   * Starts the subscriber thread.
+   */
+  public synchronized void start() {
+    if (running) return;
+    running = true;
+    thread = new Thread(this::run, THREAD_NAME);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the subscriber thread, waiting briefly for it to give its connection back.
+   */
+  public synchronized void stop() {
+    if (!running) return;
+    running = false;
+    lastHeardAt.set(0L);
+    Listener current = listener;
+    if (current != null && current.isSubscribed()) {
+      try {
+        current.unsubscribe();
+      } catch (RuntimeException e) {
+        LOG.debug("Could not unsubscribe from " + channel, e);
+      }
+    }
+    thread.interrupt();
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(1L));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    while (running) {
+      Listener current = new Listener();
+      listener = current;
+      try {
+        redis.withRedis(jedis -> {
+          jedis.subscribe(current, channel);
+        });
+      } catch (Exception e) {
+        if (running) LOG.warn("Lost the subscription to " + channel + "; sessions will be checked against Redis", e);
+      }
+      lastHeardAt.set(0L);
+      onReset.run();
+      if (!running) break;
+      try {
+        Thread.sleep(RETRY_DELAY);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Whether the subscription is up and has been heard from recently, so that any notice published before now can be
+   * expected to have arrived. Sends a ping if the subscription has been quiet for a while.
+   *
+   * @return {@code true} if sessions can be trusted to have been evicted when they were changed.
+   */
+  public boolean isCurrent() {
+    long heardAt = lastHeardAt.get();
+    if (heardAt == 0L) return false;
+    long now = System.currentTimeMillis();
+    long pingAt = lastPingAt.get();
+    if (now - heardAt >= HEARTBEAT_INTERVAL && now - pingAt >= HEARTBEAT_INTERVAL &&
+            lastPingAt.compareAndSet(pingAt, now)) {
+      ping();
+    }
+    return now - heardAt < HEARTBEAT_TIMEOUT;
+  }
+
+  private synchronized void ping() {
+    Listener current = listener;
+    if (!running || current == null || !current.isSubscribed()) return;
+    try {
+      current.ping();
+    } catch (RuntimeException e) {
+      LOG.debug("Could not ping the subscription to " + channel, e);
+    }
+  }
+
+  /**
+   * Provides the notice to publish when this node has written or invalidated a session.
+   *
+   * @param sessionId The id of the session; never {@code null}.
+   * @return The message; never {@code null}.
+   */
+  public String noticeFor(String sessionId) {
+    Objects.requireNonNull(sessionId, "id of the session to give notice of");
+    return nodeId + " " + sessionId;
+  }
+
+  /**
+   * The channel the notices are published on; never {@code null}.
+   */
+  public String getChannel() {
+    return channel;
+  }
+
+  /**
+   * The number of notices received from other nodes.
+   */
+  public long getReceivedCount() {
+    return receivedCount.get();
+  }
+
+}
@@ -0,0 +1,90 @@
+package com.webonise.tomcat8.redisession;
+
+import java.util.*;
+
+/**
+ * The result of looking up a session id in Redis, as performed by {@link RedisSessionManager#lookupSession(String, boolean)}.
+ * Looking up a session never writes to Redis.
+ */
+public class SessionLookup {
+
+  /**
+   * What the lookup found.
+   */
+  public enum Status {
+
+    /**
+     * There is no metadata for the session id.
+     */
+    MISSING,
+
+    /**
+     * The session has been invalidated, or it is past its expiration and has not been reaped yet.
+     */
+    INVALID,
+
+    /**
+     * The session is valid.
+     */
+    VALID
+  }
+
+  private static final SessionLookup MISSING = new SessionLookup(Status.MISSING, Collections.emptyMap());
+  private static final SessionLookup INVALID = new SessionLookup(Status.INVALID, Collections.emptyMap());
+
+  private final Status status;
+  private final Map<String, String> metadata;
+
+  private SessionLookup(Status status, Map<String, String> metadata) {
+    this.status = status;
+    this.metadata = metadata;
+  }
+
+  /**
+   * Provides the result for a session id which has no metadata.
+   */
+  public static SessionLookup missing() {
+    return MISSING;
+  }
+
+  /**
+   * Provides the result for a session which is invalid or expired.
+   */
+  public static SessionLookup invalid() {
+    return INVALID;
+  }
+
+  /**
+   * Provides the result for a valid session.
+   *
+   * @param metadata The metadata fetched for the session; never {@code null}.
+   * @return The result; never {@code null}.
+   */
+  public static SessionLookup valid(Map<String, String> metadata) {
+    Objects.requireNonNull(metadata, "metadata of the valid session");
+    return new SessionLookup(Status.VALID, Collections.unmodifiableMap(metadata));
+  }
+
+  /**
+   * What the lookup found; never {@code null}.
+   */
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Whether the lookup found a valid session.
+   */
+  public boolean isValid() {
+    return status == Status.VALID;
+  }
+
+  /**
+   * The metadata fetched for a valid session, keyed by hash key; empty unless the session is valid. This holds either
+   * the whole metadata hash or only the fields needed to check validity, depending on how the session was looked up.
+   */
+  public Map<String, String> getMetadata() {
+    return metadata;
+  }
+
+}
@@ -0,0 +1,301 @@
+package com.webonise.tomcat8.redisession;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Keeps recently used sessions in memory, so that a request which comes back to the same node (as under sticky load
+ * balancing) can reuse the attributes which were already loaded, rather than loading them from Redis again. A cached
+ * session is only reused if its version is still the one in its metadata hash; any write to a session from any node
+ * increments that version, so a session which has been changed elsewhere is loaded afresh.
+ * <p>
+ * The cache is bounded by the total estimated size of the sessions in it, as given by
+ * {@link RedisSession#getEstimatedSize()}; the least recently used sessions are evicted first.
+ * <p>
+ * When the cache is kept current by a {@link SessionInvalidationSubscriber}, a session can also be <em>trusted</em>:
+ * reused without checking its version at all. A session is only trusted if it was put into the cache at a point when
+ * no invalidation of it had arrived since it was last checked, which is tracked by an invalidation sequence number.
+ * The ids of the most recent invalidations are remembered for this; a check which is older than all of them is
+ * treated as stale, so the worst that can happen is that a session has its version checked once more.
+ * <p>
+ * This class is thread safe.
+ *
+ * @see Convention#VERSION_HKEY
+ */
+public class SessionNearCache {
+
+  private static class Entry {
+
+    private final RedisSession session;
+    private final long size;
+    private final boolean trusted;
+
+    private Entry(RedisSession session, long size, boolean trusted) {
+      this.session = session;
+      this.size = size;
+      this.trusted = trusted;
+    }
+  }
+
+  /**
+   * The number of recent invalidations to remember the ids of.
+   */
+  private static final int RECENT_INVALIDATIONS = 1024;
+
+  private final long maxSize;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long size = 0L;
+  private final LinkedHashMap<String, Long> recentInvalidations = new LinkedHashMap<>();
+  private long invalidationSequence = 0L;
+  private long oldestKnownInvalidation = 0L;
+  private final AtomicLong hitCount = new AtomicLong(0L);
+  private final AtomicLong trustedHitCount = new AtomicLong(0L);
+  private final AtomicLong missCount = new AtomicLong(0L);
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize The most bytes of sessions to hold, by their estimated size; 0 to hold nothing.
+   */
+  public SessionNearCache(long maxSize) {
+    if (maxSize < 0) throw new IllegalArgumentException("Maximum size must be nonnegative: " + maxSize);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Whether a session with the id is cached, at any version. This does not count as a hit or a miss, nor does it
+   * make the session more recently used.
+   *
+   * @param id The id of the session; never {@code null}.
+   * @return {@code true} if the session is cached.
+   */
+  public boolean contains(String id) {
+    Objects.requireNonNull(id, "id of the session to check for");
+    if (maxSize == 0) return false;
+    synchronized (entries) {
+      return entries.containsKey(id);
+    }
+  }
+
+  /**
+   * Provides the cached session, if it is at the given version. A session at any other version is evicted.
+   *
+   * @param id      The id of the session; never {@code null}.
+   * @param version The version of the session in Redis.
+   * @return The session, or {@code null} if it is not cached at that version.
+   */
+  public RedisSession get(String id, long version) {
+    Objects.requireNonNull(id, "id of the session to get");
+    if (maxSize == 0) return null;
+    synchronized (entries) {
+      Entry entry = entries.get(id);
+      if (entry != null && entry.session.getVersion() == version) {
+        hitCount.incrementAndGet();
+        return entry.session;
+      }
+      if (entry != null) remove(id);
+    }
+    missCount.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Provides the cached session without any version check, if it is trusted and passes the given check. The check is
+   * made outside of the cache's lock, so it may call Redis.
+   *
+   * @param id     The id of the session; never {@code null}.
+   * @param usable Whether the session may be reused as it is; never {@code null}.
+   * @return The session, or {@code null} if it is not cached, not trusted, or not usable.
+   */
+  public RedisSession getTrusted(String id, Predicate<RedisSession> usable) {
+    Objects.requireNonNull(id, "id of the session to get");
+    Objects.requireNonNull(usable, "check of whether the session is usable");
+    if (maxSize == 0) return null;
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(id);
+    }
+    if (entry == null || !entry.trusted || !usable.test(entry.session)) return null;
+    hitCount.incrementAndGet();
+    trustedHitCount.incrementAndGet();
+    return entry.session;
+  }
+
+  /**
+   * Adds the session to the cache without trusting it, or updates its size if it is already cached, evicting the
+   * least recently used sessions as need be. A session which is larger than the whole cache is not held.
+   *
+   * @param session The session; never {@code null}.
+   */
+  public void put(RedisSession session) {
+    put(session, -1L);
+  }
+
+  /**
+   * Adds the session to the cache, or updates its size if it is already cached, evicting the least recently used
+   * sessions as need be. The session is trusted if it has not been invalidated since it was checked. A session which
+   * is larger than the whole cache is not held.
+   *
+   * @param session   The session; never {@code null}.
+   * @param checkedAt The {@link #getInvalidationSequence()} from before the session was checked against Redis, or a
+   *                  negative number if it should not be trusted.
+   */
+  public void put(RedisSession session, long checkedAt) {
+    Objects.requireNonNull(session, "session to cache");
+    if (maxSize == 0) return;
+    String id = session.getIdInternal();
+    if (id == null) return;
+    long sessionSize = session.getEstimatedSize();
+    synchronized (entries) {
+      remove(id);
+      if (sessionSize > maxSize) return;
+      entries.put(id, new Entry(session, sessionSize, checkedAt >= 0 && !isInvalidatedSince(id, checkedAt)));
+      size += sessionSize;
+      evictEldest();
+    }
+  }
+
+  private void evictEldest() {
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (size > maxSize && eldest.hasNext()) {
+      size -= eldest.next().size;
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Updates the size of the session if that same session is still cached, keeping whether it is trusted. A session
+   * which has been evicted in the meantime, such as by an invalidation, is not added back.
+   *
+   * @param session The session; never {@code null}.
+   */
+  public void update(RedisSession session) {
+    Objects.requireNonNull(session, "session to update");
+    if (maxSize == 0) return;
+    String id = session.getIdInternal();
+    if (id == null) return;
+    long sessionSize = session.getEstimatedSize();
+    synchronized (entries) {
+      Entry entry = entries.get(id);
+      if (entry == null || entry.session != session) return;
+      remove(id);
+      if (sessionSize > maxSize) return;
+      entries.put(id, new Entry(session, sessionSize, entry.trusted));
+      size += sessionSize;
+      evictEldest();
+    }
+  }
+
+  /**
+   * Evicts the session with the given id because another node has changed it, and remembers that it was invalidated,
+   * so that a copy which was being loaded at the time is not trusted.
+   *
+   * @param id The id of the session; never {@code null}.
+   */
+  public void invalidate(String id) {
+    Objects.requireNonNull(id, "id of the session to invalidate");
+    synchronized (entries) {
+      remove(id);
+      invalidationSequence++;
+      recentInvalidations.remove(id);
+      recentInvalidations.put(id, invalidationSequence);
+      if (recentInvalidations.size() > RECENT_INVALIDATIONS) {
+        Iterator<Long> eldest = recentInvalidations.values().iterator();
+        oldestKnownInvalidation = eldest.next();
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * The sequence number of the latest invalidation, to take before checking a session against Redis and then pass to
+   * {@link #put(RedisSession, long)}.
+   */
+  public long getInvalidationSequence() {
+    synchronized (entries) {
+      return invalidationSequence;
+    }
+  }
+
+  private boolean isInvalidatedSince(String id, long checkedAt) {
+    if (checkedAt < oldestKnownInvalidation) return true;
+    Long invalidatedAt = recentInvalidations.get(id);
+    return invalidatedAt != null && invalidatedAt > checkedAt;
+  }
+
+  /**
+   * Evicts the session with the given id, if it is cached.
+   *
+   * @param id The id of the session; never {@code null}.
+   */
+  public void remove(String id) {
+    Objects.requireNonNull(id, "id of the session to evict");
+    synchronized (entries) {
+      Entry entry = entries.remove(id);
+      if (entry != null) size -= entry.size;
+    }
+  }
+
+  /**
+   * Evicts every session, and stops trusting any session which is being checked, such as when invalidations may have
+   * been missed.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+      size = 0L;
+      invalidationSequence++;
+      recentInvalidations.clear();
+      oldestKnownInvalidation = invalidationSequence;
+    }
+  }
+
+  /**
+   * The most bytes of sessions to hold, by their estimated size.
+   */
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * The total estimated size of the sessions currently held.
+   */
+  public long getSize() {
+    synchronized (entries) {
+      return size;
+    }
+  }
+
+  /**
+   * The number of sessions currently held.
+   */
+  public int getSessionCount() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * The number of lookups which found the session cached at the current version.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * The number of lookups which reused a trusted session without checking its version; these are also counted as
+   * hits.
+   */
+  public long getTrustedHitCount() {
+    return trustedHitCount.get();
+  }
+
+  /**
+   * The number of lookups which had to load the session from Redis.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+}
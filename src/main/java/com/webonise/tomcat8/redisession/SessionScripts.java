@@ -0,0 +1,187 @@
+package com.webonise.tomcat8.redisession;
+
+import com.webonise.tomcat8.redisession.redisclient.RedisScript;
+
+/**
+ * The Lua scripts that {@link RedisSessionManager} executes on the Redis server. Hash keys and other conventional
+ * values are passed in as arguments, so that {@link Convention} remains the only place that defines them.
+ */
+public class SessionScripts {
+
+  private SessionScripts() {
+    // Constants only
+  }
+
+  /**
+   * Creates the session's metadata if it does not exist yet, and records that it has been accessed, in a single round
+   * trip. The validity, creation time and max inactive interval are only set if they are absent; the last access time
+   * is always set. The expiration of the session is then refreshed as the expiration strategy calls for. If the
+   * session was created, then the created and active counters are incremented, the maximum active sessions is raised
+   * to the new active count if it is greater, and the session is counted in the current minute's bucket. A session
+   * which has just been looked up must already exist, so nothing is written if its metadata has gone since.
+   * <ul>
+   * <li>{@code KEYS[1]} &mdash; The metadata key.</li>
+   * <li>{@code KEYS[2]} &mdash; The attributes key.</li>
+   * <li>{@code KEYS[3]} &mdash; The expiry index key.</li>
+   * <li>{@code KEYS[4]} &mdash; The created sessions counter.</li>
+   * <li>{@code KEYS[5]} &mdash; The active sessions counter.</li>
+   * <li>{@code KEYS[6]} &mdash; The maximum active sessions.</li>
+   * <li>{@code KEYS[7]} &mdash; The bucket of sessions created in the current minute.</li>
+   * <li>{@code KEYS[8]} &mdash; The key of the chunks of large attribute values.</li>
+   * <li>{@code ARGV[1]} &mdash; The session id.</li>
+   * <li>{@code ARGV[2]} &mdash; The validity hash key.</li>
+   * <li>{@code ARGV[3]} &mdash; The string representation of "valid".</li>
+   * <li>{@code ARGV[4]} &mdash; The creation time hash key.</li>
+   * <li>{@code ARGV[5]} &mdash; The last access time hash key.</li>
+   * <li>{@code ARGV[6]} &mdash; The max inactive interval hash key.</li>
+   * <li>{@code ARGV[7]} &mdash; The string representation of the current time.</li>
+   * <li>{@code ARGV[8]} &mdash; The max inactive interval, in seconds.</li>
+   * <li>{@code ARGV[9]} &mdash; How many seconds the bucket should live.</li>
+   * <li>{@code ARGV[10]} &mdash; The name of the {@link ExpirationStrategy}.</li>
+   * <li>{@code ARGV[11]} &mdash; When the session expires, in milliseconds since the epoch.</li>
+   * <li>{@code ARGV[12]} &mdash; {@code 1} if the session must already exist, and {@code 0} if it may be created.</li>
+   * </ul>
+   * Returns 1 if the session was created, 0 if it already existed, and -1 if it must exist but did not.
+   */
+  public static final RedisScript TOUCH_SESSION = new RedisScript(
+      "if ARGV[12] == '1' and redis.call('EXISTS', KEYS[1]) == 0 then return -1 end\n" +
+          "local created = redis.call('HSETNX', KEYS[1], ARGV[2], ARGV[3])\n" +
+          "redis.call('HSETNX', KEYS[1], ARGV[4], ARGV[7])\n" +
+          "redis.call('HSETNX', KEYS[1], ARGV[6], ARGV[8])\n" +
+          "redis.call('HSET', KEYS[1], ARGV[5], ARGV[7])\n" +
+          "local interval = tonumber(ARGV[8])\n" +
+          "if ARGV[10] == '" + ExpirationStrategy.NATIVE_TTL.name() + "' then\n" +
+          "  for _, key in ipairs({KEYS[1], KEYS[2], KEYS[8]}) do\n" +
+          "    if interval > 0 then redis.call('PEXPIRE', key, interval * 1000) else redis.call('PERSIST', key) end\n" +
+          "  end\n" +
+          "elseif ARGV[10] == '" + ExpirationStrategy.EXPIRY_INDEX.name() + "' then\n" +
+          "  if interval > 0 then redis.call('ZADD', KEYS[3], ARGV[11], ARGV[1]) else redis.call('ZREM', KEYS[3], ARGV[1]) end\n" +
+          "end\n" +
+          "if created == 0 then return 0 end\n" +
+          "redis.call('INCR', KEYS[4])\n" +
+          "local active = redis.call('INCR', KEYS[5])\n" +
+          "local max = tonumber(redis.call('GET', KEYS[6]) or '0')\n" +
+          "if active > max then redis.call('SET', KEYS[6], active) end\n" +
+          "redis.call('INCR', KEYS[7])\n" +
+          "redis.call('EXPIRE', KEYS[7], ARGV[9])\n" +
+          "return 1\n"
+  );
+
+  /**
+   * Raises a maximum to the given value if it is greater (compare-and-raise).
+   * <ul>
+   * <li>{@code KEYS[1]} &mdash; The maximum to raise.</li>
+   * <li>{@code ARGV[1]} &mdash; The candidate value.</li>
+   * </ul>
+   * Returns the resulting maximum.
+   */
+  public static final RedisScript RAISE_MAX = new RedisScript(
+      "local candidate = tonumber(ARGV[1])\n" +
+          "local max = tonumber(redis.call('GET', KEYS[1]) or '0')\n" +
+          "if candidate > max then\n" +
+          "  redis.call('SET', KEYS[1], candidate)\n" +
+          "  return candidate\n" +
+          "end\n" +
+          "return max\n"
+  );
+
+  /**
+   * Invalidates a session, updating the active and expired counters and the alive time histogram only if the session
+   * was valid beforehand, so that concurrent invalidations of the same session are only counted once. A session whose metadata no longer
+   * exists just has its leftover keys removed. The expiration statistics (the expired counter, its bucket, and the
+   * histogram) may be left alone, in which case only the active counter is updated.
+   * <ul>
+   * <li>{@code KEYS[1]} &mdash; The metadata key.</li>
+   * <li>{@code KEYS[2]} &mdash; The attributes key.</li>
+   * <li>{@code KEYS[3]} &mdash; The expiry index key.</li>
+   * <li>{@code KEYS[4]} &mdash; The active sessions counter.</li>
+   * <li>{@code KEYS[5]} &mdash; The expired sessions counter.</li>
+   * <li>{@code KEYS[6]} &mdash; The bucket of sessions expired in the current minute.</li>
+   * <li>{@code KEYS[7]} &mdash; The alive time histogram.</li>
+   * <li>{@code KEYS[8]} &mdash; The key of the chunks of large attribute values.</li>
+   * <li>{@code ARGV[1]} &mdash; The session id.</li>
+   * <li>{@code ARGV[2]} &mdash; The validity hash key.</li>
+   * <li>{@code ARGV[3]} &mdash; The string representation of "valid".</li>
+   * <li>{@code ARGV[4]} &mdash; The string representation of "invalid".</li>
+   * <li>{@code ARGV[5]} &mdash; The expired time hash key.</li>
+   * <li>{@code ARGV[6]} &mdash; The string representation of the expired time.</li>
+   * <li>{@code ARGV[7]} &mdash; How many seconds the bucket should live.</li>
+   * <li>{@code ARGV[8]} &mdash; The histogram field of the bucket for the session's alive time, or the empty string
+   * if the alive time is not known.</li>
+   * <li>{@code ARGV[9]} &mdash; The histogram field holding the count.</li>
+   * <li>{@code ARGV[10]} &mdash; The histogram field holding the sum.</li>
+   * <li>{@code ARGV[11]} &mdash; The histogram field holding the maximum.</li>
+   * <li>{@code ARGV[12]} &mdash; The session's alive time, in seconds.</li>
+   * <li>{@code ARGV[13]} &mdash; {@code 1} to update the expiration statistics, and {@code 0} to leave them alone.</li>
+   * </ul>
+   * Returns 1 if the session went from valid to invalid, and 0 otherwise.
+   */
+  public static final RedisScript INVALIDATE = new RedisScript(
+      "redis.call('DEL', KEYS[2], KEYS[8])\n" +
+          "redis.call('ZREM', KEYS[3], ARGV[1])\n" +
+          "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end\n" +
+          "local wasValid = redis.call('HGET', KEYS[1], ARGV[2]) == ARGV[3]\n" +
+          "if wasValid then redis.call('HSET', KEYS[1], ARGV[5], ARGV[6]) end\n" +
+          "redis.call('HSET', KEYS[1], ARGV[2], ARGV[4])\n" +
+          "if not wasValid then return 0 end\n" +
+          "if tonumber(redis.call('GET', KEYS[4]) or '0') > 0 then redis.call('DECR', KEYS[4]) end\n" +
+          "if ARGV[13] ~= '1' then return 1 end\n" +
+          "redis.call('INCR', KEYS[5])\n" +
+          "redis.call('INCR', KEYS[6])\n" +
+          "redis.call('EXPIRE', KEYS[6], ARGV[7])\n" +
+          "if ARGV[8] ~= '' then\n" +
+          "  redis.call('HINCRBY', KEYS[7], ARGV[8], 1)\n" +
+          "  redis.call('HINCRBY', KEYS[7], ARGV[9], 1)\n" +
+          "  redis.call('HINCRBY', KEYS[7], ARGV[10], ARGV[12])\n" +
+          "  local max = tonumber(redis.call('HGET', KEYS[7], ARGV[11]) or '0')\n" +
+          "  if tonumber(ARGV[12]) > max then redis.call('HSET', KEYS[7], ARGV[11], ARGV[12]) end\n" +
+          "end\n" +
+          "return 1\n"
+  );
+
+  /**
+   * Moves a session to a new id atomically: each of its keys which exists is renamed, and its entry in the expiry
+   * index, if any, is moved to the new id with the same score. Keys which do not exist, such as the chunks of a
+   * session without large attribute values, are skipped. Nothing is done if the session's metadata does not exist.
+   * <ul>
+   * <li>{@code KEYS[1]} &mdash; The expiry index key.</li>
+   * <li>{@code KEYS[2]} &mdash; The old metadata key.</li>
+   * <li>{@code KEYS[3]} &mdash; The new metadata key.</li>
+   * <li>{@code KEYS[4...]} &mdash; The rest of the session's keys, as pairs of the old key then the new key.</li>
+   * <li>{@code ARGV[1]} &mdash; The old session id.</li>
+   * <li>{@code ARGV[2]} &mdash; The new session id.</li>
+   * </ul>
+   * Returns 1 if the session was moved, and 0 if its metadata did not exist.
+   */
+  public static final RedisScript CHANGE_SESSION_ID = new RedisScript(
+      "if redis.call('EXISTS', KEYS[2]) == 0 then return 0 end\n" +
+          "for i = 2, #KEYS, 2 do\n" +
+          "  if redis.call('EXISTS', KEYS[i]) == 1 then redis.call('RENAME', KEYS[i], KEYS[i + 1]) end\n" +
+          "end\n" +
+          "local score = redis.call('ZSCORE', KEYS[1], ARGV[1])\n" +
+          "if score then\n" +
+          "  redis.call('ZREM', KEYS[1], ARGV[1])\n" +
+          "  redis.call('ZADD', KEYS[1], score, ARGV[2])\n" +
+          "end\n" +
+          "return 1\n"
+  );
+
+  /**
+   * Fetches the attributes which a request is predicted to use in a single round trip: the whole attributes hash if
+   * it is small, and otherwise only the predicted fields.
+   * <ul>
+   * <li>{@code KEYS[1]} &mdash; The attributes key.</li>
+   * <li>{@code ARGV[1]} &mdash; The most fields the hash may have to be fetched whole.</li>
+   * <li>{@code ARGV[2...]} &mdash; The names of the predicted attributes.</li>
+   * </ul>
+   * Returns {@code {1, fieldsAndValues}} with the reply of {@code HGETALL} if the whole hash was fetched, and
+   * otherwise {@code {0, values}} with the reply of {@code HMGET} for the predicted attributes.
+   */
+  public static final RedisScript PREFETCH_ATTRIBUTES = new RedisScript(
+      "if redis.call('HLEN', KEYS[1]) <= tonumber(ARGV[1]) then\n" +
+          "  return {1, redis.call('HGETALL', KEYS[1])}\n" +
+          "end\n" +
+          "return {0, redis.call('HMGET', KEYS[1], unpack(ARGV, 2))}\n"
+  );
+
+}
@@ -0,0 +1,427 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import redis.clients.jedis.Jedis;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * The common implementation of properties backed by Redis, whatever the type of the raw value that is stored in Redis.
+ * This can be thought of as a lazy thunk implementation for a property. In your getter, call {@link #trigger()} to
+ * force the evaluation of property. If it has not been evaluated before, it will be loaded. In your setter, call
+ * {@link #store(U)} to store the new value. If the value has already been retrieved from Redis by some other means,
+ * call {@link #preload(Object)} to fill the thunk without a round trip, or {@link #preloadLazily(Object)} to also defer
+ * converting it until the property is first triggered. To defer the write instead, call
+ * {@link #stage(Object)} in your setter and later {@link #flush(RedisWriteBatch)}.
+ * <p>
+ * The property remembers the {@link Fingerprint} of the raw value that it last read from or wrote to Redis, and
+ * writes are skipped when the raw value of the new value has the same fingerprint. Because the comparison is made
+ * on the raw value rather than by {@link Object#equals(Object)}, a mutable value which has been changed in place is
+ * still written, and {@link #flushChanges(RedisWriteBatch)} can detect such changes even if the value was never set.
+ *
+ * @param <U> The type of the property.
+ * @param <R> The type of the raw value stored in Redis.
+ */
+public abstract class AbstractRedisBackedPropertySupport<U, R> {
+
+  private static final Log LOG = LogFactory.getLog(AbstractRedisBackedPropertySupport.class);
+
+  protected final Redis client;
+  protected final String redisKey;
+  protected final Function<R, U> fromRaw;
+  private final Consumer<U> setter;
+  private final Function<U, R> toRaw;
+  protected volatile Optional<U> fetchedValue = Optional.empty();
+  protected volatile boolean loaded = false;
+  private volatile boolean dirty = false;
+  private volatile Fingerprint storedFingerprint = null;
+  private volatile boolean hasPendingRawValue = false;
+  private R pendingRawValue = null;
+
+  /**
+   * Constructor.
+   *
+   * @param client   The Redis client; never {@code null}.
+   * @param redisKey The key that the property is stored in; never {@code null}.
+   * @param fromRaw  Converts the raw value from Redis into the property value; never {@code null}.
+   * @param toRaw    Converts the property value into the raw value for Redis; never {@code null}.
+   * @param setter   Assigns the property value once it is known; never {@code null}.
+   */
+  protected AbstractRedisBackedPropertySupport(Redis client, String redisKey, Function<R, U> fromRaw,
+                                               Function<U, R> toRaw, Consumer<U> setter) {
+    Objects.requireNonNull(client, "Redis client for working with the propery");
+    this.client = client;
+
+    Objects.requireNonNull(redisKey, "Key that this propery is based on");
+    this.redisKey = redisKey;
+
+    Objects.requireNonNull(fromRaw, "Conversion from the raw value");
+    this.fromRaw = fromRaw;
+    Objects.requireNonNull(toRaw, "Conversion to the raw value");
+    this.toRaw = toRaw;
+
+    Objects.requireNonNull(setter, "Setter function to assign value");
+    this.setter = setter;
+  }
+
+  /**
+   * Retrieves the value from Redis, performing the conversation as necessary.
+   *
+   * @return The value of the property, or {@code null} if it was not found in Redis.
+   */
+  public U fetch() throws Exception {
+    final R result = client.withRedis(this::doFetch);
+    return Optional.ofNullable(result).map(this::convertFromRaw).orElse(null);
+  }
+
+  /**
+   * Converts a raw value from Redis into the property value. By default this applies the conversion given to the
+   * constructor.
+   *
+   * @param rawValue The value as it is stored in Redis; never {@code null}.
+   * @return The property value; may be {@code null}.
+   */
+  protected U convertFromRaw(R rawValue) {
+    return fromRaw.apply(rawValue);
+  }
+
+  /**
+   * Implements the raw Redis call.
+   *
+   * @param jedis The jedis client; never {@code null}.
+   * @return The return value from Redis, or {@code null} if it is not set in Redis.
+   */
+  protected abstract R doFetch(Jedis jedis) throws Exception;
+
+  /**
+   * Evaluates the property, if need be. In a multithreaded environment, this may be
+   * called multiple times.
+   */
+  public void trigger() {
+    synchronized (this) {
+      if (loaded) return;
+      if (hasPendingRawValue) {
+        R rawValue = pendingRawValue;
+        clearPendingRawValue();
+        try {
+          (fetchedValue = Optional.ofNullable(rawValue).map(this::convertFromRaw)).ifPresent(setter);
+          storedFingerprint = fingerprintOf(rawValue);
+          loaded = true;
+          return;
+        } catch (Exception e) {
+          LOG.warn("Could not convert preloaded value for " + redisKey + "; fetching it again", e);
+        }
+      }
+      try {
+        final R rawValue = client.withRedis(this::doFetch);
+        (fetchedValue = Optional.ofNullable(rawValue).map(this::convertFromRaw)).ifPresent(setter);
+        storedFingerprint = fingerprintOf(rawValue);
+        loaded = true;
+      } catch (Exception e) {
+        LOG.warn("Could not retrieve " + redisKey, e);
+      }
+    }
+  }
+
+  /**
+   * Fills the property from a raw value that has already been retrieved from Redis, such as by a bulk load. If the
+   * property has already been loaded or stored, this does nothing.
+   *
+   * @param rawValue The value as it is stored in Redis; {@code null} means that it is not set in Redis.
+   */
+  public void preload(R rawValue) {
+    synchronized (this) {
+      if (loaded) return;
+      try {
+        (fetchedValue = Optional.ofNullable(rawValue).map(this::convertFromRaw)).ifPresent(setter);
+        storedFingerprint = fingerprintOf(rawValue);
+        loaded = true;
+      } catch (Exception e) {
+        LOG.warn("Could not convert preloaded value for " + redisKey + "; it will be fetched lazily", e);
+      }
+    }
+  }
+
+  /**
+   * Holds a raw value that has already been retrieved from Redis, such as by a bulk load, without converting it. The
+   * value is converted when the property is first triggered, so a value which is never used is never converted; nor
+   * is it ever written back, since it cannot have changed. If the property has already been loaded or staged, this
+   * does nothing.
+   *
+   * @param rawValue The value as it is stored in Redis; {@code null} means that it is not set in Redis.
+   */
+  public void preloadLazily(R rawValue) {
+    if (rawValue == null) {
+      preload(null);
+      return;
+    }
+    synchronized (this) {
+      if (loaded || dirty) return;
+      storedFingerprint = null;
+      pendingRawValue = rawValue;
+      hasPendingRawValue = true;
+    }
+  }
+
+  /**
+   * Whether the property holds a raw value from {@link #preloadLazily(Object)} which has not been converted yet.
+   */
+  public boolean hasPendingRawValue() {
+    return hasPendingRawValue;
+  }
+
+  /**
+   * Drops the pending raw value, if any, keeping its fingerprint as that of the value known to be in Redis.
+   */
+  private void clearPendingRawValue() {
+    if (!hasPendingRawValue) return;
+    if (storedFingerprint == null) storedFingerprint = fingerprintOf(pendingRawValue);
+    pendingRawValue = null;
+    hasPendingRawValue = false;
+  }
+
+  /**
+   * Whether the property has been loaded, whether by {@link #trigger()}, {@link #preload(Object)}, or
+   * {@link #store(Object)}.
+   */
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Stores the value into Redis. If the {@code value} is {@code null}, then the key is deleted from Redis.
+   * Otherwise, the value is converted and written, unless it has the same fingerprint as the value known to be in
+   * Redis.
+   *
+   * @param value The value to persist into Redis; may be {@code null}
+   * @return {@code true} if a write was sent to Redis, even if it failed; {@code false} if it was skipped because the
+   * value had not changed, or could not be converted.
+   */
+  public boolean store(U value) {
+    return writeIfChanged(value, valueToStore -> {
+      if (valueToStore == null) {
+        client.withRedis(this::doClear);
+      } else {
+        client.withRedis(jedis -> {
+          doStore(jedis, valueToStore);
+        });
+      }
+    });
+  }
+
+  /**
+   * Stores the value into Redis as per {@link #store(Object)}, except that the write is sent on a single pipeline
+   * along with whatever {@code alsoWrite} queues, so that writes which go with the value cost no extra round trip.
+   * Nothing is sent if the write is skipped.
+   *
+   * @param value     The value to persist into Redis; may be {@code null}
+   * @param alsoWrite Queues the writes to send along with the value; never {@code null}
+   * @return {@code true} if a write was sent to Redis, even if it failed; {@code false} if it was skipped because the
+   * value had not changed, or could not be converted.
+   */
+  public boolean store(U value, Consumer<RedisWriteBatch> alsoWrite) {
+    Objects.requireNonNull(alsoWrite, "writes to send along with the value");
+    return writeIfChanged(value, valueToStore -> {
+      RedisWriteBatch batch = new RedisWriteBatch();
+      if (valueToStore == null) {
+        doStageClear(batch);
+      } else {
+        doStage(batch, valueToStore);
+      }
+      alsoWrite.accept(batch);
+      client.withRedisPipeline(batch::queue);
+    });
+  }
+
+  private boolean writeIfChanged(U value, RawWriter<R> writer) {
+    boolean writing = false;
+    try {
+      synchronized (this) {
+        clearPendingRawValue();
+        R valueToStore = Optional.ofNullable(value).map(toRaw).orElse(null);
+        Fingerprint fingerprint = fingerprintOf(valueToStore);
+        if (!fingerprint.equals(storedFingerprint)) {
+          writing = true;
+          writer.write(valueToStore);
+          storedFingerprint = fingerprint;
+        }
+        fetchedValue = Optional.ofNullable(value);
+        loaded = true;
+        dirty = false;
+        setter.accept(value);
+      }
+    } catch (Exception e) {
+      LOG.warn("Could not store value to " + redisKey + " => " + value, e);
+    }
+    return writing;
+  }
+
+  /**
+   * Writes the raw value to Redis, or deletes it if the raw value is {@code null}.
+   */
+  private interface RawWriter<R> {
+    void write(R value) throws Exception;
+  }
+
+  /**
+   * Assigns the value without writing it to Redis, marking the property as dirty so that the value is written by the
+   * next call to {@link #flush(RedisWriteBatch)}. If the {@code value} is {@code null}, then the flush will delete the
+   * key from Redis. Whether the value has actually changed is decided when it is flushed.
+   *
+   * @param value The value to eventually persist into Redis; may be {@code null}
+   */
+  public void stage(U value) {
+    synchronized (this) {
+      clearPendingRawValue();
+      dirty = true;
+      fetchedValue = Optional.ofNullable(value);
+      loaded = true;
+      setter.accept(value);
+    }
+  }
+
+  /**
+   * Whether there is a staged value waiting to be flushed.
+   *
+   * @return {@code true} if {@link #stage(Object)} has been called since the last {@link #flush(RedisWriteBatch)}.
+   */
+  public boolean isDirty() {
+    return dirty;
+  }
+
+  /**
+   * The length of the raw value last read from or written to Redis, as given by its {@link Fingerprint}, without
+   * going to Redis. A raw value held by {@link #preloadLazily(Object)} counts, although it has not been converted.
+   *
+   * @return The length, or 0 if the value is not set in Redis or has not been loaded.
+   */
+  public int getStoredLength() {
+    Fingerprint fingerprint = storedFingerprint;
+    if (fingerprint == null && hasPendingRawValue) {
+      synchronized (this) {
+        // Fingerprinted once here rather than when preloaded, since most preloaded values are never measured
+        if (hasPendingRawValue && storedFingerprint == null) storedFingerprint = fingerprintOf(pendingRawValue);
+        fingerprint = storedFingerprint;
+      }
+    }
+    return fingerprint == null ? 0 : Math.max(0, fingerprint.getLength());
+  }
+
+  /**
+   * Provides the value as it was most recently loaded, stored, or staged, without going to Redis.
+   *
+   * @return The current value, which is empty if the value is not set or has not been loaded; never {@code null}.
+   */
+  public Optional<U> getLoadedValue() {
+    return fetchedValue;
+  }
+
+  /**
+   * Queues the staged value (if any) onto the batch and marks the property as clean. The write is skipped if the
+   * staged value has the same fingerprint as the value known to be in Redis.
+   *
+   * @param batch The batch to write into; never {@code null}
+   * @return {@code true} if a write was queued.
+   */
+  public boolean flush(RedisWriteBatch batch) {
+    Objects.requireNonNull(batch, "batch to flush into");
+    synchronized (this) {
+      if (!dirty) return false;
+      dirty = false;
+      return queueIfChanged(batch);
+    }
+  }
+
+  /**
+   * Like {@link #flush(RedisWriteBatch)}, but also queues a value which was loaded and never staged if it no longer
+   * has the fingerprint it was loaded with; that is, if it is a mutable value which has been changed in place. This
+   * costs converting every loaded value, but only the changed ones are written.
+   *
+   * @param batch The batch to write into; never {@code null}
+   * @return {@code true} if a write was queued.
+   */
+  public boolean flushChanges(RedisWriteBatch batch) {
+    Objects.requireNonNull(batch, "batch to flush into");
+    synchronized (this) {
+      if (dirty) return flush(batch);
+      if (!loaded) return false;
+      try {
+        return queueIfChanged(batch);
+      } catch (RuntimeException e) {
+        LOG.warn("Could not check " + redisKey + " for changes; it will not be written", e);
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Queues the current value onto the batch, unless it has the same fingerprint as the value known to be in Redis.
+   *
+   * @param batch The batch to write into; never {@code null}
+   * @return {@code true} if a write was queued.
+   */
+  private boolean queueIfChanged(RedisWriteBatch batch) {
+    R valueToStore = fetchedValue.map(toRaw).orElse(null);
+    Fingerprint fingerprint = fingerprintOf(valueToStore);
+    if (fingerprint.equals(storedFingerprint)) return false;
+    if (valueToStore != null) {
+      doStage(batch, valueToStore);
+    } else {
+      doStageClear(batch);
+    }
+    storedFingerprint = fingerprint;
+    return true;
+  }
+
+  private Fingerprint fingerprintOf(R rawValue) {
+    return rawValue == null ? Fingerprint.ABSENT : fingerprint(rawValue);
+  }
+
+  /**
+   * Computes the fingerprint of a raw value.
+   *
+   * @param rawValue The value as it is stored in Redis; never {@code null}.
+   * @return The fingerprint; never {@code null}.
+   */
+  protected abstract Fingerprint fingerprint(R rawValue);
+
+  /**
+   * Discards any staged value without writing it.
+   */
+  public void discard() {
+    dirty = false;
+  }
+
+  /**
+   * Clears the property's storage from Redis.
+   *
+   * @param jedis The client; never {@code null}
+   */
+  protected abstract void doClear(Jedis jedis) throws Exception;
+
+  /**
+   * Stores the property into Redis.
+   *
+   * @param jedis The client; never {@code null}
+   * @param value The value to store; never {@code null}
+   */
+  protected abstract void doStore(Jedis jedis, R value) throws Exception;
+
+  /**
+   * Queues clearing the property's storage onto the batch.
+   *
+   * @param batch The batch; never {@code null}
+   */
+  protected abstract void doStageClear(RedisWriteBatch batch);
+
+  /**
+   * Queues storing the property onto the batch.
+   *
+   * @param batch The batch; never {@code null}
+   * @param value The value to store; never {@code null}
+   */
+  protected abstract void doStage(RedisWriteBatch batch, R value);
+
+}
@@ -0,0 +1,106 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads a value which has been split into chunks, fetching each chunk from Redis with its own {@code HGET} only when
+ * the reader reaches it. Only one chunk is held at a time, so the whole value is never in memory at once.
+ *
+ * @see ChunkReference
+ */
+public class ChunkInputStream extends InputStream {
+
+  private final Redis client;
+  private final byte[] chunksKey;
+  private final String hashKey;
+  private final ChunkReference reference;
+  private byte[] chunk = new byte[0];
+  private int chunkPosition = 0;
+  private int nextChunk = 0;
+  private long bytesRead = 0L;
+
+  /**
+   * Constructor.
+   *
+   * @param client    The Redis client; never {@code null}.
+   * @param chunksKey The key of the side hash holding the chunks; never {@code null}.
+   * @param hashKey   The key within the hash where the reference is stored; never {@code null}.
+   * @param reference The reference to the value; never {@code null}.
+   */
+  public ChunkInputStream(Redis client, String chunksKey, String hashKey, ChunkReference reference) {
+    Objects.requireNonNull(client, "Redis client to fetch the chunks");
+    this.client = client;
+    Objects.requireNonNull(chunksKey, "key of the side hash holding the chunks");
+    this.chunksKey = chunksKey.getBytes(StandardCharsets.UTF_8);
+    Objects.requireNonNull(hashKey, "key within the hash where the reference is stored");
+    this.hashKey = hashKey;
+    Objects.requireNonNull(reference, "reference to the chunked value");
+    this.reference = reference;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fillChunk()) return -1;
+    bytesRead++;
+    return chunk[chunkPosition++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    Objects.requireNonNull(b, "buffer to read into");
+    if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+    if (len == 0) return 0;
+    if (!fillChunk()) return -1;
+    int length = Math.min(len, chunk.length - chunkPosition);
+    System.arraycopy(chunk, chunkPosition, b, off, length);
+    chunkPosition += length;
+    bytesRead += length;
+    return length;
+  }
+
+  @Override
+  public int available() {
+    return chunk.length - chunkPosition;
+  }
+
+  @Override
+  public void close() {
+    chunk = new byte[0];
+    chunkPosition = 0;
+    nextChunk = reference.getChunkCount();
+  }
+
+  /**
+   * Makes sure that there is something left to read in the current chunk, fetching the next chunk if need be.
+   *
+   * @return {@code false} if every chunk has been read.
+   */
+  private boolean fillChunk() throws IOException {
+    while (chunkPosition >= chunk.length) {
+      if (nextChunk >= reference.getChunkCount()) {
+        if (bytesRead != reference.getLength()) {
+          throw new EOFException("Chunks of " + hashKey + " held " + bytesRead + " bytes rather than " +
+                                     reference.getLength());
+        }
+        return false;
+      }
+      byte[] field = reference.getChunkField(hashKey, nextChunk).getBytes(StandardCharsets.UTF_8);
+      try {
+        chunk = client.withRedis(jedis -> {
+          return jedis.hget(chunksKey, field);
+        });
+      } catch (Exception e) {
+        throw new IOException("Could not fetch chunk " + nextChunk + " of " + hashKey, e);
+      }
+      if (chunk == null) {
+        chunk = new byte[0];
+        throw new EOFException("Chunk " + nextChunk + " of " + hashKey + " is missing; it may have been overwritten");
+      }
+      chunkPosition = 0;
+      nextChunk++;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,158 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Stands in for a large value which has been split into chunks, each stored in its own field of a side hash. The
+ * reference is what is stored where the value would have been: {@link #MAGIC}, the number of chunks and the length
+ * of the value as 4-byte big-endian integers, and the hash of the value's {@link Fingerprint} as an 8-byte
+ * big-endian integer.
+ * <p>
+ * The names of the chunk fields include the hash of the value, so a value which is being read is never mixed with
+ * the chunks of a value written concurrently.
+ */
+public final class ChunkReference {
+
+  /**
+   * The first byte of every reference. It can never start a value tagged by {@link SerializableBinaryConverter}, a
+   * Java serialization stream, a value in the compact format, a compressed value, or a Base64 encoded value.
+   */
+  public static final byte MAGIC = (byte) 0xCB;
+
+  /**
+   * The length of a reference, in bytes.
+   */
+  public static final int LENGTH = 17;
+
+  private final int chunkCount;
+  private final Fingerprint fingerprint;
+
+  private ChunkReference(int chunkCount, Fingerprint fingerprint) {
+    this.chunkCount = chunkCount;
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Provides the reference for a value split into chunks of the given size.
+   *
+   * @param value     The value to split; never {@code null}.
+   * @param chunkSize The most bytes in a chunk; must be positive.
+   * @return The reference; never {@code null}.
+   */
+  public static ChunkReference of(byte[] value, int chunkSize) {
+    Objects.requireNonNull(value, "value to split into chunks");
+    if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    int chunkCount = Math.max(1, (int) ((value.length + (long) chunkSize - 1) / chunkSize));
+    return new ChunkReference(chunkCount, Fingerprint.of(value));
+  }
+
+  /**
+   * Reads a reference from a raw value stored in Redis.
+   *
+   * @param rawValue The raw value; never {@code null}.
+   * @return The reference, or {@code null} if the raw value is not a reference.
+   */
+  public static ChunkReference parse(byte[] rawValue) {
+    Objects.requireNonNull(rawValue, "raw value to parse");
+    if (rawValue.length != LENGTH || rawValue[0] != MAGIC) return null;
+    ByteBuffer buffer = ByteBuffer.wrap(rawValue, 1, LENGTH - 1);
+    int chunkCount = buffer.getInt();
+    int length = buffer.getInt();
+    long hash = buffer.getLong();
+    if (chunkCount <= 0 || length < 0) return null;
+    return new ChunkReference(chunkCount, Fingerprint.of(length, hash));
+  }
+
+  /**
+   * Whether a raw value has to be split into chunks to be stored, because it is larger than a chunk or because it
+   * could otherwise be mistaken for a reference.
+   *
+   * @param rawValue  The raw value; never {@code null}.
+   * @param chunkSize The most bytes in a chunk; 0 if values are never split.
+   * @return {@code true} if the value should be stored as chunks.
+   */
+  public static boolean isNeededFor(byte[] rawValue, int chunkSize) {
+    Objects.requireNonNull(rawValue, "raw value to check");
+    if (chunkSize <= 0) return false;
+    return rawValue.length > chunkSize || (rawValue.length > 0 && rawValue[0] == MAGIC);
+  }
+
+  /**
+   * The representation of the reference which is stored in Redis.
+   *
+   * @return The bytes; never {@code null}.
+   */
+  public byte[] toBytes() {
+    return ByteBuffer.allocate(LENGTH)
+               .put(MAGIC)
+               .putInt(chunkCount)
+               .putInt(fingerprint.getLength())
+               .putLong(fingerprint.getHash())
+               .array();
+  }
+
+  /**
+   * The number of chunks.
+   */
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  /**
+   * The length of the whole value, in bytes.
+   */
+  public int getLength() {
+    return fingerprint.getLength();
+  }
+
+  /**
+   * The fingerprint of the whole value; never {@code null}.
+   */
+  public Fingerprint getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Provides the field of the side hash holding one of the chunks.
+   *
+   * @param hashKey The key within the hash where the reference is stored; never {@code null}.
+   * @param index   The index of the chunk, starting from 0.
+   * @return The field; never {@code null}.
+   */
+  public String getChunkField(String hashKey, int index) {
+    Objects.requireNonNull(hashKey, "key within the hash where the reference is stored");
+    if (index < 0 || index >= chunkCount) throw new IndexOutOfBoundsException("No chunk " + index + " of " + chunkCount);
+    return hashKey + ":" + Long.toHexString(fingerprint.getHash()) + ":" + index;
+  }
+
+  /**
+   * Provides the fields of the side hash holding all of the chunks, in order.
+   *
+   * @param hashKey The key within the hash where the reference is stored; never {@code null}.
+   * @return The fields; never {@code null}.
+   */
+  public List<String> getChunkFields(String hashKey) {
+    List<String> fields = new ArrayList<>(chunkCount);
+    for (int i = 0; i < chunkCount; i++) fields.add(getChunkField(hashKey, i));
+    return fields;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof ChunkReference)) return false;
+    ChunkReference that = (ChunkReference) o;
+    return chunkCount == that.chunkCount && fingerprint.equals(that.fingerprint);
+  }
+
+  @Override
+  public int hashCode() {
+    return fingerprint.hashCode() * 31 + chunkCount;
+  }
+
+  @Override
+  public String toString() {
+    return "ChunkReference[" + chunkCount + " chunks, " + fingerprint + "]";
+  }
+}
@@ -1,7 +1,5 @@
 package com.webonise.tomcat8.redisession.redisclient;
 
-import org.apache.commons.lang3.time.DateFormatUtils;
-import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 
@@ -10,23 +8,36 @@ import java.util.*;
 import java.util.function.*;
 
 /**
- * Defines how to convert a Date value to and from Strings.
+ * Defines how to convert a Date value to and from Strings. Values are written in the configured
+ * {@link TimestampFormat}, and read in any of them.
  */
 public class DateConverter implements RedisConverter<Date> {
 
   private static final Log LOG = LogFactory.getLog(DateConverter.class);
 
-  protected static final FastDateFormat FORMAT = DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT;
   private final Supplier<? extends Date> defaultDateFactory;
+  private final TimestampFormat format;
 
   /**
-   * Constructor.
+   * Constructs a converter which writes {@link TimestampFormat#ISO_8601}.
    *
    * @param defaultDateFactory Provides the date to default to if there is a parse error; may not be {@code null}.
    */
   public DateConverter(Supplier<? extends Date> defaultDateFactory) {
+    this(defaultDateFactory, TimestampFormat.ISO_8601);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param defaultDateFactory Provides the date to default to if there is a parse error; may not be {@code null}.
+   * @param format             The format to write; may not be {@code null}.
+   */
+  public DateConverter(Supplier<? extends Date> defaultDateFactory, TimestampFormat format) {
     Objects.requireNonNull(defaultDateFactory, "supplier for the date to default to");
     this.defaultDateFactory = defaultDateFactory;
+    Objects.requireNonNull(format, "format to write dates in");
+    this.format = format;
   }
 
 
@@ -38,7 +49,7 @@ public class DateConverter implements RedisConverter<Date> {
    */
   @Override
   public String convertToString(Date value) {
-    return FORMAT.format(value);
+    return format.format(value.getTime());
   }
 
   /**
@@ -50,11 +61,10 @@ public class DateConverter implements RedisConverter<Date> {
   @Override
   public Date convertFromString(String value) {
     try {
-      return FORMAT.parse(value);
+      return new Date(TimestampFormat.parse(value));
     } catch (ParseException e) {
       Date defaultValue = defaultDateFactory.get();
-      String defaultValueString = FORMAT.format(defaultValue);
-      LOG.warn("Could not parse date from " + value + " using pattern " + FORMAT.getPattern() + " -- defaulting to " + defaultValueString, e);
+      LOG.warn("Could not parse date from " + value + " -- defaulting to " + format.format(defaultValue.getTime()), e);
       return defaultValue;
     }
   }
@@ -0,0 +1,103 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import java.util.*;
+
+/**
+ * A cheap summary of a raw value stored in Redis: its length and a 64-bit FNV-1a hash of its contents. Two values
+ * with different fingerprints are certainly different, so comparing fingerprints tells whether a value needs to be
+ * written again without keeping a copy of what was written before.
+ */
+public final class Fingerprint {
+
+  /**
+   * The fingerprint of a value which is not set in Redis.
+   */
+  public static final Fingerprint ABSENT = new Fingerprint(-1, 0L);
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final int length;
+  private final long hash;
+
+  private Fingerprint(int length, long hash) {
+    this.length = length;
+    this.hash = hash;
+  }
+
+  /**
+   * Provides the fingerprint of a binary value.
+   *
+   * @param value The value; never {@code null}.
+   * @return The fingerprint; never {@code null}.
+   */
+  public static Fingerprint of(byte[] value) {
+    Objects.requireNonNull(value, "value to fingerprint");
+    long hash = FNV_OFFSET_BASIS;
+    for (byte b : value) {
+      hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+    }
+    return new Fingerprint(value.length, hash);
+  }
+
+  /**
+   * Reconstitutes a fingerprint from its parts, such as when it has been stored alongside a value.
+   *
+   * @param length The length of the value; nonnegative.
+   * @param hash   The hash of the value, as given by {@link #getHash()}.
+   * @return The fingerprint; never {@code null}.
+   */
+  public static Fingerprint of(int length, long hash) {
+    if (length < 0) throw new IllegalArgumentException("Length of a fingerprinted value must be nonnegative: " + length);
+    return new Fingerprint(length, hash);
+  }
+
+  /**
+   * Provides the fingerprint of a string value.
+   *
+   * @param value The value; never {@code null}.
+   * @return The fingerprint; never {@code null}.
+   */
+  public static Fingerprint of(String value) {
+    Objects.requireNonNull(value, "value to fingerprint");
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+      hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+    return new Fingerprint(value.length(), hash);
+  }
+
+  /**
+   * The length of the value, or -1 for {@link #ABSENT}.
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * The hash of the value.
+   */
+  public long getHash() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof Fingerprint)) return false;
+    Fingerprint that = (Fingerprint) o;
+    return length == that.length && hash == that.hash;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(hash) * 31 + length;
+  }
+
+  @Override
+  public String toString() {
+    return this == ABSENT ? "Fingerprint[absent]" : "Fingerprint[" + length + ":" + Long.toHexString(hash) + "]";
+  }
+}
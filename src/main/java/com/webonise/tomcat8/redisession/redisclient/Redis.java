@@ -12,7 +12,7 @@ import java.util.stream.*;
 /**
  * The class responsible for communicating with Redis.
  */
-public class Redis {
+public class Redis implements AutoCloseable {
 
   /**
    * The interface to be implemented (probably as a lambda) to define what to do with Redis.
@@ -40,13 +40,49 @@ public class Redis {
     T apply(Jedis jedis, List<Object> transactionResults) throws Exception;
   }
 
+  /**
+   * The interface to be implemented (probably as a lambda) to define what to queue onto a pipeline.
+   * <p>
+   * The commands are not sent until the callback returns, so the {@link Response} handles that the pipeline
+   * produces may only be read after {@link Redis#withRedisPipelineResult(PipelineFunction)} returns.
+   *
+   * @param <T> The type to return from the callback, typically one or more {@link Response} handles.
+   */
+  public interface PipelineFunction<T> {
+    T apply(Pipeline pipeline) throws Exception;
+  }
+
+  /**
+   * The interface to be implemented (probably by a lambda) to define what to queue onto a pipeline when you don't
+   * care about the results.
+   */
+  public interface PipelineConsumer {
+    void apply(Pipeline pipeline) throws Exception;
+  }
+
   private static final Log log = LogFactory.getLog(Redis.class);
 
   public static final String DEFAULT_HOST = Protocol.DEFAULT_HOST;
   public static final int DEFAULT_PORT = Protocol.DEFAULT_PORT;
   public static final int DEFAULT_TIMEOUT = Math.max(Protocol.DEFAULT_TIMEOUT, (int) TimeUnit.SECONDS.toMillis(1L));
 
+  /**
+   * A connection pinned to a thread. It is returned to the pool once it has been unpinned as many times as it was
+   * pinned.
+   */
+  private static final class PinnedConnection {
+    private final Jedis jedis;
+    private int holds = 1;
+    private boolean inUse = false;
+
+    private PinnedConnection(Jedis jedis) {
+      this.jedis = jedis;
+    }
+  }
+
   private final JedisPool pool;
+  private final RedisExecutor executor;
+  private final ThreadLocal<PinnedConnection> pinnedConnection = new ThreadLocal<>();
 
   public Redis() {
     this(DEFAULT_PORT);
@@ -65,27 +101,111 @@ public class Redis {
   }
 
   public Redis(String redisHost, int redisPort, int redisTimeout) {
-    Objects.requireNonNull(redisHost, "Host for Redis");
-    if (redisHost.equals("")) throw new IllegalArgumentException("Host for Redis was empty");
+    this(createConfig(redisHost, redisPort, redisTimeout));
+  }
 
-    if (redisPort <= 0) throw new IllegalArgumentException("Invalid port: " + redisPort);
+  private static RedisConfig createConfig(String redisHost, int redisPort, int redisTimeout) {
+    RedisConfig config = new RedisConfig();
+    config.setHost(redisHost);
+    config.setPort(redisPort);
+    config.setConnectionTimeout(redisTimeout);
+    config.setSocketTimeout(redisTimeout);
+    return config;
+  }
 
-    if (redisTimeout < 0) {
-      throw new IllegalArgumentException("Timeout must be nonnegative: " + redisTimeout);
-    } else if (redisTimeout == 0) {
+  /**
+   * Constructor.
+   *
+   * @param config The settings for the connection and the connection pool; never {@code null}. Later changes to the
+   *               settings have no effect on this instance.
+   */
+  public Redis(RedisConfig config) {
+    Objects.requireNonNull(config, "Configuration for Redis");
+    if (config.getSocketTimeout() == 0) {
       log.warn("Redis timeout is 0, which is just asking for your application to hang.");
     }
+    if (config.getMaxIdle() > config.getMaxTotal()) {
+      log.warn("Redis pool maxIdle (" + config.getMaxIdle() + ") is greater than maxTotal (" + config.getMaxTotal() +
+                   "); the extra idle connections will never be used.");
+    }
+
+    pool = new JedisPool(config.createPoolConfig(), config.getHost(), config.getPort(),
+                            config.getConnectionTimeout(), config.getSocketTimeout(),
+                            config.getPassword(), config.getDatabase(), null
+    );
+    executor = config.createExecutor();
+  }
 
-    JedisPoolConfig config = new JedisPoolConfig();
-    config.setBlockWhenExhausted(false);
-    config.setFairness(false);
-    config.setLifo(true);
+  /**
+   * Closes the connection pool and shuts down the executor for asynchronous calls. Connections which are currently
+   * borrowed are closed as they are returned.
+   */
+  public void close() {
+    executor.shutdown();
+    pool.close();
+  }
 
-    pool = new JedisPool(config, redisHost, redisPort, redisTimeout);
+  /**
+   * Provides the executor for asynchronous calls, such as to monitor its queue.
+   *
+   * @return The executor; never {@code null}.
+   */
+  public RedisExecutor getExecutor() {
+    return executor;
   }
 
   /**
-   * Executes the callback and returns the result.
+   * Executes a task on the executor for asynchronous calls. Use this for any background work which blocks on Redis,
+   * rather than {@link ForkJoinPool#commonPool()}.
+   *
+   * @param task The task to execute; never {@code null}.
+   * @param <T>  The type returned by the task.
+   * @return The future result of the task; never {@code null}.
+   */
+  public <T> CompletableFuture<T> doAsync(Callable<T> task) {
+    return executor.submit(task);
+  }
+
+  /**
+   * Borrows a connection from the pool and pins it to the current thread: until {@link #unpinConnection()} is called,
+   * {@link #withRedis(RedisFunction)} on this thread uses the pinned connection instead of borrowing one for each
+   * call. Pins nest: if a connection is already pinned to this thread, then it stays pinned until it has been unpinned
+   * as many times as it was pinned.
+   *
+   * @throws redis.clients.jedis.exceptions.JedisException If a connection could not be borrowed from the pool.
+   */
+  public void pinConnection() {
+    PinnedConnection pinned = pinnedConnection.get();
+    if (pinned != null) {
+      pinned.holds += 1;
+      return;
+    }
+    pinnedConnection.set(new PinnedConnection(pool.getResource()));
+  }
+
+  /**
+   * Releases a pin made by {@link #pinConnection()}, returning the connection to the pool once every pin on this
+   * thread has been released. Does nothing if no connection is pinned to this thread.
+   */
+  public void unpinConnection() {
+    PinnedConnection pinned = pinnedConnection.get();
+    if (pinned == null) return;
+    pinned.holds -= 1;
+    if (pinned.holds > 0) return;
+    pinnedConnection.remove();
+    pinned.jedis.close();
+  }
+
+  /**
+   * Whether a connection is pinned to the current thread.
+   */
+  public boolean isConnectionPinned() {
+    return pinnedConnection.get() != null;
+  }
+
+  /**
+   * Executes the callback and returns the result. If a connection is pinned to the current thread, then it is used;
+   * otherwise, a connection is borrowed from the pool for the duration of the callback.
    *
    * @param callback The callback to execute; may not be {@code null}.
    * @param <T>      The type to return from the callback.
@@ -94,8 +214,24 @@ public class Redis {
    */
   public <T> T withRedis(RedisFunction<T> callback) throws Exception {
     Objects.requireNonNull(callback, "callback to execute with Redis");
-    try (Jedis jedis = pool.getResource()) {
-      return callback.apply(jedis);
+    PinnedConnection pinned = pinnedConnection.get();
+    if (pinned == null || pinned.inUse) {
+      // A nested call can't share the connection, since the outer call may be in the middle of a pipeline
+      try (Jedis jedis = pool.getResource()) {
+        return callback.apply(jedis);
+      }
+    }
+
+    pinned.inUse = true;
+    try {
+      return callback.apply(pinned.jedis);
+    } finally {
+      pinned.inUse = false;
+      if (pinned.jedis.getClient().isBroken()) {
+        // Don't keep using a broken connection; the rest of the thread's calls borrow from the pool
+        pinnedConnection.remove();
+        pinned.jedis.close();
+      }
     }
   }
 
@@ -114,26 +250,26 @@ public class Redis {
   }
 
   /**
-   * Queues the callback to be executed as a {@link ForkJoinTask} using {@link ForkJoinPool#commonPool()}.
+   * Queues the callback to be executed on the executor for asynchronous calls.
    *
    * @param callback The callback to execute; may not be {@code null}.
-   * @param <T>      The type to return from the fork-join task.
-   * @return The task; never {@code null}.
+   * @param <T>      The type to return from the future.
+   * @return The future result; never {@code null}.
    */
-  public <T> ForkJoinTask<T> withRedisAsync(RedisFunction<T> callback) {
+  public <T> CompletableFuture<T> withRedisAsync(RedisFunction<T> callback) {
     Objects.requireNonNull(callback, "callback to execute with Redis");
-    return ForkJoinPool.commonPool().submit(() -> {
+    return doAsync(() -> {
       return withRedis(callback);
     });
   }
 
   /**
-   * Queues the callback to be executed as a {@link ForkJoinTask} using {@link ForkJoinPool#commonPool()}.
+   * Queues the callback to be executed on the executor for asynchronous calls.
    *
    * @param callback The callback to execute; may not be {@code null}.
-   * @return The task, which will always return {@code null}; never {@code null} itself.
+   * @return The future, which will always complete with {@code null}; never {@code null} itself.
    */
-  public ForkJoinTask<Void> withRedisAsync(RedisConsumer callback) {
+  public CompletableFuture<Void> withRedisAsync(RedisConsumer callback) {
     Objects.requireNonNull(callback, "callback to execute with Redis");
     return withRedisAsync(jedis -> {
       callback.apply(jedis);
@@ -141,6 +277,57 @@ public class Redis {
     });
   }
 
+  /**
+   * Queues commands onto a pipeline, sends them to Redis in a single write, and waits for all the replies. The
+   * {@link Response} handles created by the callback are the typed futures for the individual commands: they may be
+   * read once this method returns.
+   *
+   * @param callback The callback that queues commands onto the pipeline; may not be {@code null}.
+   * @param <T>      The type to return from the callback.
+   * @return The return value of the callback.
+   * @throws Exception If an exception occurs, either with Redis or within the callback.
+   */
+  public <T> T withRedisPipelineResult(PipelineFunction<T> callback) throws Exception {
+    Objects.requireNonNull(callback, "callback to queue onto the pipeline");
+    return withRedis(jedis -> {
+      Pipeline pipeline = jedis.pipelined();
+      try {
+        return callback.apply(pipeline);
+      } finally {
+        // Always drain the replies, or else the connection goes back into the pool with unread responses
+        pipeline.sync();
+      }
+    });
+  }
+
+  /**
+   * Queues commands onto a pipeline, sends them to Redis in a single write, and waits for all the replies.
+   *
+   * @param callback The callback that queues commands onto the pipeline; may not be {@code null}.
+   * @throws Exception If an exception occurs, either with Redis or within the callback.
+   */
+  public void withRedisPipeline(PipelineConsumer callback) throws Exception {
+    Objects.requireNonNull(callback, "callback to queue onto the pipeline");
+    withRedisPipelineResult(pipeline -> {
+      callback.apply(pipeline);
+      return null;
+    });
+  }
+
+  /**
+   * Queues a pipeline to be executed on the executor for asynchronous calls.
+   *
+   * @param callback The callback that queues commands onto the pipeline; may not be {@code null}.
+   * @param <T>      The type to return from the future.
+   * @return The future result; never {@code null}.
+   */
+  public <T> CompletableFuture<T> withRedisPipelineAsync(PipelineFunction<T> callback) {
+    Objects.requireNonNull(callback, "callback to queue onto the pipeline");
+    return doAsync(() -> {
+      return withRedisPipelineResult(callback);
+    });
+  }
+
   /**
    * Performs a Redis transaction and returns the result.
    *
@@ -165,38 +352,39 @@ public class Redis {
   }
 
   /**
-   * Queues a callback to be executed within a transaction as a {@link ForkJoinTask} using {@link ForkJoinPool#commonPool()}.
+   * Queues a callback to be executed within a transaction on the executor for asynchronous calls.
    *
    * @param callback The callback to execute; may not be {@code null}.
-   * @return The task, which will always return {@code null}; never {@code null} itself.
+   * @return The future, which will always complete with {@code null}; never {@code null} itself.
    */
-  public <T> ForkJoinTask<T> withRedisTransactionAsync(RedisConsumer callback, TransactionResultHandler<T> resultHandler) {
+  public <T> CompletableFuture<T> withRedisTransactionAsync(RedisConsumer callback, TransactionResultHandler<T> resultHandler) {
     return withRedisAsync(toTransactionFunction(callback, resultHandler));
   }
 
 
   /**
-   * Queues a callback to be executed within a transaction as a {@link ForkJoinTask} using {@link ForkJoinPool#commonPool()},
+   * Queues a callback to be executed within a transaction on the executor for asynchronous calls,
    * and ignores the result.
    *
    * @param callback The callback to execute; may not be {@code null}.
-   * @return The task, which will always return {@code null}; never {@code null} itself.
+   * @return The future, which will always complete with {@code null}; never {@code null} itself.
    */
-  public ForkJoinTask<Void> withRedisTransactionAsync(RedisConsumer callback) {
+  public CompletableFuture<Void> withRedisTransactionAsync(RedisConsumer callback) {
     return withRedisTransactionAsync(callback, getDoNothingTransactionResultHandler());
   }
 
   /**
-   * Performs a full scan.
+   * Performs a full scan. The stream is sequential, and each page is fetched on the thread consuming the stream.
    *
    * @param paramsFactory The producer for params; never {@code null}
    * @return The stream of results from scanning; never {@code null}.
+   * @see ScanSpliterator
    */
   public Stream<String> fullScan(Supplier<ScanParams> paramsFactory) throws Exception {
     Objects.requireNonNull(paramsFactory, "The factory for the ScanParams");
     ScanParams params = paramsFactory.get();
     ScanSpliterator spliterator = new ScanSpliterator(this, ScanSpliterator.STARTING_CURSOR, params);
-    return StreamSupport.stream(spliterator, true);
+    return StreamSupport.stream(spliterator, false);
   }
 
   /**
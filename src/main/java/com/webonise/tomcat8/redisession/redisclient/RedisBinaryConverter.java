@@ -0,0 +1,47 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import java.io.*;
+
+/**
+ * Encapsulates the logic for converting to and from a value stored in Redis as raw bytes.
+ */
+public interface RedisBinaryConverter<U> {
+
+  /**
+   * Defines how to convert a value to bytes.
+   *
+   * @param value The value to convert; never {@code null}.
+   * @return The converted value; never {@code null}.
+   */
+  byte[] convertToBytes(U value);
+
+  /**
+   * Defines how to convert bytes into a value.
+   *
+   * @param value The bytes to convert; never {@code null}.
+   * @return The converted value; never {@code null}.
+   */
+  U convertFromBytes(byte[] value);
+
+  /**
+   * Defines how to convert bytes read from a stream into a value, such as a value stored in chunks. By default, the
+   * whole stream is read into memory and passed to {@link #convertFromBytes(byte[])}; implementations which can
+   * consume the stream as it is read should override this.
+   *
+   * @param in The stream of bytes to convert; never {@code null}; the caller closes it.
+   * @return The converted value; never {@code null}.
+   * @throws UncheckedIOException If the stream could not be read.
+   */
+  default U convertFromStream(InputStream in) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    try {
+      for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+        bytes.write(buffer, 0, length);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read the bytes to convert", e);
+    }
+    return convertFromBytes(bytes.toByteArray());
+  }
+}
@@ -0,0 +1,115 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import redis.clients.jedis.Jedis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * A support class for when a property is backed by raw bytes within a Redis hash, converted by a
+ * {@link RedisBinaryConverter}, so that binary values are stored without encoding them as text. See
+ * {@link AbstractRedisBackedPropertySupport} for how to use it.
+ */
+public class RedisBinaryHashBackedPropertySupport<U> extends AbstractRedisBackedPropertySupport<U, byte[]> {
+
+  protected final RedisBinaryConverter<U> converter;
+  private final String hashKey;
+  protected final byte[] redisKeyBytes;
+  protected final byte[] hashKeyBytes;
+
+  public RedisBinaryHashBackedPropertySupport(Redis client, String redisKey, String hashKey,
+                                              RedisBinaryConverter<U> converter, Consumer<U> setter) {
+    super(client, redisKey, Objects.requireNonNull(converter, "Conversion object")::convertFromBytes,
+          converter::convertToBytes, setter);
+
+    this.converter = converter;
+    Objects.requireNonNull(hashKey, "key within the hash in Redis");
+    this.hashKey = hashKey;
+    this.redisKeyBytes = redisKey.getBytes(StandardCharsets.UTF_8);
+    this.hashKeyBytes = hashKey.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Provides the key within the hash that backs this property.
+   *
+   * @return The hash key; never {@code null}.
+   */
+  public String getHashKey() {
+    return hashKey;
+  }
+
+  /**
+   * Queues deleting the property's storage from Redis onto the batch, whatever is known about it.
+   *
+   * @param batch The batch to write into; never {@code null}
+   */
+  public void clear(RedisWriteBatch batch) {
+    Objects.requireNonNull(batch, "batch to clear the property in");
+    doStageClear(batch);
+  }
+
+  /**
+   * Implements the raw Redis call.
+   *
+   * @param jedis The jedis client; never {@code null}.
+   * @return The return value from Redis, or {@code null} if it is not set in Redis.
+   */
+  @Override
+  protected byte[] doFetch(Jedis jedis) throws Exception {
+    return jedis.hget(redisKeyBytes, hashKeyBytes);
+  }
+
+  /**
+   * Computes the fingerprint of a raw value.
+   *
+   * @param rawValue The value as it is stored in Redis; never {@code null}.
+   * @return The fingerprint; never {@code null}.
+   */
+  @Override
+  protected Fingerprint fingerprint(byte[] rawValue) {
+    return Fingerprint.of(rawValue);
+  }
+
+  /**
+   * Clears the property's storage from Redis.
+   *
+   * @param jedis The client; never {@code null}
+   */
+  @Override
+  protected void doClear(Jedis jedis) throws Exception {
+    jedis.hdel(redisKey, hashKey);
+  }
+
+  /**
+   * Stores the property into Redis.
+   *
+   * @param jedis The client; never {@code null}
+   * @param value The value to store; never {@code null}
+   */
+  @Override
+  protected void doStore(Jedis jedis, byte[] value) throws Exception {
+    jedis.hset(redisKeyBytes, hashKeyBytes, value);
+  }
+
+  /**
+   * Queues clearing the property's storage onto the batch.
+   *
+   * @param batch The batch; never {@code null}
+   */
+  @Override
+  protected void doStageClear(RedisWriteBatch batch) {
+    batch.hdel(redisKey, hashKey);
+  }
+
+  /**
+   * Queues storing the property onto the batch.
+   *
+   * @param batch The batch; never {@code null}
+   * @param value The value to store; never {@code null}
+   */
+  @Override
+  protected void doStage(RedisWriteBatch batch, byte[] value) {
+    batch.hset(redisKey, hashKey, value);
+  }
+}
@@ -0,0 +1,215 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * A support class for when a property is backed by raw bytes within a Redis hash, and values larger than a chunk
+ * size are split into chunks stored in a side hash. The property's own field then holds a {@link ChunkReference}.
+ * Chunked values are read through a {@link ChunkInputStream} into {@link RedisBinaryConverter#convertFromStream},
+ * so no single Redis command carries more than a chunk, and the serialized value is never held in memory whole.
+ * See {@link AbstractRedisBackedPropertySupport} for how to use it.
+ * <p>
+ * Chunked values are always read, even if the chunk size is 0, so that chunking can be turned off. When a chunked
+ * value is replaced or removed, its chunks are deleted. If the property does not know whether the value in Redis is
+ * chunked, then it asks Redis first, unless chunking is turned off; at worst, chunks are left behind until the side
+ * hash expires along with the session.
+ */
+public class RedisChunkedHashBackedPropertySupport<U> extends RedisBinaryHashBackedPropertySupport<U> {
+
+  private static final Log LOG = LogFactory.getLog(RedisChunkedHashBackedPropertySupport.class);
+
+  private final String chunksKey;
+  private final byte[] chunksKeyBytes;
+  private final int chunkSize;
+
+  /**
+   * The reference stored in the property's field, as last read or written: empty if the value is stored whole or is
+   * not set, and {@code null} if it is not known.
+   */
+  private volatile Optional<ChunkReference> storedReference = null;
+
+  /**
+   * Constructor.
+   *
+   * @param client    The Redis client; never {@code null}.
+   * @param redisKey  The key of the hash; never {@code null}.
+   * @param hashKey   The key within the hash; never {@code null}.
+   * @param chunksKey The key of the side hash holding the chunks; never {@code null}.
+   * @param chunkSize The most bytes to store in a single field; 0 to never split values.
+   * @param converter The conversion object; never {@code null}.
+   * @param setter    Assigns the property value once it is known; never {@code null}.
+   */
+  public RedisChunkedHashBackedPropertySupport(Redis client, String redisKey, String hashKey, String chunksKey,
+                                               int chunkSize, RedisBinaryConverter<U> converter, Consumer<U> setter) {
+    super(client, redisKey, hashKey, converter, setter);
+    Objects.requireNonNull(chunksKey, "key of the side hash holding the chunks");
+    this.chunksKey = chunksKey;
+    this.chunksKeyBytes = chunksKey.getBytes(StandardCharsets.UTF_8);
+    if (chunkSize < 0) throw new IllegalArgumentException("Chunk size must be nonnegative: " + chunkSize);
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Converts a raw value from Redis into the property value, streaming the chunks if the raw value is a reference.
+   *
+   * @param rawValue The value as it is stored in Redis; never {@code null}.
+   * @return The property value; may be {@code null}.
+   */
+  @Override
+  protected U convertFromRaw(byte[] rawValue) {
+    ChunkReference reference = ChunkReference.parse(rawValue);
+    storedReference = Optional.ofNullable(reference);
+    if (reference == null) return super.convertFromRaw(rawValue);
+    try (ChunkInputStream in = new ChunkInputStream(client, chunksKey, getHashKey(), reference)) {
+      return converter.convertFromStream(in);
+    }
+  }
+
+  /**
+   * Computes the fingerprint of a raw value. The fingerprint of a reference is that of the value it refers to.
+   *
+   * @param rawValue The value as it is stored in Redis; never {@code null}.
+   * @return The fingerprint; never {@code null}.
+   */
+  @Override
+  protected Fingerprint fingerprint(byte[] rawValue) {
+    ChunkReference reference = ChunkReference.parse(rawValue);
+    return reference == null ? super.fingerprint(rawValue) : reference.getFingerprint();
+  }
+
+  /**
+   * Clears the property's storage from Redis, along with any chunks.
+   *
+   * @param jedis The client; never {@code null}
+   */
+  @Override
+  protected void doClear(Jedis jedis) throws Exception {
+    Optional<ChunkReference> previous = fetchStoredReference(jedis);
+    Pipeline pipeline = jedis.pipelined();
+    pipeline.hdel(redisKeyBytes, hashKeyBytes);
+    staleChunkFields(previous, null).ifPresent(fields -> pipeline.hdel(chunksKey, fields));
+    pipeline.sync();
+    storedReference = Optional.empty();
+  }
+
+  /**
+   * Stores the property into Redis, splitting it into chunks if it is too large.
+   *
+   * @param jedis The client; never {@code null}
+   * @param value The value to store; never {@code null}
+   */
+  @Override
+  protected void doStore(Jedis jedis, byte[] value) throws Exception {
+    Optional<ChunkReference> previous = fetchStoredReference(jedis);
+    ChunkReference reference = ChunkReference.isNeededFor(value, chunkSize) ? ChunkReference.of(value, chunkSize) : null;
+    Pipeline pipeline = jedis.pipelined();
+    if (reference == null) {
+      pipeline.hset(redisKeyBytes, hashKeyBytes, value);
+    } else {
+      // Write the chunks before the reference, so that a reader which finds the reference also finds the chunks
+      for (int i = 0; i < reference.getChunkCount(); i++) {
+        pipeline.hset(chunksKeyBytes, reference.getChunkField(getHashKey(), i).getBytes(StandardCharsets.UTF_8),
+                      chunk(value, i));
+      }
+      pipeline.hset(redisKeyBytes, hashKeyBytes, reference.toBytes());
+    }
+    staleChunkFields(previous, reference).ifPresent(fields -> pipeline.hdel(chunksKey, fields));
+    pipeline.sync();
+    storedReference = Optional.ofNullable(reference);
+  }
+
+  /**
+   * Queues clearing the property's storage onto the batch, along with any chunks.
+   *
+   * @param batch The batch; never {@code null}
+   */
+  @Override
+  protected void doStageClear(RedisWriteBatch batch) {
+    Optional<ChunkReference> previous = fetchStoredReference();
+    batch.hdel(redisKey, getHashKey());
+    // The chunks are only deleted once the reference to them is gone
+    staleChunkFields(previous, null).ifPresent(fields -> {
+      for (String field : fields) batch.hdelLast(chunksKey, field);
+    });
+    storedReference = Optional.empty();
+  }
+
+  /**
+   * Queues storing the property onto the batch, splitting it into chunks if it is too large.
+   *
+   * @param batch The batch; never {@code null}
+   * @param value The value to store; never {@code null}
+   */
+  @Override
+  protected void doStage(RedisWriteBatch batch, byte[] value) {
+    Optional<ChunkReference> previous = fetchStoredReference();
+    ChunkReference reference = ChunkReference.isNeededFor(value, chunkSize) ? ChunkReference.of(value, chunkSize) : null;
+    // As in doStore, the chunks go before the reference and the stale chunks after it, whatever else is in the batch
+    staleChunkFields(previous, reference).ifPresent(fields -> {
+      for (String field : fields) batch.hdelLast(chunksKey, field);
+    });
+    if (reference == null) {
+      batch.hset(redisKey, getHashKey(), value);
+    } else {
+      for (int i = 0; i < reference.getChunkCount(); i++) {
+        batch.hsetFirst(chunksKey, reference.getChunkField(getHashKey(), i), chunk(value, i));
+      }
+      batch.hset(redisKey, getHashKey(), reference.toBytes());
+    }
+    storedReference = Optional.ofNullable(reference);
+  }
+
+  private byte[] chunk(byte[] value, int index) {
+    int from = index * chunkSize;
+    return Arrays.copyOfRange(value, from, Math.min(value.length, from + chunkSize));
+  }
+
+  /**
+   * Provides the chunk fields of the previously stored value which are not also used by the new value.
+   *
+   * @param previous The reference previously stored; never {@code null}.
+   * @param current  The reference being stored, or {@code null} if the value is stored whole or cleared.
+   * @return The fields to delete, if any; never {@code null}.
+   */
+  private Optional<String[]> staleChunkFields(Optional<ChunkReference> previous, ChunkReference current) {
+    if (!previous.isPresent() || previous.get().equals(current)) return Optional.empty();
+    Set<String> fields = new LinkedHashSet<>(previous.get().getChunkFields(getHashKey()));
+    if (current != null) fields.removeAll(current.getChunkFields(getHashKey()));
+    return fields.isEmpty() ? Optional.empty() : Optional.of(fields.toArray(new String[fields.size()]));
+  }
+
+  /**
+   * Provides the reference currently stored in the property's field, asking Redis if it is not known and chunking is
+   * turned on.
+   *
+   * @param jedis The client; never {@code null}
+   * @return The reference, or empty if there is none or it could not be determined; never {@code null}.
+   */
+  private Optional<ChunkReference> fetchStoredReference(Jedis jedis) {
+    Optional<ChunkReference> known = storedReference;
+    if (known != null) return known;
+    if (chunkSize == 0) return Optional.empty();
+    return Optional.ofNullable(jedis.hget(redisKeyBytes, hashKeyBytes)).map(ChunkReference::parse);
+  }
+
+  private Optional<ChunkReference> fetchStoredReference() {
+    Optional<ChunkReference> known = storedReference;
+    if (known != null) return known;
+    if (chunkSize == 0) return Optional.empty();
+    try {
+      return client.withRedis(jedis -> {
+        return fetchStoredReference(jedis);
+      });
+    } catch (Exception e) {
+      LOG.warn("Could not check whether " + getHashKey() + " in " + redisKey + " has chunks to replace", e);
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Protocol;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The settings used by {@link Redis} to connect to the server, and to size its connection pool and its executor for
+ * asynchronous calls. The defaults connect to {@code localhost:6379}, database 0, without a password.
+ * <p>
+ * This class is not thread safe: populate it, then hand it to {@link Redis#Redis(RedisConfig)}, which takes its own
+ * copy of the settings.
+ */
+public class RedisConfig {
+
+  private String host = Redis.DEFAULT_HOST;
+  private int port = Redis.DEFAULT_PORT;
+  private int database = Protocol.DEFAULT_DATABASE;
+  private String password = null;
+  private int connectionTimeout = Redis.DEFAULT_TIMEOUT;
+  private int socketTimeout = Redis.DEFAULT_TIMEOUT;
+  private int maxTotal = JedisPoolConfig.DEFAULT_MAX_TOTAL;
+  private int maxIdle = JedisPoolConfig.DEFAULT_MAX_IDLE;
+  private int minIdle = JedisPoolConfig.DEFAULT_MIN_IDLE;
+  private long maxWaitMillis = 0L;
+  private long timeBetweenEvictionRunsMillis = TimeUnit.SECONDS.toMillis(30L);
+  private long minEvictableIdleTimeMillis = TimeUnit.SECONDS.toMillis(60L);
+  private int asyncThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+  private int asyncQueueSize = 1024;
+  private boolean asyncVirtualThreads = false;
+
+  public String getHost() {
+    return host;
+  }
+
+  public void setHost(String host) {
+    Objects.requireNonNull(host, "Host for Redis");
+    if (host.isEmpty()) throw new IllegalArgumentException("Host for Redis was empty");
+    this.host = host;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public void setPort(int port) {
+    if (port <= 0) throw new IllegalArgumentException("Invalid port: " + port);
+    this.port = port;
+  }
+
+  public int getDatabase() {
+    return database;
+  }
+
+  public void setDatabase(int database) {
+    if (database < 0) throw new IllegalArgumentException("Database index must be nonnegative: " + database);
+    this.database = database;
+  }
+
+  /**
+   * The password to {@code AUTH} with; {@code null} if none is needed.
+   */
+  public String getPassword() {
+    return password;
+  }
+
+  public void setPassword(String password) {
+    this.password = password == null || password.isEmpty() ? null : password;
+  }
+
+  /**
+   * How long (in milliseconds) to wait when connecting to the server.
+   */
+  public int getConnectionTimeout() {
+    return connectionTimeout;
+  }
+
+  public void setConnectionTimeout(int connectionTimeout) {
+    if (connectionTimeout < 0) {
+      throw new IllegalArgumentException("Connection timeout must be nonnegative: " + connectionTimeout);
+    }
+    this.connectionTimeout = connectionTimeout;
+  }
+
+  /**
+   * How long (in milliseconds) to wait for a reply from the server.
+   */
+  public int getSocketTimeout() {
+    return socketTimeout;
+  }
+
+  public void setSocketTimeout(int socketTimeout) {
+    if (socketTimeout < 0) {
+      throw new IllegalArgumentException("Socket timeout must be nonnegative: " + socketTimeout);
+    }
+    this.socketTimeout = socketTimeout;
+  }
+
+  /**
+   * The maximum number of connections in the pool, both idle and borrowed.
+   */
+  public int getMaxTotal() {
+    return maxTotal;
+  }
+
+  public void setMaxTotal(int maxTotal) {
+    if (maxTotal <= 0) throw new IllegalArgumentException("Maximum pool size must be positive: " + maxTotal);
+    this.maxTotal = maxTotal;
+  }
+
+  /**
+   * The maximum number of idle connections kept in the pool.
+   */
+  public int getMaxIdle() {
+    return maxIdle;
+  }
+
+  public void setMaxIdle(int maxIdle) {
+    if (maxIdle < 0) throw new IllegalArgumentException("Maximum idle connections must be nonnegative: " + maxIdle);
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * The number of idle connections that the evictor tries to keep in the pool.
+   */
+  public int getMinIdle() {
+    return minIdle;
+  }
+
+  public void setMinIdle(int minIdle) {
+    if (minIdle < 0) throw new IllegalArgumentException("Minimum idle connections must be nonnegative: " + minIdle);
+    this.minIdle = minIdle;
+  }
+
+  /**
+   * How long (in milliseconds) to wait for a connection when the pool is exhausted. If 0 (the default), then
+   * borrowing from an exhausted pool fails immediately; if negative, then it waits indefinitely.
+   */
+  public long getMaxWaitMillis() {
+    return maxWaitMillis;
+  }
+
+  public void setMaxWaitMillis(long maxWaitMillis) {
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  /**
+   * How long (in milliseconds) between runs of the idle connection evictor; not positive to disable the evictor.
+   */
+  public long getTimeBetweenEvictionRunsMillis() {
+    return timeBetweenEvictionRunsMillis;
+  }
+
+  public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+    this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+  }
+
+  /**
+   * How long (in milliseconds) a connection may sit idle before the evictor may close it.
+   */
+  public long getMinEvictableIdleTimeMillis() {
+    return minEvictableIdleTimeMillis;
+  }
+
+  public void setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+    this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+  }
+
+  /**
+   * The number of threads which perform asynchronous Redis calls. There must be at least 2, so that the background
+   * pass, which occupies one of them, never starves the asynchronous calls made while it runs.
+   */
+  public int getAsyncThreads() {
+    return asyncThreads;
+  }
+
+  public void setAsyncThreads(int asyncThreads) {
+    if (asyncThreads < 2) throw new IllegalArgumentException("Async thread count must be at least 2: " + asyncThreads);
+    this.asyncThreads = asyncThreads;
+  }
+
+  /**
+   * The number of asynchronous Redis calls which may wait for a thread. Beyond that, calls run on the caller's thread.
+   */
+  public int getAsyncQueueSize() {
+    return asyncQueueSize;
+  }
+
+  public void setAsyncQueueSize(int asyncQueueSize) {
+    if (asyncQueueSize <= 0) throw new IllegalArgumentException("Async queue size must be positive: " + asyncQueueSize);
+    this.asyncQueueSize = asyncQueueSize;
+  }
+
+  /**
+   * Whether asynchronous Redis calls run on virtual threads, if the JDK supports them (JDK 21 or later).
+   */
+  public boolean getAsyncVirtualThreads() {
+    return asyncVirtualThreads;
+  }
+
+  public void setAsyncVirtualThreads(boolean asyncVirtualThreads) {
+    this.asyncVirtualThreads = asyncVirtualThreads;
+  }
+
+  /**
+   * Creates the executor for asynchronous Redis calls from these settings.
+   *
+   * @return A new executor; never {@code null}.
+   */
+  public RedisExecutor createExecutor() {
+    return new RedisExecutor(asyncThreads, asyncQueueSize, asyncVirtualThreads);
+  }
+
+  /**
+   * Creates the configuration of the connection pool from these settings.
+   *
+   * @return A new pool configuration; never {@code null}.
+   */
+  public JedisPoolConfig createPoolConfig() {
+    JedisPoolConfig config = new JedisPoolConfig();
+    config.setMaxTotal(maxTotal);
+    config.setMaxIdle(maxIdle);
+    config.setMinIdle(minIdle);
+    config.setBlockWhenExhausted(maxWaitMillis != 0);
+    config.setMaxWaitMillis(maxWaitMillis);
+    config.setTimeBetweenEvictionRunsMillis(timeBetweenEvictionRunsMillis);
+    config.setMinEvictableIdleTimeMillis(minEvictableIdleTimeMillis);
+    config.setFairness(false);
+    config.setLifo(true);
+    return config;
+  }
+
+}
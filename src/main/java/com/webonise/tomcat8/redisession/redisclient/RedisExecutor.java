@@ -0,0 +1,139 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * The executor for the blocking Redis calls that {@link Redis} performs asynchronously. It has a fixed number of named
+ * daemon threads and a bounded queue, so that Redis I/O never runs on {@link ForkJoinPool#commonPool()}. When the
+ * queue is full, the task is run on the submitting thread instead, which slows down the submitter rather than
+ * dropping the work; these rejections are counted.
+ * <p>
+ * The threads may optionally be virtual threads, which requires JDK 21 or later. On earlier JDKs, platform threads
+ * are used instead.
+ */
+public class RedisExecutor {
+
+  private static final Log log = LogFactory.getLog(RedisExecutor.class);
+
+  private static final String THREAD_NAME_PREFIX = "redis-async-";
+
+  private final ThreadPoolExecutor executor;
+  private final LongAdder rejectedTasks = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param threads           The number of threads, which must be positive.
+   * @param queueSize         The number of tasks which may wait for a thread, which must be positive.
+   * @param useVirtualThreads Whether to use virtual threads if the JDK supports them.
+   */
+  public RedisExecutor(int threads, int queueSize, boolean useVirtualThreads) {
+    if (threads <= 0) throw new IllegalArgumentException("Thread count must be positive: " + threads);
+    if (queueSize <= 0) throw new IllegalArgumentException("Queue size must be positive: " + queueSize);
+
+    ThreadFactory threadFactory = useVirtualThreads ? createVirtualThreadFactory() : null;
+    if (threadFactory == null) threadFactory = createPlatformThreadFactory();
+
+    executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                         new ArrayBlockingQueue<>(queueSize), threadFactory, this::rejected
+    );
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  private static ThreadFactory createPlatformThreadFactory() {
+    AtomicInteger counter = new AtomicInteger(0);
+    return runnable -> {
+      Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + counter.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Creates a factory of virtual threads via reflection, since this is compiled for Java 8.
+   *
+   * @return The factory, or {@code null} if virtual threads are not supported.
+   */
+  private static ThreadFactory createVirtualThreadFactory() {
+    try {
+      // Look the methods up on the public interface: the builder's own class is not accessible
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      Method factory = builderClass.getMethod("factory");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = name.invoke(builder, THREAD_NAME_PREFIX, 0L);
+      return (ThreadFactory) factory.invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.warn("Virtual threads are not supported by this JVM; using platform threads for Redis instead", e);
+      return null;
+    }
+  }
+
+  private void rejected(Runnable task, ThreadPoolExecutor executor) {
+    rejectedTasks.increment();
+    if (executor.isShutdown()) throw new RejectedExecutionException("The Redis executor has been shut down");
+    task.run();
+  }
+
+  /**
+   * Submits the task.
+   *
+   * @param task The task to execute; never {@code null}.
+   * @param <T>  The type returned by the task.
+   * @return The future result of the task; never {@code null}.
+   */
+  public <T> CompletableFuture<T> submit(Callable<T> task) {
+    Objects.requireNonNull(task, "task to execute");
+    CompletableFuture<T> future = new CompletableFuture<>();
+    executor.execute(() -> {
+      try {
+        future.complete(task.call());
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * The number of tasks waiting for a thread.
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * The number of threads which are currently executing tasks.
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * The number of tasks which found the queue full, and so were run on the submitting thread.
+   */
+  public long getRejectedCount() {
+    return rejectedTasks.sum();
+  }
+
+  /**
+   * The number of tasks which have completed on the executor's threads.
+   */
+  public long getCompletedCount() {
+    return executor.getCompletedTaskCount();
+  }
+
+  /**
+   * Stops accepting tasks. Tasks which were already submitted are still executed.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+}
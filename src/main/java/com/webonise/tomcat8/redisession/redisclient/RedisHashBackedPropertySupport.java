@@ -24,6 +24,15 @@ public class RedisHashBackedPropertySupport<U> extends RedisBackedPropertySuppor
     this.hashKey = hashKey;
   }
 
+  /**
+   * Provides the key within the hash that backs this property.
+   *
+   * @return The hash key; never {@code null}.
+   */
+  public String getHashKey() {
+    return hashKey;
+  }
+
   /**
    * Implements the raw Redis call.
    *
@@ -55,4 +64,25 @@ public class RedisHashBackedPropertySupport<U> extends RedisBackedPropertySuppor
   protected void doStore(Jedis jedis, String value) throws Exception {
     jedis.hset(redisKey, hashKey, value);
   }
+
+  /**
+   * Queues clearing the property's storage onto the batch.
+   *
+   * @param batch The batch; never {@code null}
+   */
+  @Override
+  protected void doStageClear(RedisWriteBatch batch) {
+    batch.hdel(redisKey, hashKey);
+  }
+
+  /**
+   * Queues storing the property onto the batch.
+   *
+   * @param batch The batch; never {@code null}
+   * @param value The value to store; never {@code null}
+   */
+  @Override
+  protected void doStage(RedisWriteBatch batch, String value) {
+    batch.hset(redisKey, hashKey, value);
+  }
 }
@@ -0,0 +1,111 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A Lua script to be executed on the Redis server. The script is called by its SHA1 digest using {@code EVALSHA},
+ * and it is loaded into the server's script cache with {@code SCRIPT LOAD} the first time the server reports that it
+ * does not know the script. That way, the script body crosses the network only once per server (and again after a
+ * {@code SCRIPT FLUSH} or restart).
+ */
+public class RedisScript {
+
+  private final String source;
+  private final String sha;
+  private final byte[] shaBytes;
+
+  /**
+   * Constructor.
+   *
+   * @param source The Lua source of the script; never {@code null}.
+   */
+  public RedisScript(String source) {
+    Objects.requireNonNull(source, "source of the Lua script");
+    this.source = source;
+    this.sha = sha1Hex(source);
+    this.shaBytes = sha.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String sha1Hex(String source) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is required to be supported by every Java platform", e);
+    }
+  }
+
+  /**
+   * Provides the SHA1 digest of the script, which is how Redis identifies it.
+   *
+   * @return The digest as lower-case hex; never {@code null}.
+   */
+  public String getSha() {
+    return sha;
+  }
+
+  /**
+   * Provides the Lua source of the script.
+   *
+   * @return The source; never {@code null}.
+   */
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * Executes the script, loading it into the server's script cache if need be.
+   *
+   * @param jedis The client; never {@code null}.
+   * @param keys  The keys that the script accesses, available as {@code KEYS} in the script; never {@code null}.
+   * @param args  The other arguments, available as {@code ARGV} in the script; never {@code null}.
+   * @return The reply of the script, as converted by Jedis.
+   */
+  public Object eval(Jedis jedis, List<String> keys, List<String> args) {
+    Objects.requireNonNull(jedis, "client to execute the script with");
+    Objects.requireNonNull(keys, "keys for the script");
+    Objects.requireNonNull(args, "arguments for the script");
+    try {
+      return jedis.evalsha(sha, keys, args);
+    } catch (JedisDataException e) {
+      String message = e.getMessage();
+      if (message == null || !message.startsWith("NOSCRIPT")) throw e;
+      jedis.scriptLoad(source);
+      return jedis.evalsha(sha, keys, args);
+    }
+  }
+
+  /**
+   * Executes the script with binary arguments, loading it into the server's script cache if need be. Bulk replies
+   * are returned as {@code byte[]} rather than decoded into strings, so binary values survive intact.
+   *
+   * @param jedis The client; never {@code null}.
+   * @param keys  The keys that the script accesses, available as {@code KEYS} in the script; never {@code null}.
+   * @param args  The other arguments, available as {@code ARGV} in the script; never {@code null}.
+   * @return The reply of the script, as converted by Jedis.
+   */
+  public Object evalBinary(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+    Objects.requireNonNull(jedis, "client to execute the script with");
+    Objects.requireNonNull(keys, "keys for the script");
+    Objects.requireNonNull(args, "arguments for the script");
+    try {
+      return jedis.evalsha(shaBytes, keys, args);
+    } catch (JedisDataException e) {
+      String message = e.getMessage();
+      if (message == null || !message.startsWith("NOSCRIPT")) throw e;
+      jedis.scriptLoad(source.getBytes(StandardCharsets.UTF_8));
+      return jedis.evalsha(shaBytes, keys, args);
+    }
+  }
+
+}
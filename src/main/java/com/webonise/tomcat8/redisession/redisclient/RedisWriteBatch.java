@@ -0,0 +1,299 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import redis.clients.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Collects writes so that they can be sent to Redis together on a single pipeline. Writes to the same hash are
+ * coalesced into a single {@code HMSET} and a single {@code HDEL}, and a later write to a key or field replaces any
+ * earlier write to that same key or field. Binary writes to a hash are only coalesced up to
+ * {@value #MAX_BINARY_HMSET_BYTES} bytes per {@code HMSET}, so that large values such as chunks do not make one
+ * long-running command.
+ * <p>
+ * Writes which other writes depend on, such as the chunks that a reference points to, are queued with
+ * {@link #hsetFirst(String, String, byte[])}, and cleanups which must wait until nothing refers to what they remove
+ * are queued with {@link #hdelLast(String, String)}. The order in which commands are sent is otherwise only as
+ * described by {@link #queue(Pipeline)}.
+ * <p>
+ * This class is not thread safe.
+ */
+public class RedisWriteBatch {
+
+  /**
+   * The most bytes of binary values to coalesce into a single {@code HMSET}, though a single larger value still gets
+   * a command of its own.
+   */
+  public static final int MAX_BINARY_HMSET_BYTES = 64 * 1024;
+
+  private final Map<String, String> sets = new LinkedHashMap<>();
+  private final Set<String> deletes = new LinkedHashSet<>();
+  private final Map<String, Map<String, String>> hashSets = new LinkedHashMap<>();
+  private final Map<String, Map<String, byte[]>> binaryHashSets = new LinkedHashMap<>();
+  private final Map<String, Map<String, byte[]>> leadingBinaryHashSets = new LinkedHashMap<>();
+  private final Map<String, Set<String>> trailingHashDeletes = new LinkedHashMap<>();
+  private final Map<String, Set<String>> hashDeletes = new LinkedHashMap<>();
+  private final Map<String, Map<String, Long>> hashIncrements = new LinkedHashMap<>();
+  private final Map<String, Long> expirations = new LinkedHashMap<>();
+  private final Set<String> persists = new LinkedHashSet<>();
+  private final Map<String, Map<String, Double>> sortedSetAdds = new LinkedHashMap<>();
+  private final Map<String, Set<String>> sortedSetRemoves = new LinkedHashMap<>();
+  private final Map<String, Set<String>> publishes = new LinkedHashMap<>();
+
+  /**
+   * Queues a {@code SET} of the key.
+   *
+   * @param key   The key to set; never {@code null}.
+   * @param value The value to set; never {@code null}.
+   */
+  public void set(String key, String value) {
+    Objects.requireNonNull(key, "key to set");
+    Objects.requireNonNull(value, "value to set");
+    deletes.remove(key);
+    sets.put(key, value);
+  }
+
+  /**
+   * Queues a {@code DEL} of the key.
+   *
+   * @param key The key to delete; never {@code null}.
+   */
+  public void del(String key) {
+    Objects.requireNonNull(key, "key to delete");
+    sets.remove(key);
+    hashSets.remove(key);
+    binaryHashSets.remove(key);
+    leadingBinaryHashSets.remove(key);
+    hashDeletes.remove(key);
+    trailingHashDeletes.remove(key);
+    deletes.add(key);
+  }
+
+  /**
+   * Queues setting a field within a hash.
+   *
+   * @param key   The key of the hash; never {@code null}.
+   * @param field The field within the hash; never {@code null}.
+   * @param value The value to set; never {@code null}.
+   */
+  public void hset(String key, String field, String value) {
+    Objects.requireNonNull(key, "key of the hash to set");
+    Objects.requireNonNull(field, "field within the hash to set");
+    Objects.requireNonNull(value, "value to set into the hash");
+    Optional.ofNullable(hashDeletes.get(key)).ifPresent(fields -> fields.remove(field));
+    Optional.ofNullable(binaryHashSets.get(key)).ifPresent(fields -> fields.remove(field));
+    hashSets.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(field, value);
+  }
+
+  /**
+   * Queues setting a field within a hash to a binary value.
+   *
+   * @param key   The key of the hash; never {@code null}.
+   * @param field The field within the hash; never {@code null}.
+   * @param value The value to set; never {@code null}.
+   */
+  public void hset(String key, String field, byte[] value) {
+    Objects.requireNonNull(key, "key of the hash to set");
+    Objects.requireNonNull(field, "field within the hash to set");
+    Objects.requireNonNull(value, "value to set into the hash");
+    Optional.ofNullable(hashDeletes.get(key)).ifPresent(fields -> fields.remove(field));
+    Optional.ofNullable(hashSets.get(key)).ifPresent(fields -> fields.remove(field));
+    binaryHashSets.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(field, value);
+  }
+
+  /**
+   * Queues setting a field within a hash to a binary value before any of the other sets and deletes in the batch,
+   * other than {@code DEL}s of whole keys, so that a reader never finds a value written by the batch which refers to
+   * this one without also finding this one. Meant for a key whose fields are only written this way.
+   *
+   * @param key   The key of the hash; never {@code null}.
+   * @param field The field within the hash; never {@code null}.
+   * @param value The value to set; never {@code null}.
+   */
+  public void hsetFirst(String key, String field, byte[] value) {
+    Objects.requireNonNull(key, "key of the hash to set");
+    Objects.requireNonNull(field, "field within the hash to set");
+    Objects.requireNonNull(value, "value to set into the hash");
+    Optional.ofNullable(trailingHashDeletes.get(key)).ifPresent(fields -> fields.remove(field));
+    leadingBinaryHashSets.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(field, value);
+  }
+
+  /**
+   * Queues deleting a field within a hash after all the sets in the batch, so that whatever the batch writes to stop
+   * referring to the field is written first. Meant for a key whose fields are only written by
+   * {@link #hsetFirst(String, String, byte[])}.
+   *
+   * @param key   The key of the hash; never {@code null}.
+   * @param field The field within the hash; never {@code null}.
+   */
+  public void hdelLast(String key, String field) {
+    Objects.requireNonNull(key, "key of the hash to delete from");
+    Objects.requireNonNull(field, "field within the hash to delete");
+    Optional.ofNullable(leadingBinaryHashSets.get(key)).ifPresent(fields -> fields.remove(field));
+    trailingHashDeletes.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(field);
+  }
+
+  /**
+   * Queues deleting a field within a hash.
+   *
+   * @param key   The key of the hash; never {@code null}.
+   * @param field The field within the hash; never {@code null}.
+   */
+  public void hdel(String key, String field) {
+    Objects.requireNonNull(key, "key of the hash to delete from");
+    Objects.requireNonNull(field, "field within the hash to delete");
+    Optional.ofNullable(hashSets.get(key)).ifPresent(fields -> fields.remove(field));
+    Optional.ofNullable(binaryHashSets.get(key)).ifPresent(fields -> fields.remove(field));
+    hashDeletes.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(field);
+  }
+
+  /**
+   * Queues incrementing an integer field within a hash. Increments of the same field are summed into a single
+   * {@code HINCRBY}, which is sent after the sets.
+   *
+   * @param key    The key of the hash; never {@code null}.
+   * @param field  The field within the hash; never {@code null}.
+   * @param amount The amount to add.
+   */
+  public void hincrBy(String key, String field, long amount) {
+    Objects.requireNonNull(key, "key of the hash to increment within");
+    Objects.requireNonNull(field, "field within the hash to increment");
+    hashIncrements.computeIfAbsent(key, k -> new LinkedHashMap<>()).merge(field, amount, Long::sum);
+  }
+
+  /**
+   * Queues adding a member to a sorted set, or updating its score if it is already present.
+   *
+   * @param key    The key of the sorted set; never {@code null}.
+   * @param score  The score of the member.
+   * @param member The member; never {@code null}.
+   */
+  public void zadd(String key, double score, String member) {
+    Objects.requireNonNull(key, "key of the sorted set to add to");
+    Objects.requireNonNull(member, "member to add to the sorted set");
+    Optional.ofNullable(sortedSetRemoves.get(key)).ifPresent(members -> members.remove(member));
+    sortedSetAdds.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(member, score);
+  }
+
+  /**
+   * Queues removing a member from a sorted set.
+   *
+   * @param key    The key of the sorted set; never {@code null}.
+   * @param member The member; never {@code null}.
+   */
+  public void zrem(String key, String member) {
+    Objects.requireNonNull(key, "key of the sorted set to remove from");
+    Objects.requireNonNull(member, "member to remove from the sorted set");
+    Optional.ofNullable(sortedSetAdds.get(key)).ifPresent(members -> members.remove(member));
+    sortedSetRemoves.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(member);
+  }
+
+  /**
+   * Queues a {@code PEXPIRE} of the key, which is sent after all the other writes in the batch.
+   *
+   * @param key    The key to expire; never {@code null}.
+   * @param millis How many milliseconds until the key expires; must be positive.
+   */
+  public void pexpire(String key, long millis) {
+    Objects.requireNonNull(key, "key to expire");
+    if (millis <= 0) throw new IllegalArgumentException("Expiration must be positive; was " + millis);
+    persists.remove(key);
+    expirations.put(key, millis);
+  }
+
+  /**
+   * Queues a {@code PERSIST} of the key, which is sent after all the other writes in the batch.
+   *
+   * @param key The key which should no longer expire; never {@code null}.
+   */
+  public void persist(String key) {
+    Objects.requireNonNull(key, "key to persist");
+    expirations.remove(key);
+    persists.add(key);
+  }
+
+  /**
+   * Queues a {@code PUBLISH} of the message, which is sent after everything else in the batch, so that a subscriber
+   * which reacts to the message sees the writes. Publishing the same message to the same channel more than once
+   * only sends it once.
+   *
+   * @param channel The channel to publish to; never {@code null}.
+   * @param message The message; never {@code null}.
+   */
+  public void publish(String channel, String message) {
+    Objects.requireNonNull(channel, "channel to publish to");
+    Objects.requireNonNull(message, "message to publish");
+    publishes.computeIfAbsent(channel, k -> new LinkedHashSet<>()).add(message);
+  }
+
+  /**
+   * Whether any writes (other than expirations and sorted set updates) have been queued.
+   *
+   * @return {@code true} if there is nothing to write.
+   */
+  public boolean isEmpty() {
+    return sets.isEmpty() && deletes.isEmpty() &&
+               hashSets.values().stream().allMatch(Map::isEmpty) &&
+               binaryHashSets.values().stream().allMatch(Map::isEmpty) &&
+               leadingBinaryHashSets.values().stream().allMatch(Map::isEmpty) &&
+               hashDeletes.values().stream().allMatch(Set::isEmpty) &&
+               trailingHashDeletes.values().stream().allMatch(Set::isEmpty) &&
+               hashIncrements.values().stream().allMatch(Map::isEmpty) &&
+               publishes.values().stream().allMatch(Set::isEmpty);
+  }
+
+  /**
+   * Queues all of the writes onto the pipeline: {@code DEL}s first, then the sets queued by
+   * {@link #hsetFirst(String, String, byte[])}, then the other deletes and sets, then the deletes queued by
+   * {@link #hdelLast(String, String)}, then increments, expirations, persists, sorted set updates, and finally
+   * publishes.
+   *
+   * @param pipeline The pipeline to queue onto; never {@code null}.
+   */
+  public void queue(Pipeline pipeline) {
+    Objects.requireNonNull(pipeline, "pipeline to queue the batch onto");
+    if (!deletes.isEmpty()) pipeline.del(deletes.toArray(new String[deletes.size()]));
+    leadingBinaryHashSets.forEach((key, fields) -> queueBinaryHashSets(pipeline, key, fields));
+    queueHashDeletes(pipeline, hashDeletes);
+    sets.forEach(pipeline::set);
+    hashSets.forEach((key, fields) -> {
+      if (!fields.isEmpty()) pipeline.hmset(key, fields);
+    });
+    binaryHashSets.forEach((key, fields) -> queueBinaryHashSets(pipeline, key, fields));
+    queueHashDeletes(pipeline, trailingHashDeletes);
+    hashIncrements.forEach((key, fields) -> fields.forEach((field, amount) -> pipeline.hincrBy(key, field, amount)));
+    expirations.forEach(pipeline::pexpire);
+    persists.forEach(pipeline::persist);
+    sortedSetRemoves.forEach((key, members) -> {
+      if (!members.isEmpty()) pipeline.zrem(key, members.toArray(new String[members.size()]));
+    });
+    sortedSetAdds.forEach((key, members) -> {
+      if (!members.isEmpty()) pipeline.zadd(key, members);
+    });
+    publishes.forEach((channel, messages) -> messages.forEach(message -> pipeline.publish(channel, message)));
+  }
+
+  private static void queueHashDeletes(Pipeline pipeline, Map<String, Set<String>> hashDeletes) {
+    hashDeletes.forEach((key, fields) -> {
+      if (!fields.isEmpty()) pipeline.hdel(key, fields.toArray(new String[fields.size()]));
+    });
+  }
+
+  private static void queueBinaryHashSets(Pipeline pipeline, String key, Map<String, byte[]> fields) {
+    byte[] binaryKey = key.getBytes(StandardCharsets.UTF_8);
+    Map<byte[], byte[]> binaryFields = new LinkedHashMap<>();
+    int size = 0;
+    for (Map.Entry<String, byte[]> field : fields.entrySet()) {
+      if (!binaryFields.isEmpty() && size + field.getValue().length > MAX_BINARY_HMSET_BYTES) {
+        pipeline.hmset(binaryKey, binaryFields);
+        binaryFields = new LinkedHashMap<>();
+        size = 0;
+      }
+      binaryFields.put(field.getKey().getBytes(StandardCharsets.UTF_8), field.getValue());
+      size += field.getValue().length;
+    }
+    if (!binaryFields.isEmpty()) pipeline.hmset(binaryKey, binaryFields);
+  }
+
+}
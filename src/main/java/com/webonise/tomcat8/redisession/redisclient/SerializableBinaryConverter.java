@@ -0,0 +1,113 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import com.webonise.tomcat8.redisession.serializer.JdkSessionSerializer;
+import com.webonise.tomcat8.redisession.serializer.SessionSerializer;
+import org.apache.commons.lang3.SerializationException;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Defines how to convert a serializable value to and from the raw bytes produced by a {@link SessionSerializer},
+ * without the Base64 encoding done by {@link SerializableConverter}.
+ * <p>
+ * Raw values are written with {@link #TAG} in front of the serialized bytes. Values written by
+ * {@link SerializableConverter}, or while writing Base64, are not tagged, so untagged values are decoded as Base64
+ * before they are deserialized. Nothing is assumed about what the serializer produces, so its output is never
+ * mistaken for Base64.
+ */
+public class SerializableBinaryConverter<U extends Serializable> implements RedisBinaryConverter<U> {
+
+  /**
+   * The first byte of every raw value. It is not a Base64 character, and it is not {@link ChunkReference#MAGIC}.
+   */
+  public static final byte TAG = (byte) 0xBA;
+
+  private final SessionSerializer serializer;
+  private final boolean base64;
+
+  /**
+   * Constructs a converter using standard Java serialization, which writes raw bytes.
+   */
+  public SerializableBinaryConverter() {
+    this(new JdkSessionSerializer(), false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param serializer The serializer to produce the bytes; never {@code null}.
+   * @param base64     Whether to write values Base64 encoded, which can be read by {@link SerializableConverter}.
+   */
+  public SerializableBinaryConverter(SessionSerializer serializer, boolean base64) {
+    Objects.requireNonNull(serializer, "serializer for the values");
+    this.serializer = serializer;
+    this.base64 = base64;
+  }
+
+  /**
+   * Defines how to convert a value to bytes: the serialized bytes after {@link #TAG}, or Base64 encoded.
+   *
+   * @param value The value to convert; never {@code null}.
+   * @return The converted value; never {@code null}.
+   */
+  @Override
+  public byte[] convertToBytes(U value) {
+    byte[] bytes = serializer.serialize(value);
+    if (base64) return Base64.getEncoder().encode(bytes);
+    byte[] tagged = new byte[bytes.length + 1];
+    tagged[0] = TAG;
+    System.arraycopy(bytes, 0, tagged, 1, bytes.length);
+    return tagged;
+  }
+
+  /**
+   * Defines how to convert bytes into a value, decoding them first if they are not tagged.
+   *
+   * @param value The bytes to convert; never {@code null}.
+   * @return The converted value; never {@code null}.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public U convertFromBytes(byte[] value) {
+    return (U) serializer.deserialize(untag(value));
+  }
+
+  /**
+   * Defines how to convert bytes read from a stream into a value, deserializing as the bytes are read. Streamed values
+   * are never Base64 encoded, so the tag is skipped if it is there.
+   *
+   * @param in The stream of bytes to convert; never {@code null}; the caller closes it.
+   * @return The converted value; never {@code null}.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public U convertFromStream(InputStream in) {
+    Objects.requireNonNull(in, "stream to convert");
+    PushbackInputStream stream = new PushbackInputStream(in, 1);
+    try {
+      int first = stream.read();
+      if (first >= 0 && (byte) first != TAG) stream.unread(first);
+    } catch (IOException e) {
+      throw new SerializationException("Could not read the value to convert", e);
+    }
+    return (U) serializer.deserialize(stream);
+  }
+
+  /**
+   * Provides the serialized bytes of a stored value: the bytes after {@link #TAG}, or else the stored bytes decoded
+   * as Base64. Untagged bytes which are not valid Base64 are taken as they are.
+   *
+   * @param value The bytes as stored; never {@code null}.
+   * @return The serialized bytes; never {@code null}.
+   */
+  protected static byte[] untag(byte[] value) {
+    Objects.requireNonNull(value, "bytes to untag");
+    if (value.length > 0 && value[0] == TAG) return Arrays.copyOfRange(value, 1, value.length);
+    try {
+      return Base64.getDecoder().decode(value);
+    } catch (IllegalArgumentException e) {
+      return value;
+    }
+  }
+}
@@ -1,15 +1,36 @@
 package com.webonise.tomcat8.redisession.redisclient;
 
-import org.apache.commons.lang3.SerializationUtils;
+import com.webonise.tomcat8.redisession.serializer.JdkSessionSerializer;
+import com.webonise.tomcat8.redisession.serializer.SessionSerializer;
 
 import java.io.Serializable;
 import java.util.*;
 
 /**
- * Defines how to convert a serializable value to and from Strings.
+ * Defines how to convert a serializable value to and from Strings, using a {@link SessionSerializer} to produce the
+ * bytes, which are then Base64 encoded.
  */
 public class SerializableConverter<U extends Serializable> implements RedisConverter<U> {
 
+  private final SessionSerializer serializer;
+
+  /**
+   * Constructs a converter using standard Java serialization.
+   */
+  public SerializableConverter() {
+    this(new JdkSessionSerializer());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param serializer The serializer to produce the bytes; never {@code null}.
+   */
+  public SerializableConverter(SessionSerializer serializer) {
+    Objects.requireNonNull(serializer, "serializer for the values");
+    this.serializer = serializer;
+  }
+
   /**
    * Defines how to convert a value to a string.
    *
@@ -18,7 +39,7 @@ public class SerializableConverter<U extends Serializable> implements RedisConve
    */
   @Override
   public String convertToString(U value) {
-    byte[] bytes = SerializationUtils.serialize(value);
+    byte[] bytes = serializer.serialize(value);
     return Base64.getEncoder().encodeToString(bytes);
   }
 
@@ -29,8 +50,9 @@ public class SerializableConverter<U extends Serializable> implements RedisConve
    * @return The converted string; never {@code null}.
    */
   @Override
+  @SuppressWarnings("unchecked")
   public U convertFromString(String value) {
     byte[] bytes = Base64.getDecoder().decode(value);
-    return SerializationUtils.deserialize(bytes);
+    return (U) serializer.deserialize(bytes);
   }
 }
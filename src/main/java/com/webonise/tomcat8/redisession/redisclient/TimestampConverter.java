@@ -1,7 +1,5 @@
 package com.webonise.tomcat8.redisession.redisclient;
 
-import org.apache.commons.lang3.time.DateFormatUtils;
-import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 
@@ -11,22 +9,35 @@ import java.util.function.*;
 
 /**
  * Defines how to convert a timestamp (milliseconds since the beginning of the epoch) value to and from Strings.
+ * Values are written in the configured {@link TimestampFormat}, and read in any of them.
  */
 public class TimestampConverter implements RedisConverter<Long> {
 
   private static final Log LOG = LogFactory.getLog(TimestampConverter.class);
 
-  protected static final FastDateFormat FORMAT = DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT;
   private final Supplier<? extends Date> defaultDateFactory;
+  private final TimestampFormat format;
 
   /**
-   * Constructor.
+   * Constructs a converter which writes {@link TimestampFormat#ISO_8601}.
    *
    * @param defaultDateFactory Provides the date to default to if there is a parse error; may not be {@code null}.
    */
   public TimestampConverter(Supplier<? extends Date> defaultDateFactory) {
+    this(defaultDateFactory, TimestampFormat.ISO_8601);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param defaultDateFactory Provides the date to default to if there is a parse error; may not be {@code null}.
+   * @param format             The format to write; may not be {@code null}.
+   */
+  public TimestampConverter(Supplier<? extends Date> defaultDateFactory, TimestampFormat format) {
     Objects.requireNonNull(defaultDateFactory, "supplier for the date to default to");
     this.defaultDateFactory = defaultDateFactory;
+    Objects.requireNonNull(format, "format to write timestamps in");
+    this.format = format;
   }
 
   /**
@@ -37,7 +48,7 @@ public class TimestampConverter implements RedisConverter<Long> {
    */
   @Override
   public String convertToString(Long value) {
-    return FORMAT.format(new Date(value));
+    return format.format(value);
   }
 
   /**
@@ -49,11 +60,10 @@ public class TimestampConverter implements RedisConverter<Long> {
   @Override
   public Long convertFromString(String value) {
     try {
-      return FORMAT.parse(value).getTime();
+      return TimestampFormat.parse(value);
     } catch (ParseException e) {
       Date defaultValue = defaultDateFactory.get();
-      String defaultValueString = FORMAT.format(defaultValue);
-      LOG.warn("Could not parse date from " + value + " using pattern " + FORMAT.getPattern() + " -- defaulting to " + defaultValueString, e);
+      LOG.warn("Could not parse date from " + value + " -- defaulting to " + format.format(defaultValue.getTime()), e);
       return defaultValue.getTime();
     }
   }
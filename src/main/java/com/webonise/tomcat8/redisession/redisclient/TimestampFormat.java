@@ -0,0 +1,94 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.apache.commons.lang3.time.DateFormatUtils;
+
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * How timestamps are written into the session metadata. Timestamps in any of these formats can always be read by
+ * {@link #parse(String)}, so the format can be changed without losing existing sessions.
+ */
+public enum TimestampFormat {
+
+  /**
+   * ISO-8601 date and time with the time zone, such as {@code 2015-06-01T12:34:56-05:00}. This is the default, and
+   * it is the only format understood by earlier versions.
+   */
+  ISO_8601 {
+    @Override
+    public String format(long millis) {
+      return DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.format(millis);
+    }
+  },
+
+  /**
+   * Decimal milliseconds since the beginning of the epoch, such as {@code 1433180096000}. This is the cheapest to
+   * write and to read, and it keeps millisecond precision.
+   */
+  EPOCH_MILLIS {
+    @Override
+    public String format(long millis) {
+      return Long.toString(millis);
+    }
+  };
+
+  /**
+   * The longest string which can hold a timestamp in epoch milliseconds.
+   */
+  private static final int MAX_EPOCH_MILLIS_LENGTH = Long.toString(Long.MIN_VALUE).length();
+
+  /**
+   * Formats the timestamp.
+   *
+   * @param millis Milliseconds since the beginning of the epoch.
+   * @return The formatted timestamp; never {@code null}.
+   */
+  public abstract String format(long millis);
+
+  /**
+   * Parses a timestamp written in any of the formats. Timestamps which hold only the date, such as
+   * {@code 2015-06-01-05:00}, are also accepted.
+   *
+   * @param value The timestamp to parse; never {@code null}.
+   * @return Milliseconds since the beginning of the epoch.
+   * @throws ParseException If the value is not a timestamp in any known format.
+   */
+  public static long parse(String value) throws ParseException {
+    Objects.requireNonNull(value, "timestamp to parse");
+    if (isEpochMillis(value)) {
+      try {
+        return Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        throw new ParseException("Timestamp is out of range: " + value, 0);
+      }
+    }
+    try {
+      return DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.parse(value).getTime();
+    } catch (ParseException e) {
+      return DateFormatUtils.ISO_DATE_TIME_ZONE_FORMAT.parse(value).getTime();
+    }
+  }
+
+  private static boolean isEpochMillis(String value) {
+    int length = value.length();
+    if (length == 0 || length > MAX_EPOCH_MILLIS_LENGTH) return false;
+    for (int i = value.charAt(0) == '-' && length > 1 ? 1 : 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') return false;
+    }
+    return true;
+  }
+
+  /**
+   * Parses the format from its name, ignoring case.
+   *
+   * @param name The name of the format; never {@code null}.
+   * @return The format; never {@code null}.
+   * @throws IllegalArgumentException If there is no format by that name.
+   */
+  public static TimestampFormat fromString(String name) {
+    if (name == null) throw new IllegalArgumentException("Timestamp format name may not be null");
+    return valueOf(name.trim().toUpperCase());
+  }
+}
@@ -0,0 +1,310 @@
+package com.webonise.tomcat8.redisession.serializer;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Serializes common JDK types into a compact tagged binary format without using {@link ObjectOutputStream}: strings,
+ * boxed primitives, {@link Date}, primitive and object arrays, and the common {@link List}, {@link Set} and
+ * {@link Map} implementations. Anything else, including subclasses of those types, is written using standard Java
+ * serialization and embedded in the compact format, so every {@link Serializable} value can be stored.
+ * <p>
+ * Unlike Java serialization, shared references within a value are written once per reference, and so they are not
+ * shared after deserialization. Values which nest deeper than {@value #MAX_DEPTH} levels (which includes any value
+ * with a cycle) are written entirely using Java serialization instead.
+ * <p>
+ * Serialized values start with {@link #MAGIC}, which can never start a Java serialization stream, so values written
+ * by {@link JdkSessionSerializer} can still be read.
+ */
+public class CompactSessionSerializer implements SessionSerializer {
+
+  /**
+   * The first byte of every value in the compact format.
+   */
+  public static final byte MAGIC = (byte) 0xC5;
+
+  /**
+   * The deepest nesting of collections which is written in the compact format.
+   */
+  public static final int MAX_DEPTH = 64;
+
+  private static final byte TAG_NULL = 0;
+  private static final byte TAG_STRING = 1;
+  private static final byte TAG_BOOLEAN = 2;
+  private static final byte TAG_BYTE = 3;
+  private static final byte TAG_SHORT = 4;
+  private static final byte TAG_CHARACTER = 5;
+  private static final byte TAG_INTEGER = 6;
+  private static final byte TAG_LONG = 7;
+  private static final byte TAG_FLOAT = 8;
+  private static final byte TAG_DOUBLE = 9;
+  private static final byte TAG_DATE = 10;
+  private static final byte TAG_BYTE_ARRAY = 11;
+  private static final byte TAG_INT_ARRAY = 12;
+  private static final byte TAG_LONG_ARRAY = 13;
+  private static final byte TAG_STRING_ARRAY = 14;
+  private static final byte TAG_OBJECT_ARRAY = 15;
+  private static final byte TAG_ARRAY_LIST = 16;
+  private static final byte TAG_LINKED_LIST = 17;
+  private static final byte TAG_HASH_SET = 18;
+  private static final byte TAG_LINKED_HASH_SET = 19;
+  private static final byte TAG_HASH_MAP = 20;
+  private static final byte TAG_LINKED_HASH_MAP = 21;
+  private static final byte TAG_JAVA_SERIALIZED = 127;
+
+  /**
+   * The most elements to allocate room for up front, so that a corrupt size cannot exhaust memory.
+   */
+  private static final int MAX_PRESIZE = 1024;
+
+  /**
+   * Thrown internally when a value nests too deeply to be written in the compact format.
+   */
+  private static class TooDeepException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private TooDeepException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Whether the bytes are in the compact format.
+   *
+   * @param bytes The serialized bytes; never {@code null}.
+   * @return {@code true} if the bytes start with {@link #MAGIC}.
+   */
+  public static boolean isCompactFormat(byte[] bytes) {
+    Objects.requireNonNull(bytes, "bytes to check");
+    return bytes.length > 0 && bytes[0] == MAGIC;
+  }
+
+  @Override
+  public byte[] serialize(Serializable value) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(MAGIC);
+      writeValue(out, value, 0);
+    } catch (TooDeepException e) {
+      return SerializationUtils.serialize(value);
+    } catch (IOException e) {
+      throw new SerializationException("Could not serialize a value in the compact format", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public Serializable deserialize(byte[] bytes) {
+    Objects.requireNonNull(bytes, "bytes to deserialize");
+    if (!isCompactFormat(bytes)) return SerializationUtils.deserialize(bytes);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+      return (Serializable) readValue(in);
+    } catch (IOException | ClassCastException e) {
+      throw new SerializationException("Could not deserialize a value in the compact format", e);
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value, int depth) throws IOException {
+    if (depth > MAX_DEPTH) throw new TooDeepException();
+    if (value == null) {
+      out.writeByte(TAG_NULL);
+      return;
+    }
+
+    Class<?> type = value.getClass();
+    if (type == String.class) {
+      out.writeByte(TAG_STRING);
+      writeString(out, (String) value);
+    } else if (type == Boolean.class) {
+      out.writeByte(TAG_BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (type == Byte.class) {
+      out.writeByte(TAG_BYTE);
+      out.writeByte((Byte) value);
+    } else if (type == Short.class) {
+      out.writeByte(TAG_SHORT);
+      out.writeShort((Short) value);
+    } else if (type == Character.class) {
+      out.writeByte(TAG_CHARACTER);
+      out.writeChar((Character) value);
+    } else if (type == Integer.class) {
+      out.writeByte(TAG_INTEGER);
+      out.writeInt((Integer) value);
+    } else if (type == Long.class) {
+      out.writeByte(TAG_LONG);
+      out.writeLong((Long) value);
+    } else if (type == Float.class) {
+      out.writeByte(TAG_FLOAT);
+      out.writeFloat((Float) value);
+    } else if (type == Double.class) {
+      out.writeByte(TAG_DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (type == Date.class) {
+      out.writeByte(TAG_DATE);
+      out.writeLong(((Date) value).getTime());
+    } else if (type == byte[].class) {
+      byte[] array = (byte[]) value;
+      out.writeByte(TAG_BYTE_ARRAY);
+      out.writeInt(array.length);
+      out.write(array);
+    } else if (type == int[].class) {
+      int[] array = (int[]) value;
+      out.writeByte(TAG_INT_ARRAY);
+      out.writeInt(array.length);
+      for (int element : array) out.writeInt(element);
+    } else if (type == long[].class) {
+      long[] array = (long[]) value;
+      out.writeByte(TAG_LONG_ARRAY);
+      out.writeInt(array.length);
+      for (long element : array) out.writeLong(element);
+    } else if (type == String[].class || type == Object[].class) {
+      Object[] array = (Object[]) value;
+      out.writeByte(type == String[].class ? TAG_STRING_ARRAY : TAG_OBJECT_ARRAY);
+      out.writeInt(array.length);
+      for (Object element : array) writeValue(out, element, depth + 1);
+    } else if (type == ArrayList.class || type == LinkedList.class) {
+      out.writeByte(type == ArrayList.class ? TAG_ARRAY_LIST : TAG_LINKED_LIST);
+      writeElements(out, (Collection<?>) value, depth);
+    } else if (type == HashSet.class || type == LinkedHashSet.class) {
+      out.writeByte(type == HashSet.class ? TAG_HASH_SET : TAG_LINKED_HASH_SET);
+      writeElements(out, (Collection<?>) value, depth);
+    } else if (type == HashMap.class || type == LinkedHashMap.class) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      out.writeByte(type == HashMap.class ? TAG_HASH_MAP : TAG_LINKED_HASH_MAP);
+      out.writeInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeValue(out, entry.getKey(), depth + 1);
+        writeValue(out, entry.getValue(), depth + 1);
+      }
+    } else if (value instanceof Serializable) {
+      byte[] serialized = SerializationUtils.serialize((Serializable) value);
+      out.writeByte(TAG_JAVA_SERIALIZED);
+      out.writeInt(serialized.length);
+      out.write(serialized);
+    } else {
+      throw new NotSerializableException(type.getName());
+    }
+  }
+
+  private static void writeElements(DataOutputStream out, Collection<?> elements, int depth) throws IOException {
+    out.writeInt(elements.size());
+    for (Object element : elements) writeValue(out, element, depth + 1);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(utf8.length);
+    out.write(utf8);
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case TAG_NULL:
+        return null;
+      case TAG_STRING:
+        return readString(in);
+      case TAG_BOOLEAN:
+        return in.readBoolean();
+      case TAG_BYTE:
+        return in.readByte();
+      case TAG_SHORT:
+        return in.readShort();
+      case TAG_CHARACTER:
+        return in.readChar();
+      case TAG_INTEGER:
+        return in.readInt();
+      case TAG_LONG:
+        return in.readLong();
+      case TAG_FLOAT:
+        return in.readFloat();
+      case TAG_DOUBLE:
+        return in.readDouble();
+      case TAG_DATE:
+        return new Date(in.readLong());
+      case TAG_BYTE_ARRAY: {
+        byte[] array = new byte[readSize(in)];
+        in.readFully(array);
+        return array;
+      }
+      case TAG_INT_ARRAY: {
+        int[] array = new int[readSize(in)];
+        for (int i = 0; i < array.length; i++) array[i] = in.readInt();
+        return array;
+      }
+      case TAG_LONG_ARRAY: {
+        long[] array = new long[readSize(in)];
+        for (int i = 0; i < array.length; i++) array[i] = in.readLong();
+        return array;
+      }
+      case TAG_STRING_ARRAY: {
+        String[] array = new String[readSize(in)];
+        for (int i = 0; i < array.length; i++) array[i] = (String) readValue(in);
+        return array;
+      }
+      case TAG_OBJECT_ARRAY: {
+        Object[] array = new Object[readSize(in)];
+        for (int i = 0; i < array.length; i++) array[i] = readValue(in);
+        return array;
+      }
+      case TAG_ARRAY_LIST: {
+        int size = readSize(in);
+        return readElements(in, size, new ArrayList<>(Math.min(size, MAX_PRESIZE)));
+      }
+      case TAG_LINKED_LIST:
+        return readElements(in, readSize(in), new LinkedList<>());
+      case TAG_HASH_SET: {
+        int size = readSize(in);
+        return readElements(in, size, new HashSet<>(Math.min(size, MAX_PRESIZE) * 2));
+      }
+      case TAG_LINKED_HASH_SET: {
+        int size = readSize(in);
+        return readElements(in, size, new LinkedHashSet<>(Math.min(size, MAX_PRESIZE) * 2));
+      }
+      case TAG_HASH_MAP: {
+        int size = readSize(in);
+        return readEntries(in, size, new HashMap<>(Math.min(size, MAX_PRESIZE) * 2));
+      }
+      case TAG_LINKED_HASH_MAP: {
+        int size = readSize(in);
+        return readEntries(in, size, new LinkedHashMap<>(Math.min(size, MAX_PRESIZE) * 2));
+      }
+      case TAG_JAVA_SERIALIZED: {
+        byte[] serialized = new byte[readSize(in)];
+        in.readFully(serialized);
+        return SerializationUtils.deserialize(serialized);
+      }
+      default:
+        throw new StreamCorruptedException("Unknown tag in compact format: " + tag);
+    }
+  }
+
+  private static int readSize(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size < 0) throw new StreamCorruptedException("Negative size in compact format: " + size);
+    if (size > in.available()) throw new EOFException("Size exceeds the remaining data: " + size);
+    return size;
+  }
+
+  private static <C extends Collection<Object>> C readElements(DataInputStream in, int size, C collection)
+      throws IOException {
+    for (int i = 0; i < size; i++) collection.add(readValue(in));
+    return collection;
+  }
+
+  private static <M extends Map<Object, Object>> M readEntries(DataInputStream in, int size, M map) throws IOException {
+    for (int i = 0; i < size; i++) map.put(readValue(in), readValue(in));
+    return map;
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] utf8 = new byte[readSize(in)];
+    in.readFully(utf8);
+    return new String(utf8, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.webonise.tomcat8.redisession.serializer;
+
+import org.apache.commons.lang3.SerializationException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Wraps another {@link SessionSerializer}, compressing its output when it is at least a threshold size and the
+ * compression actually makes it smaller. Compressed values start with a header: {@link #MAGIC}, the id of the
+ * {@link CompressionCodec}, and the uncompressed length as a 4-byte big-endian integer. Values without the header
+ * are passed to the wrapped serializer as they are, so values written without compression can still be read, and
+ * compressed values can be read even after compression has been turned off.
+ * <p>
+ * Values compressed by {@link DeflateCompressionCodec} can always be read. Values compressed by another codec can
+ * be read as long as that codec is the one configured.
+ */
+public class CompressingSessionSerializer implements SessionSerializer {
+
+  /**
+   * The first byte of every compressed value. It can never start a Java serialization stream, a value in the
+   * {@link CompactSessionSerializer} format, or a Base64 encoded value.
+   */
+  public static final byte MAGIC = (byte) 0xDC;
+
+  private static final int HEADER_LENGTH = 6;
+  private static final CompressionCodec DEFLATE = new DeflateCompressionCodec();
+
+  private final SessionSerializer delegate;
+  private final CompressionCodec codec;
+  private final int threshold;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate  The serializer which produces the bytes to compress; never {@code null}.
+   * @param codec     The codec to compress with; never {@code null}.
+   * @param threshold The smallest serialized size, in bytes, to compress; 0 to never compress.
+   */
+  public CompressingSessionSerializer(SessionSerializer delegate, CompressionCodec codec, int threshold) {
+    Objects.requireNonNull(delegate, "serializer to compress the output of");
+    this.delegate = delegate;
+    Objects.requireNonNull(codec, "codec to compress with");
+    this.codec = codec;
+    if (threshold < 0) throw new IllegalArgumentException("Compression threshold must be nonnegative: " + threshold);
+    this.threshold = threshold;
+  }
+
+  /**
+   * Whether the bytes are a compressed value.
+   *
+   * @param bytes The serialized bytes; never {@code null}.
+   * @return {@code true} if the bytes start with {@link #MAGIC}.
+   */
+  public static boolean isCompressed(byte[] bytes) {
+    Objects.requireNonNull(bytes, "bytes to check");
+    return bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC;
+  }
+
+  @Override
+  public byte[] serialize(Serializable value) {
+    byte[] bytes = delegate.serialize(value);
+    if (threshold == 0 || bytes.length < threshold) return bytes;
+    byte[] compressed = codec.compress(bytes);
+    if (compressed.length + HEADER_LENGTH >= bytes.length) return bytes;
+    return ByteBuffer.allocate(HEADER_LENGTH + compressed.length)
+               .put(MAGIC)
+               .put(codec.getId())
+               .putInt(bytes.length)
+               .put(compressed)
+               .array();
+  }
+
+  @Override
+  public Serializable deserialize(byte[] bytes) {
+    Objects.requireNonNull(bytes, "bytes to deserialize");
+    if (!isCompressed(bytes)) return delegate.deserialize(bytes);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    buffer.get();
+    byte codecId = buffer.get();
+    int uncompressedLength = buffer.getInt();
+    byte[] compressed = new byte[buffer.remaining()];
+    buffer.get(compressed);
+    return delegate.deserialize(codecFor(codecId).decompress(compressed, uncompressedLength));
+  }
+
+  @Override
+  public Serializable deserialize(InputStream in) {
+    Objects.requireNonNull(in, "stream to deserialize");
+    PushbackInputStream stream = new PushbackInputStream(in, HEADER_LENGTH);
+    byte[] header = new byte[HEADER_LENGTH];
+    try {
+      int length = 0;
+      while (length < HEADER_LENGTH) {
+        int read = stream.read(header, length, HEADER_LENGTH - length);
+        if (read < 0) break;
+        length += read;
+      }
+      if (length < HEADER_LENGTH || header[0] != MAGIC) {
+        stream.unread(header, 0, length);
+        return delegate.deserialize(stream);
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(header, 1, HEADER_LENGTH - 1);
+      byte codecId = buffer.get();
+      int uncompressedLength = buffer.getInt();
+      try (InputStream decompressed = codecFor(codecId).decompress(stream, uncompressedLength)) {
+        return delegate.deserialize(decompressed);
+      }
+    } catch (IOException e) {
+      throw new SerializationException("Could not read the value to deserialize", e);
+    }
+  }
+
+  private CompressionCodec codecFor(byte codecId) {
+    if (codecId == codec.getId()) return codec;
+    if (codecId == DEFLATE.getId()) return DEFLATE;
+    throw new SerializationException("No compression codec is configured with id " + codecId);
+  }
+
+}
@@ -0,0 +1,64 @@
+package com.webonise.tomcat8.redisession.serializer;
+
+import org.apache.commons.lang3.SerializationException;
+
+import java.io.*;
+
+/**
+ * Compresses serialized values for {@link CompressingSessionSerializer}.
+ * <p>
+ * Implementations must be thread safe and have a public no-argument constructor, so that they can be configured by
+ * class name on the manager. Each implementation has an id, which is stored with every value it compresses so that
+ * the value can be decompressed whatever codec is configured later. Id {@value DeflateCompressionCodec#ID} belongs
+ * to {@link DeflateCompressionCodec}; custom codecs should use ids of 64 or more. Failures are reported by throwing
+ * {@link org.apache.commons.lang3.SerializationException}.
+ */
+public interface CompressionCodec {
+
+  /**
+   * Identifies the codec within stored values.
+   *
+   * @return The id; never 0.
+   */
+  byte getId();
+
+  /**
+   * Compresses the data.
+   *
+   * @param data The data to compress; never {@code null}.
+   * @return The compressed data; never {@code null}.
+   */
+  byte[] compress(byte[] data);
+
+  /**
+   * Decompresses data produced by {@link #compress(byte[])}.
+   *
+   * @param data               The compressed data; never {@code null}.
+   * @param uncompressedLength The length of the original data.
+   * @return The original data; never {@code null}.
+   */
+  byte[] decompress(byte[] data, int uncompressedLength);
+
+  /**
+   * Decompresses data produced by {@link #compress(byte[])} as it is read from a stream. By default, the whole stream
+   * is read into memory and passed to {@link #decompress(byte[], int)}; codecs which can decompress incrementally
+   * should override this.
+   *
+   * @param data               The compressed data, which runs to the end of the stream; never {@code null}.
+   * @param uncompressedLength The length of the original data.
+   * @return A stream of the original data, which the caller closes; never {@code null}.
+   */
+  default InputStream decompress(InputStream data, int uncompressedLength) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    try {
+      for (int length = data.read(buffer); length >= 0; length = data.read(buffer)) {
+        bytes.write(buffer, 0, length);
+      }
+    } catch (IOException e) {
+      throw new SerializationException("Could not read the data to decompress", e);
+    }
+    return new ByteArrayInputStream(decompress(bytes.toByteArray(), uncompressedLength));
+  }
+
+}
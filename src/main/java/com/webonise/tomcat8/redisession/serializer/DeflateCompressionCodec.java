@@ -0,0 +1,92 @@
+package com.webonise.tomcat8.redisession.serializer;
+
+import org.apache.commons.lang3.SerializationException;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Compresses using raw Deflate at its fastest level, which is built into the JDK. This is the default
+ * {@link CompressionCodec}.
+ */
+public class DeflateCompressionCodec implements CompressionCodec {
+
+  /**
+   * The id of this codec within stored values.
+   */
+  public static final byte ID = 1;
+
+  @Override
+  public byte getId() {
+    return ID;
+  }
+
+  @Override
+  public byte[] compress(byte[] data) {
+    Objects.requireNonNull(data, "data to compress");
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        int length = deflater.deflate(buffer);
+        out.write(buffer, 0, length);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Override
+  public byte[] decompress(byte[] data, int uncompressedLength) {
+    Objects.requireNonNull(data, "data to decompress");
+    if (uncompressedLength < 0) {
+      throw new SerializationException("Negative uncompressed length: " + uncompressedLength);
+    }
+    Inflater inflater = new Inflater(true);
+    try {
+      // Raw inflation needs an extra byte of input to be sure that it has reached the end
+      inflater.setInput(Arrays.copyOf(data, data.length + 1));
+      byte[] result = new byte[uncompressedLength];
+      int offset = 0;
+      while (offset < uncompressedLength && !inflater.finished()) {
+        int length = inflater.inflate(result, offset, uncompressedLength - offset);
+        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+        offset += length;
+      }
+      if (offset != uncompressedLength || !inflater.finished()) {
+        throw new SerializationException("Compressed data did not hold the expected " + uncompressedLength + " bytes");
+      }
+      return result;
+    } catch (DataFormatException e) {
+      throw new SerializationException("Could not decompress Deflate data", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  @Override
+  public InputStream decompress(InputStream data, int uncompressedLength) {
+    Objects.requireNonNull(data, "data to decompress");
+    if (uncompressedLength < 0) {
+      throw new SerializationException("Negative uncompressed length: " + uncompressedLength);
+    }
+    // Raw inflation needs an extra byte of input to be sure that it has reached the end
+    InputStream padded = new SequenceInputStream(data, new ByteArrayInputStream(new byte[1]));
+    return new InflaterInputStream(padded, new Inflater(true)) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          inf.end();
+        }
+      }
+    };
+  }
+
+}
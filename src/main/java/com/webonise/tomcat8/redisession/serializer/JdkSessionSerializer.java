@@ -0,0 +1,43 @@
+package com.webonise.tomcat8.redisession.serializer;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Serializes values using standard Java serialization. This is the default {@link SessionSerializer}.
+ * <p>
+ * Values which were written by the {@link CompactSessionSerializer} can also be read, so that switching back from
+ * the compact format does not lose existing sessions.
+ */
+public class JdkSessionSerializer implements SessionSerializer {
+
+  @Override
+  public byte[] serialize(Serializable value) {
+    return SerializationUtils.serialize(value);
+  }
+
+  @Override
+  public Serializable deserialize(byte[] bytes) {
+    Objects.requireNonNull(bytes, "bytes to deserialize");
+    if (CompactSessionSerializer.isCompactFormat(bytes)) return new CompactSessionSerializer().deserialize(bytes);
+    return SerializationUtils.deserialize(bytes);
+  }
+
+  @Override
+  public Serializable deserialize(InputStream in) {
+    Objects.requireNonNull(in, "stream to deserialize");
+    PushbackInputStream stream = new PushbackInputStream(in, 1);
+    try {
+      int first = stream.read();
+      if (first >= 0) stream.unread(first);
+      if ((byte) first == CompactSessionSerializer.MAGIC) return new CompactSessionSerializer().deserialize(stream);
+    } catch (IOException e) {
+      throw new SerializationException("Could not read the value to deserialize", e);
+    }
+    return SerializationUtils.deserialize(stream);
+  }
+
+}
@@ -0,0 +1,53 @@
+package com.webonise.tomcat8.redisession.serializer;
+
+import org.apache.commons.lang3.SerializationException;
+
+import java.io.*;
+
+/**
+ * Defines how session attribute values and principals are turned into bytes to be stored in Redis, and back.
+ * <p>
+ * Implementations must be thread safe and have a public no-argument constructor, so that they can be configured by
+ * class name on the manager. Failures are reported by throwing {@link org.apache.commons.lang3.SerializationException}.
+ */
+public interface SessionSerializer {
+
+  /**
+   * Serializes the value.
+   *
+   * @param value The value to serialize; may be {@code null}.
+   * @return The serialized bytes; never {@code null}.
+   */
+  byte[] serialize(Serializable value);
+
+  /**
+   * Deserializes a value.
+   *
+   * @param bytes The bytes, as produced by {@link #serialize(Serializable)}; never {@code null}.
+   * @return The deserialized value; may be {@code null}.
+   */
+  Serializable deserialize(byte[] bytes);
+
+  /**
+   * Deserializes a value from a stream, such as a value which is stored in chunks. By default, the whole stream is
+   * read into memory and passed to {@link #deserialize(byte[])}; implementations which can consume the stream as it
+   * is read should override this, so that a large value is never held in memory in serialized form.
+   *
+   * @param in The stream of bytes, as produced by {@link #serialize(Serializable)}; never {@code null}. It may be
+   *           closed once the value has been read.
+   * @return The deserialized value; may be {@code null}.
+   */
+  default Serializable deserialize(InputStream in) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    try {
+      for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+        bytes.write(buffer, 0, length);
+      }
+    } catch (IOException e) {
+      throw new SerializationException("Could not read the value to deserialize", e);
+    }
+    return deserialize(bytes.toByteArray());
+  }
+
+}
@@ -0,0 +1,57 @@
+package com.webonise.tomcat8.redisession;
+
+import com.webonise.tomcat8.redisession.redisclient.Redis;
+import org.apache.catalina.core.StandardContext;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+
+/**
+ * Base for tests which need a Redis server. The server is given by the {@code redis.host} and {@code redis.port}
+ * system properties, defaulting to {@code localhost:6379}, and database {@link #TEST_DATABASE} is flushed before each
+ * test. Tests are skipped if the server cannot be reached.
+ */
+public abstract class AbstractRedisTest {
+
+  protected static final int TEST_DATABASE = 15;
+
+  protected RedisSessionManager manager;
+
+  @Before
+  public void connectToRedis() {
+    manager = createManager();
+    try {
+      manager.getRedis().withRedis(jedis -> {
+        jedis.flushDB();
+      });
+    } catch (Exception e) {
+      manager.getRedis().close();
+      Assume.assumeNoException("Redis is not reachable", e);
+    }
+  }
+
+  @After
+  public void closeRedis() {
+    manager.getRedis().close();
+  }
+
+  /**
+   * Makes a manager which is not started, but is connected to the test database.
+   */
+  protected RedisSessionManager createManager() {
+    RedisSessionManager manager = new RedisSessionManager();
+    manager.setHost(System.getProperty("redis.host", "localhost"));
+    manager.setPort(Integer.getInteger("redis.port", 6379));
+    manager.setDatabase(TEST_DATABASE);
+    manager.setContext(new StandardContext());
+    return manager;
+  }
+
+  /**
+   * Runs a command directly against the test database, outside of the manager.
+   */
+  protected <T> T redis(Redis.RedisFunction<T> call) throws Exception {
+    return manager.getRedis().withRedis(call);
+  }
+
+}
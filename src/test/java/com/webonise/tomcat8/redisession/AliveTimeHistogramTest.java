@@ -0,0 +1,102 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AliveTimeHistogramTest {
+
+  /**
+   * Builds the hash that recording the alive times would leave in Redis.
+   */
+  private static AliveTimeHistogram histogramOf(long... aliveTimes) {
+    Map<String, Long> counts = new HashMap<>();
+    long sum = 0L;
+    long max = 0L;
+    for (long aliveTime : aliveTimes) {
+      counts.merge(AliveTimeHistogram.bucketField(AliveTimeHistogram.bucketIndex(aliveTime)), 1L, Long::sum);
+      sum += aliveTime;
+      max = Math.max(max, aliveTime);
+    }
+    Map<String, String> hash = new HashMap<>();
+    counts.forEach((field, count) -> hash.put(field, Long.toString(count)));
+    hash.put(AliveTimeHistogram.COUNT_FIELD, Integer.toString(aliveTimes.length));
+    hash.put(AliveTimeHistogram.SUM_FIELD, Long.toString(sum));
+    hash.put(AliveTimeHistogram.MAX_FIELD, Long.toString(max));
+    return new AliveTimeHistogram(hash);
+  }
+
+  @Test
+  public void bucketsDoubleInSize() {
+    assertEquals(0, AliveTimeHistogram.bucketIndex(0L));
+    assertEquals(1, AliveTimeHistogram.bucketIndex(1L));
+    assertEquals(2, AliveTimeHistogram.bucketIndex(2L));
+    assertEquals(2, AliveTimeHistogram.bucketIndex(3L));
+    assertEquals(3, AliveTimeHistogram.bucketIndex(4L));
+    assertEquals(3, AliveTimeHistogram.bucketIndex(7L));
+    assertEquals(11, AliveTimeHistogram.bucketIndex(1024L));
+    assertEquals(Long.SIZE - 1, AliveTimeHistogram.bucketIndex(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void putsNegativeAliveTimesInTheFirstBucket() {
+    assertEquals(0, AliveTimeHistogram.bucketIndex(-5L));
+  }
+
+  @Test
+  public void isEmptyWithoutAHash() {
+    AliveTimeHistogram histogram = new AliveTimeHistogram(Collections.emptyMap());
+
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0L, histogram.getMax());
+    assertEquals(0L, histogram.getAverage());
+    assertEquals(0L, histogram.getPercentile(0.5));
+  }
+
+  @Test
+  public void keepsTheMaximumAndAverageExact() {
+    AliveTimeHistogram histogram = histogramOf(10L, 20L, 90L);
+
+    assertEquals(3L, histogram.getCount());
+    assertEquals(90L, histogram.getMax());
+    assertEquals(40L, histogram.getAverage());
+  }
+
+  @Test
+  public void estimatesPercentilesWithinAFactorOfTwo() {
+    long[] aliveTimes = new long[100];
+    for (int i = 0; i < aliveTimes.length; i++) aliveTimes[i] = 100L;
+    aliveTimes[99] = 5000L;
+    AliveTimeHistogram histogram = histogramOf(aliveTimes);
+
+    // 100 seconds is in the bucket of [64, 128)
+    assertEquals(127L, histogram.getPercentile(0.5));
+    assertEquals(127L, histogram.getPercentile(0.99));
+    assertEquals(5000L, histogram.getPercentile(1.0));
+    assertEquals(127L, histogram.getPercentile(0.0));
+  }
+
+  @Test
+  public void capsPercentilesAtTheMaximum() {
+    assertEquals(70L, histogramOf(70L).getPercentile(0.5));
+  }
+
+  @Test
+  public void treatsUnparseableFieldsAsZero() {
+    Map<String, String> hash = new HashMap<>();
+    hash.put(AliveTimeHistogram.COUNT_FIELD, "garbage");
+    hash.put(AliveTimeHistogram.MAX_FIELD, "");
+
+    AliveTimeHistogram histogram = new AliveTimeHistogram(hash);
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0L, histogram.getMax());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPercentilesOutsideZeroToOne() {
+    histogramOf(1L).getPercentile(1.5);
+  }
+
+}
@@ -0,0 +1,61 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AttributePrefetchTest extends AbstractRedisTest {
+
+  private String id;
+
+  @Before
+  public void createSession() {
+    manager.setAttributePrefetch(true);
+    RedisSession session = manager.createSession(null);
+    for (String name : new String[] {"a", "b", "c", "d"}) session.setAttribute(name, name.toUpperCase());
+    id = session.getIdInternal();
+  }
+
+  private String read(String requestUri, String... names) throws Exception {
+    manager.beginRequest(requestUri);
+    try {
+      RedisSession session = manager.findSession(id);
+      StringBuilder values = new StringBuilder();
+      for (String name : names) values.append(session.getAttribute(name));
+      return values.toString();
+    } finally {
+      manager.endRequest();
+    }
+  }
+
+  @Test
+  public void prefetchesThePredictedAttributes() throws Exception {
+    manager.setPrefetchWholeHashSize(2);
+    assertEquals("AB", read("/orders/1", "a", "b"));
+
+    assertEquals("ABC", read("/orders/2", "a", "b", "c"));
+
+    assertEquals(2L, manager.getPrefetchHitCount());
+    assertEquals(3L, manager.getPrefetchMissCount());
+  }
+
+  @Test
+  public void prefetchesSmallHashesWhole() throws Exception {
+    manager.setPrefetchWholeHashSize(10);
+    assertEquals("A", read("/orders/1", "a"));
+
+    assertEquals("AD", read("/orders/2", "a", "d"));
+    assertNull(manager.findSession(id).getAttribute("missing"));
+  }
+
+  @Test
+  public void doesNotPrefetchForOtherPatterns() throws Exception {
+    assertEquals("A", read("/orders/1", "a"));
+
+    assertEquals("B", read("/account", "b"));
+
+    assertEquals(0L, manager.getPrefetchHitCount());
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AttributePrefetcherTest {
+
+  private final AttributePrefetcher prefetcher = new AttributePrefetcher(2);
+
+  private void serve(String requestUri, String... namesRead) {
+    AttributePrefetcher.RequestContext context = prefetcher.beginRequest(requestUri);
+    for (String name : namesRead) prefetcher.recordRead(context, name);
+    prefetcher.endRequest(context);
+  }
+
+  private static Set<String> setOf(String... names) {
+    return new HashSet<>(Arrays.asList(names));
+  }
+
+  @Test
+  public void groupsUrisBySegmentsWithoutDigits() {
+    assertEquals("/orders/*/items", AttributePrefetcher.toPattern("/orders/1234/items"));
+    assertEquals("/orders/*/items", AttributePrefetcher.toPattern("/orders/a5b6/items;jsessionid=abc"));
+    assertEquals("/cart/", AttributePrefetcher.toPattern("/cart/"));
+    assertEquals("", AttributePrefetcher.toPattern(""));
+  }
+
+  @Test
+  public void predictsWhatTheLastMatchingRequestRead() {
+    serve("/orders/1/items", "user", "cart");
+
+    assertEquals(setOf("user", "cart"), prefetcher.beginRequest("/orders/2/items").getPredicted());
+    assertTrue(prefetcher.beginRequest("/account").getPredicted().isEmpty());
+
+    serve("/orders/3/items", "user");
+    assertEquals(setOf("user"), prefetcher.beginRequest("/orders/4/items").getPredicted());
+  }
+
+  @Test
+  public void countsEachReadOnceAsAHitOrAMiss() {
+    serve("/page", "user", "cart");
+    AttributePrefetcher.RequestContext context = prefetcher.beginRequest("/page");
+
+    prefetcher.recordRead(context, "user");
+    prefetcher.recordRead(context, "user");
+    prefetcher.recordRead(context, "locale");
+
+    assertEquals(1L, prefetcher.getHitCount());
+    // Both reads of the first request were unpredicted
+    assertEquals(3L, prefetcher.getMissCount());
+  }
+
+  @Test
+  public void forgetsPatternsWhoseRequestsReadNothing() {
+    serve("/page", "user");
+    serve("/page");
+
+    assertEquals(0, prefetcher.getPatternCount());
+    assertTrue(prefetcher.beginRequest("/page").getPredicted().isEmpty());
+  }
+
+  @Test
+  public void forgetsTheLeastRecentlyUsedPatterns() {
+    serve("/a", "x");
+    serve("/b", "x");
+    prefetcher.beginRequest("/a");
+    serve("/c", "x");
+
+    assertEquals(2, prefetcher.getPatternCount());
+    assertFalse(prefetcher.beginRequest("/a").getPredicted().isEmpty());
+    assertTrue(prefetcher.beginRequest("/b").getPredicted().isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositivePatternLimits() {
+    new AttributePrefetcher(0);
+  }
+
+}
@@ -0,0 +1,54 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AttributeSavePolicyTest {
+
+  @Test
+  public void knowsWhichValuesAreImmutable() {
+    for (Object value : new Object[] {
+        null, "string", 1, 2L, true, 'c', BigDecimal.ONE, UUID.randomUUID(), Locale.US, LocalDate.now(),
+        Instant.now(), ZoneId.of("Europe/Paris"), ZoneOffset.UTC, TimeUnit.SECONDS
+    }) {
+      assertTrue(String.valueOf(value), AttributeSavePolicy.isImmutable(value));
+    }
+    for (Object value : new Object[] {new ArrayList<>(), new HashMap<>(), new Date(), new StringBuilder(), new int[0]}) {
+      assertFalse(String.valueOf(value), AttributeSavePolicy.isImmutable(value));
+    }
+  }
+
+  @Test
+  public void checksRetrievedValuesAsThePolicySays() {
+    List<String> mutable = new ArrayList<>();
+
+    assertFalse(AttributeSavePolicy.SET_ONLY.isCheckedOnGet(mutable));
+    assertFalse(AttributeSavePolicy.SET_ONLY.isCheckedOnGet("string"));
+    assertTrue(AttributeSavePolicy.SET_AND_MUTABLE_GET.isCheckedOnGet(mutable));
+    assertFalse(AttributeSavePolicy.SET_AND_MUTABLE_GET.isCheckedOnGet("string"));
+    assertTrue(AttributeSavePolicy.ALWAYS.isCheckedOnGet(mutable));
+    assertTrue(AttributeSavePolicy.ALWAYS.isCheckedOnGet("string"));
+  }
+
+  @Test
+  public void parsesPolicyNamesIgnoringCase() {
+    assertEquals(AttributeSavePolicy.SET_AND_MUTABLE_GET, AttributeSavePolicy.fromString(" set_and_mutable_get "));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownPolicies() {
+    AttributeSavePolicy.fromString("NEVER");
+  }
+
+  @Test
+  public void alwaysChecksRetrievedValuesByDefault() {
+    assertEquals(AttributeSavePolicy.ALWAYS, new RedisSessionManager().getAttributeSavePolicy());
+  }
+
+}
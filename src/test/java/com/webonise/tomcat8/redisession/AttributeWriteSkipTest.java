@@ -0,0 +1,72 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AttributeWriteSkipTest extends AbstractRedisTest {
+
+  private String createSessionWithCart() {
+    manager.beginRequest();
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("cart", new ArrayList<>(Collections.singletonList("book")));
+    manager.endRequest();
+    return session.getIdInternal();
+  }
+
+  private String version(String id) throws Exception {
+    return redis(jedis -> {
+      return jedis.hget(Convention.sessionIdToMetadataKey(id), Convention.VERSION_HKEY);
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> readCartInRequest(RedisSessionManager node, String id, String itemToAdd) throws Exception {
+    node.beginRequest();
+    try {
+      List<String> cart = (List<String>) node.findSession(id).getAttribute("cart");
+      if (itemToAdd != null) cart.add(itemToAdd);
+      return cart;
+    } finally {
+      node.endRequest();
+    }
+  }
+
+  @Test
+  public void doesNotWriteRetrievedValuesWhichAreUnchanged() throws Exception {
+    String id = createSessionWithCart();
+    String version = version(id);
+
+    readCartInRequest(createManager(), id, null);
+
+    assertEquals(version, version(id));
+  }
+
+  @Test
+  public void writesRetrievedValuesWhichWereChangedInPlace() throws Exception {
+    String id = createSessionWithCart();
+    String version = version(id);
+
+    readCartInRequest(createManager(), id, "pen");
+
+    assertNotEquals(version, version(id));
+    assertEquals(Arrays.asList("book", "pen"), readCartInRequest(createManager(), id, null));
+  }
+
+  @Test
+  public void doesNotWriteLoadedValuesAssignedAgainUnchanged() throws Exception {
+    String id = createSessionWithCart();
+    String version = version(id);
+
+    manager.beginRequest();
+    RedisSession session = manager.findSession(id);
+    assertNotNull(session.getAttribute("cart"));
+    session.setAttribute("cart", new ArrayList<>(Collections.singletonList("book")));
+    manager.endRequest();
+
+    assertEquals(version, version(id));
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.webonise.tomcat8.redisession;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChunkedAttributeTest extends AbstractRedisTest {
+
+  private static final String LARGE_VALUE = StringUtils.repeat("0123456789", 100);
+
+  @Before
+  public void useChunks() {
+    manager.setAttributeChunkSize(100);
+  }
+
+  private long chunkCount(RedisSession session) throws Exception {
+    return redis(jedis -> {
+      return jedis.hlen(Convention.sessionIdToChunksKey(session.getIdInternal()));
+    });
+  }
+
+  private Object readFromAnotherNode(RedisSession session, String name) throws Exception {
+    RedisSessionManager other = createManager();
+    try {
+      return other.findSession(session.getIdInternal()).getAttribute(name);
+    } finally {
+      other.getRedis().close();
+    }
+  }
+
+  @Test
+  public void readsChunkedValuesBack() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("large", LARGE_VALUE);
+
+    assertTrue(chunkCount(session) > 1L);
+    assertEquals(LARGE_VALUE, readFromAnotherNode(session, "large"));
+  }
+
+  @Test
+  public void doesNotChunkSmallValues() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("small", "value");
+
+    assertEquals(0L, chunkCount(session));
+    assertEquals("value", readFromAnotherNode(session, "small"));
+  }
+
+  @Test
+  public void deletesTheChunksWhenTheValueIsReplaced() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("large", LARGE_VALUE);
+
+    session.setAttribute("large", "small");
+
+    assertEquals(0L, chunkCount(session));
+    assertEquals("small", readFromAnotherNode(session, "large"));
+  }
+
+  @Test
+  public void deletesTheChunksWhenTheValueIsRemoved() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("large", LARGE_VALUE);
+
+    session.removeAttribute("large");
+
+    assertEquals(0L, chunkCount(session));
+    assertNull(readFromAnotherNode(session, "large"));
+  }
+
+}
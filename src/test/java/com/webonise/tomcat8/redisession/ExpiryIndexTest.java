@@ -0,0 +1,115 @@
+package com.webonise.tomcat8.redisession;
+
+import com.webonise.tomcat8.redisession.redisclient.BooleanConverter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExpiryIndexTest extends AbstractRedisTest {
+
+  private static final long HOUR_AGO = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1L);
+
+  @Before
+  public void useTheExpiryIndex() {
+    manager.setExpirationStrategy(ExpirationStrategy.EXPIRY_INDEX.name());
+  }
+
+  /**
+   * Writes the metadata of a session directly, as if it had been created by another server, and optionally indexes
+   * it as due an hour ago.
+   */
+  private void putSession(String id, boolean valid, long lastAccessTime, boolean indexed) throws Exception {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put(Convention.IS_VALID_HKEY, new BooleanConverter().convertToString(valid));
+    metadata.put(Convention.CREATION_TIME_HKEY, manager.getMetadataTimestampFormat().format(lastAccessTime));
+    metadata.put(Convention.LAST_ACCESS_TIME_HKEY, manager.getMetadataTimestampFormat().format(lastAccessTime));
+    metadata.put(Convention.MAX_INACTIVE_INTERVAL_HKEY, "60");
+    redis(jedis -> {
+      jedis.hmset(Convention.sessionIdToMetadataKey(id), metadata);
+      return indexed ? jedis.zadd(Convention.SESSION_EXPIRY_INDEX_KEY, HOUR_AGO, id) : null;
+    });
+  }
+
+  private Double score(String id) throws Exception {
+    return redis(jedis -> {
+      return jedis.zscore(Convention.SESSION_EXPIRY_INDEX_KEY, id);
+    });
+  }
+
+  private long indexSize() throws Exception {
+    return redis(jedis -> {
+      return jedis.zcard(Convention.SESSION_EXPIRY_INDEX_KEY);
+    });
+  }
+
+  @Test
+  public void indexesSessionsByTheirExpiration() throws Exception {
+    manager.setMaxInactiveInterval(60);
+    long before = System.currentTimeMillis();
+    RedisSession session = manager.createSession(null);
+
+    double score = score(session.getIdInternal());
+    assertTrue(score >= before + 60_000L && score <= System.currentTimeMillis() + 60_000L);
+  }
+
+  @Test
+  public void reapsOnlyTheSessionsWhichAreStillDue() throws Exception {
+    putSession("expired", true, HOUR_AGO, true);
+    putSession("accessed", true, System.currentTimeMillis(), true);
+
+    manager.reapExpiredSessions();
+
+    assertNull(score("expired"));
+    assertEquals(1L, manager.getExpiredSessions());
+    assertTrue(score("accessed") > System.currentTimeMillis());
+  }
+
+  @Test
+  public void dropsInvalidSessionsWithoutCountingThem() throws Exception {
+    putSession("invalid", false, HOUR_AGO, true);
+    redis(jedis -> {
+      return jedis.zadd(Convention.SESSION_EXPIRY_INDEX_KEY, HOUR_AGO, "gone");
+    });
+
+    manager.reapExpiredSessions();
+
+    assertEquals(0L, indexSize());
+    assertEquals(0L, manager.getExpiredSessions());
+  }
+
+  @Test
+  public void reapsAtMostTheBatchSizePerPass() throws Exception {
+    for (int i = 0; i < 5; i++) putSession("expired-" + i, true, HOUR_AGO, true);
+    manager.setExpiryReapBatchSize(2);
+
+    manager.reapExpiredSessions();
+
+    assertEquals(3L, indexSize());
+    assertEquals(2L, manager.getExpiredSessions());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveBatchSizes() {
+    manager.setExpiryReapBatchSize(0);
+  }
+
+  @Test
+  public void backfillsValidSessionsWithoutMovingIndexedOnes() throws Exception {
+    long now = System.currentTimeMillis();
+    putSession("unindexed", true, now, false);
+    putSession("indexed", true, now, true);
+    putSession("invalid", false, now, false);
+
+    manager.backfillExpiryIndex();
+
+    assertEquals(2L, indexSize());
+    assertEquals(now + 60_000L, score("unindexed"), 1000.0);
+    assertEquals((double) HOUR_AGO, score("indexed"), 0.0);
+    assertNull(score("invalid"));
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NativeTtlExpirationTest extends AbstractRedisTest {
+
+  @Before
+  public void useNativeTtls() {
+    manager.setExpirationStrategy(ExpirationStrategy.NATIVE_TTL.name());
+  }
+
+  private long pttl(String key) throws Exception {
+    return redis(jedis -> {
+      return jedis.pttl(key);
+    });
+  }
+
+  @Test
+  public void parsesStrategyNamesIgnoringCase() {
+    assertEquals(ExpirationStrategy.NATIVE_TTL, ExpirationStrategy.fromString(" native_ttl "));
+    assertEquals(ExpirationStrategy.EXPIRY_INDEX, ExpirationStrategy.fromString("EXPIRY_INDEX"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownStrategies() {
+    ExpirationStrategy.fromString("NEVER");
+  }
+
+  @Test
+  public void expiresEverySessionKeyAfterTheMaxInactiveInterval() throws Exception {
+    manager.setMaxInactiveInterval(60);
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("name", "value");
+
+    for (String key : new String[] {
+        Convention.sessionIdToMetadataKey(session.getIdInternal()),
+        Convention.sessionIdToAttributesKey(session.getIdInternal())
+    }) {
+      long ttl = pttl(key);
+      assertTrue(key + " had a TTL of " + ttl, ttl > 0L && ttl <= 60_000L);
+    }
+  }
+
+  @Test
+  public void persistsSessionsWhichNeverExpire() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("name", "value");
+    session.setMaxInactiveInterval(0);
+
+    assertEquals(-1L, pttl(Convention.sessionIdToMetadataKey(session.getIdInternal())));
+    assertEquals(-1L, pttl(Convention.sessionIdToAttributesKey(session.getIdInternal())));
+  }
+
+  @Test
+  public void reconcilesTheActiveCountAfterRedisExpiresSessions() throws Exception {
+    RedisSession kept = manager.createSession(null);
+    RedisSession expired = manager.createSession(null);
+    assertEquals(2, manager.getActiveSessions());
+    redis(jedis -> {
+      return jedis.del(Convention.getSessionKeys(expired.getIdInternal()).toArray(new String[0]));
+    });
+
+    manager.updateStatistics();
+
+    assertEquals(1, manager.getActiveSessions());
+    assertEquals(0L, manager.getExpiredSessions());
+    assertNotNull(manager.findSession(kept.getIdInternal()));
+  }
+
+}
@@ -0,0 +1,67 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RedisSessionManagerLifecycleTest extends AbstractRedisTest {
+
+  @Test
+  public void reportsNoAsyncWorkWithoutCreatingTheClient() throws Exception {
+    RedisSessionManager unused = createManager();
+    unused.start();
+    unused.stop();
+
+    assertEquals(0, unused.getAsyncQueueDepth());
+    assertEquals(0L, unused.getAsyncRejectedCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void doesNotCreateTheClientOnceStopped() throws Exception {
+    RedisSessionManager stopped = createManager();
+    stopped.start();
+    stopped.stop();
+
+    stopped.getRedis();
+  }
+
+  @Test
+  public void createsANewClientWhenStartedAgain() throws Exception {
+    RedisSessionManager restarted = createManager();
+    restarted.start();
+    restarted.stop();
+    restarted.start();
+    try {
+      assertEquals("PONG", restarted.getRedis().withRedis(jedis -> {
+        return jedis.ping();
+      }));
+    } finally {
+      restarted.stop();
+    }
+  }
+
+  @Test
+  public void changesSessionIdsAsTheFirstUseOfRedis() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("name", "value");
+    String oldId = session.getIdInternal();
+
+    RedisSessionManager other = createManager();
+    try {
+      other.changeSessionId(session, "new-id");
+    } finally {
+      other.getRedis().close();
+    }
+
+    assertFalse(redis(jedis -> {
+      return jedis.exists(Convention.sessionIdToMetadataKey(oldId));
+    }));
+    assertTrue(redis(jedis -> {
+      return jedis.exists(Convention.sessionIdToMetadataKey("new-id"));
+    }));
+    assertTrue(redis(jedis -> {
+      return jedis.hexists(Convention.sessionIdToAttributesKey("new-id"), "name");
+    }));
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.webonise.tomcat8.redisession;
+
+import com.webonise.tomcat8.redisession.redisclient.BooleanConverter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a session built from its metadata hash answers from that hash alone. Nothing listens on the manager's
+ * port, so any property which was fetched lazily instead would fail to load.
+ */
+public class RedisSessionPreloadTest {
+
+  private static final long CREATION_TIME = 1_500_000_000_000L;
+
+  private RedisSessionManager manager;
+
+  @Before
+  public void createManager() {
+    manager = new RedisSessionManager();
+    manager.setPort(1);
+  }
+
+  @After
+  public void closeRedis() {
+    manager.getRedis().close();
+  }
+
+  private Map<String, String> metadata() {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put(Convention.IS_VALID_HKEY, new BooleanConverter().convertToString(true));
+    metadata.put(Convention.CREATION_TIME_HKEY, manager.getMetadataTimestampFormat().format(CREATION_TIME));
+    metadata.put(Convention.THIS_ACCESSED_TIME_HKEY, manager.getMetadataTimestampFormat().format(CREATION_TIME));
+    metadata.put(Convention.LAST_ACCESS_TIME_HKEY, manager.getMetadataTimestampFormat().format(CREATION_TIME));
+    metadata.put(Convention.MAX_INACTIVE_INTERVAL_HKEY, "60");
+    metadata.put(Convention.AUTH_TYPE_HKEY, "FORM");
+    return metadata;
+  }
+
+  @Test
+  public void answersFromThePreloadedMetadata() {
+    RedisSession session = new RedisSession(manager, "session-id", metadata());
+
+    assertEquals(CREATION_TIME, session.getCreationTimeInternal());
+    assertEquals(CREATION_TIME, session.getLastAccessedTimeInternal());
+    assertEquals(60, session.getMaxInactiveInterval());
+    assertEquals("FORM", session.getAuthType());
+  }
+
+  @Test
+  public void treatsMissingFieldsAsNotSet() {
+    Map<String, String> metadata = metadata();
+    metadata.remove(Convention.AUTH_TYPE_HKEY);
+
+    RedisSession session = new RedisSession(manager, "session-id", metadata);
+
+    assertNull(session.getAuthType());
+    assertNull(session.getPrincipal());
+  }
+
+  @Test
+  public void leavesLoadedPropertiesAlone() {
+    RedisSession session = new RedisSession(manager, "session-id", metadata());
+    Map<String, String> changed = metadata();
+    changed.put(Convention.AUTH_TYPE_HKEY, "BASIC");
+
+    session.preloadMetadata(changed);
+
+    assertEquals("FORM", session.getAuthType());
+  }
+
+}
@@ -0,0 +1,101 @@
+package com.webonise.tomcat8.redisession;
+
+import com.webonise.tomcat8.redisession.redisclient.TimestampFormat;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RedisSessionWriteBehindTest extends AbstractRedisTest {
+
+  private String createSessionInRequest(String name, String value) {
+    manager.beginRequest();
+    RedisSession session = manager.createSession(null);
+    session.setAttribute(name, value);
+    manager.endRequest();
+    return session.getIdInternal();
+  }
+
+  private void touchSessionInRequest(String id) throws Exception {
+    manager.beginRequest();
+    assertNotNull(manager.findSession(id));
+    manager.endRequest();
+  }
+
+  private Object readAttribute(String id, String name) throws Exception {
+    RedisSessionManager reader = createManager();
+    try {
+      RedisSession session = reader.findSession(id);
+      assertNotNull(session);
+      return session.getAttribute(name);
+    } finally {
+      reader.getRedis().close();
+    }
+  }
+
+  private void assertTouchedSessionKeepsItsAttributes(ExpirationStrategy strategy) throws Exception {
+    manager.setExpirationStrategy(strategy.name());
+    // Access times are kept to the millisecond, so that an interval this short can be tested
+    manager.setTimestampFormat(TimestampFormat.EPOCH_MILLIS.name());
+    manager.setMaxInactiveInterval(1);
+    String id = createSessionInRequest("name", "value");
+    Thread.sleep(600L);
+    touchSessionInRequest(id);
+    Thread.sleep(600L);
+
+    // Longer than the max inactive interval since the attribute was written, but not since the session was touched
+    assertEquals("value", readAttribute(id, "name"));
+  }
+
+  @Test
+  public void touchedSessionKeepsItsAttributesWhenScanning() throws Exception {
+    assertTouchedSessionKeepsItsAttributes(ExpirationStrategy.SCAN);
+  }
+
+  @Test
+  public void touchedSessionKeepsItsAttributesWithAnExpiryIndex() throws Exception {
+    assertTouchedSessionKeepsItsAttributes(ExpirationStrategy.EXPIRY_INDEX);
+  }
+
+  @Test
+  public void touchedSessionKeepsItsAttributesWithNativeTtls() throws Exception {
+    assertTouchedSessionKeepsItsAttributes(ExpirationStrategy.NATIVE_TTL);
+  }
+
+  @Test
+  public void writesLeaveTheExpirationToTheStrategy() throws Exception {
+    manager.setExpirationStrategy(ExpirationStrategy.SCAN.name());
+    String id = createSessionInRequest("name", "value");
+    String attributesKey = Convention.sessionIdToAttributesKey(id);
+
+    assertEquals(Long.valueOf(-1L), redis(jedis -> {
+      return jedis.pttl(attributesKey);
+    }));
+  }
+
+  @Test
+  public void writesRefreshNativeTtls() throws Exception {
+    manager.setExpirationStrategy(ExpirationStrategy.NATIVE_TTL.name());
+    String id = createSessionInRequest("name", "value");
+    String attributesKey = Convention.sessionIdToAttributesKey(id);
+
+    long ttl = redis(jedis -> {
+      return jedis.pttl(attributesKey);
+    });
+    assertTrue("TTL was " + ttl, ttl > 0L);
+  }
+
+  @Test
+  public void writesAreNotSentUntilTheRequestEnds() throws Exception {
+    manager.beginRequest();
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("name", "value");
+    String attributesKey = Convention.sessionIdToAttributesKey(session.getIdInternal());
+    assertFalse(redis(jedis -> {
+      return jedis.exists(attributesKey);
+    }));
+
+    manager.endRequest();
+    assertEquals("value", readAttribute(session.getIdInternal(), "name"));
+  }
+
+}
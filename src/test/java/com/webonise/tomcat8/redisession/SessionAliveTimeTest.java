@@ -0,0 +1,52 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SessionAliveTimeTest extends AbstractRedisTest {
+
+  private void invalidateAfterAlive(long aliveTimeSeconds) {
+    RedisSession session = manager.createSession(null);
+    Date creationTime = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(aliveTimeSeconds));
+    assertTrue(manager.invalidateSession(session.getIdInternal(), creationTime));
+  }
+
+  @Test
+  public void recordsAliveTimesWhenSessionsAreInvalidated() {
+    invalidateAfterAlive(100L);
+    invalidateAfterAlive(100L);
+    invalidateAfterAlive(1000L);
+
+    AliveTimeHistogram histogram = manager.getSessionAliveTimeHistogram();
+    assertEquals(3L, histogram.getCount());
+    assertEquals(1000L, histogram.getMax());
+    assertEquals(400, manager.getSessionAverageAliveTime());
+    assertEquals(1000, manager.getSessionMaxAliveTime());
+    assertEquals(127, manager.getSessionMedianAliveTime());
+    assertEquals(1000, manager.getSession99thPercentileAliveTime());
+  }
+
+  @Test
+  public void recordsEachSessionOnce() {
+    RedisSession session = manager.createSession(null);
+    Date creationTime = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(10L));
+    assertTrue(manager.invalidateSession(session.getIdInternal(), creationTime));
+    assertFalse(manager.invalidateSession(session.getIdInternal(), creationTime));
+
+    assertEquals(1L, manager.getSessionAliveTimeHistogram().getCount());
+  }
+
+  @Test
+  public void doesNotRecordSessionsWithoutACreationTime() {
+    RedisSession session = manager.createSession(null);
+    assertTrue(manager.invalidateSession(session.getIdInternal(), null));
+
+    assertEquals(0L, manager.getSessionAliveTimeHistogram().getCount());
+    assertEquals(1L, manager.getExpiredSessions());
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class SessionCountersTest extends AbstractRedisTest {
+
+  private Object raiseMax(String candidate) throws Exception {
+    return redis(jedis -> {
+      return SessionScripts.RAISE_MAX.eval(jedis,
+                                           Collections.singletonList(Convention.SESSION_MAX_ACTIVE_KEY),
+                                           Collections.singletonList(candidate)
+      );
+    });
+  }
+
+  @Test
+  public void countsCreatedAndInvalidatedSessions() {
+    RedisSession first = manager.createSession(null);
+    manager.createSession(null);
+    manager.createSession(null);
+    assertEquals(3L, manager.getSessionCounter());
+    assertEquals(3, manager.getActiveSessions());
+    assertEquals(3, manager.getMaxActive());
+
+    assertTrue(manager.invalidateSession(first.getIdInternal(), null));
+
+    assertEquals(3L, manager.getSessionCounter());
+    assertEquals(2, manager.getActiveSessions());
+    assertEquals(3, manager.getMaxActive());
+    assertEquals(1L, manager.getExpiredSessions());
+  }
+
+  @Test
+  public void sharesTheCountersBetweenManagers() {
+    manager.createSession(null);
+    RedisSessionManager other = createManager();
+    try {
+      other.createSession(null);
+
+      assertEquals(2L, manager.getSessionCounter());
+      assertEquals(2, other.getActiveSessions());
+    } finally {
+      other.getRedis().close();
+    }
+  }
+
+  @Test
+  public void onlyEverRaisesTheMaximum() throws Exception {
+    assertEquals(5L, raiseMax("5"));
+    assertEquals(5L, raiseMax("3"));
+    assertEquals(7L, raiseMax("7"));
+    assertEquals(7, manager.getMaxActive());
+  }
+
+  @Test
+  public void raisesTheMaximumWhenTheActiveCountIsOverwritten() {
+    manager.setActiveSessions(10);
+    manager.setActiveSessions(4);
+
+    assertEquals(4, manager.getActiveSessions());
+    assertEquals(10, manager.getMaxActive());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeSessionCounters() {
+    manager.setSessionCounter(-1L);
+  }
+
+}
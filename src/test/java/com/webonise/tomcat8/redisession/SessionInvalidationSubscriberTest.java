@@ -0,0 +1,111 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SessionInvalidationSubscriberTest extends AbstractRedisTest {
+
+  private static final String CHANNEL = "test-session-invalidations";
+
+  private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(5L);
+
+  private final BlockingQueue<String> invalidated = new LinkedBlockingQueue<>();
+  private final AtomicInteger resets = new AtomicInteger();
+  private SessionInvalidationSubscriber subscriber;
+  private SessionInvalidationSubscriber otherNode;
+
+  @Before
+  public void subscribe() throws Exception {
+    subscriber = new SessionInvalidationSubscriber(manager.getRedis(), CHANNEL, invalidated::add, resets::incrementAndGet);
+    otherNode = new SessionInvalidationSubscriber(manager.getRedis(), CHANNEL, id -> {}, () -> {});
+    subscriber.start();
+    awaitCurrent();
+  }
+
+  @After
+  public void unsubscribe() {
+    subscriber.stop();
+  }
+
+  private void awaitCurrent() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!subscriber.isCurrent()) {
+      assertTrue("Never subscribed", System.currentTimeMillis() < deadline);
+      Thread.sleep(10L);
+    }
+  }
+
+  private void publish(String message) throws Exception {
+    redis(jedis -> {
+      return jedis.publish(CHANNEL, message);
+    });
+  }
+
+  @Test
+  public void deliversNoticesFromOtherNodes() throws Exception {
+    publish(otherNode.noticeFor("session-id"));
+
+    assertEquals("session-id", invalidated.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+    assertEquals(1L, subscriber.getReceivedCount());
+  }
+
+  @Test
+  public void ignoresItsOwnNoticesAndMalformedOnes() throws Exception {
+    publish(subscriber.noticeFor("own"));
+    publish("malformed");
+    publish(otherNode.noticeFor("other"));
+
+    assertEquals("other", invalidated.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+    assertEquals(1L, subscriber.getReceivedCount());
+  }
+
+  @Test
+  public void resetsOnSubscribingAndIsNotCurrentOnceStopped() {
+    assertTrue(resets.get() >= 1);
+
+    subscriber.stop();
+
+    assertFalse(subscriber.isCurrent());
+  }
+
+  @Test
+  public void evictsSessionsWrittenByAnotherManager() throws Exception {
+    RedisSessionManager first = createManager();
+    RedisSessionManager second = createManager();
+    for (RedisSessionManager node : new RedisSessionManager[] {first, second}) {
+      node.setNearCacheSize(1024L * 1024L);
+      node.setNearCacheInvalidation(true);
+      node.start();
+    }
+    try {
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (!"2".equals(redis(jedis -> {
+        return jedis.pubsubNumSub(Convention.NEAR_CACHE_INVALIDATION_CHANNEL).get(Convention.NEAR_CACHE_INVALIDATION_CHANNEL);
+      }))) {
+        assertTrue("Never subscribed", System.currentTimeMillis() < deadline);
+        Thread.sleep(10L);
+      }
+      RedisSession session = first.createSession(null);
+      session.setAttribute("name", "value");
+
+      second.findSession(session.getIdInternal()).setAttribute("name", "changed");
+
+      deadline = System.currentTimeMillis() + TIMEOUT;
+      while (first.getNearCacheInvalidationCount() == 0L) {
+        assertTrue("Never received the notice", System.currentTimeMillis() < deadline);
+        Thread.sleep(10L);
+      }
+      assertEquals("changed", first.findSession(session.getIdInternal()).getAttribute("name"));
+    } finally {
+      first.stop();
+      second.stop();
+    }
+  }
+
+}
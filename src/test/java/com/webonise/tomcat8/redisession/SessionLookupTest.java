@@ -0,0 +1,81 @@
+package com.webonise.tomcat8.redisession;
+
+import com.webonise.tomcat8.redisession.redisclient.BooleanConverter;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SessionLookupTest extends AbstractRedisTest {
+
+  private Map<String, String> putSession(String id, boolean valid, long lastAccessTime) throws Exception {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put(Convention.IS_VALID_HKEY, new BooleanConverter().convertToString(valid));
+    metadata.put(Convention.CREATION_TIME_HKEY, manager.getMetadataTimestampFormat().format(lastAccessTime));
+    metadata.put(Convention.LAST_ACCESS_TIME_HKEY, manager.getMetadataTimestampFormat().format(lastAccessTime));
+    metadata.put(Convention.MAX_INACTIVE_INTERVAL_HKEY, "60");
+    metadata.put(Convention.AUTH_TYPE_HKEY, "FORM");
+    redis(jedis -> {
+      return jedis.hmset(Convention.sessionIdToMetadataKey(id), metadata);
+    });
+    return metadata;
+  }
+
+  private Set<String> keys() throws Exception {
+    return redis(jedis -> {
+      return jedis.keys("*");
+    });
+  }
+
+  @Test
+  public void reportsMissingSessions() throws Exception {
+    assertEquals(SessionLookup.Status.MISSING, manager.lookupSession("missing", true).getStatus());
+    assertEquals(SessionLookup.Status.MISSING, manager.lookupSession("missing", false).getStatus());
+  }
+
+  @Test
+  public void reportsInvalidatedAndExpiredSessionsAsInvalid() throws Exception {
+    putSession("invalidated", false, System.currentTimeMillis());
+    putSession("expired", true, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1L));
+
+    for (boolean loadAll : new boolean[] {true, false}) {
+      assertEquals(SessionLookup.Status.INVALID, manager.lookupSession("invalidated", loadAll).getStatus());
+      SessionLookup expired = manager.lookupSession("expired", loadAll);
+      assertEquals(SessionLookup.Status.INVALID, expired.getStatus());
+      assertTrue(expired.getMetadata().isEmpty());
+    }
+  }
+
+  @Test
+  public void loadsTheWholeHashOfValidSessionsOnlyWhenAsked() throws Exception {
+    Map<String, String> metadata = putSession("valid", true, System.currentTimeMillis());
+
+    SessionLookup all = manager.lookupSession("valid", true);
+    assertTrue(all.isValid());
+    assertEquals(metadata, all.getMetadata());
+
+    SessionLookup some = manager.lookupSession("valid", false);
+    assertTrue(some.isValid());
+    assertEquals("60", some.getMetadata().get(Convention.MAX_INACTIVE_INTERVAL_HKEY));
+    assertFalse(some.getMetadata().containsKey(Convention.AUTH_TYPE_HKEY));
+  }
+
+  @Test
+  public void writesNothingWhenFindingUnknownOrExpiredSessions() throws Exception {
+    putSession("expired", true, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1L));
+    Map<String, String> before = redis(jedis -> {
+      return jedis.hgetAll(Convention.sessionIdToMetadataKey("expired"));
+    });
+
+    assertNull(manager.findSession("missing"));
+    assertNull(manager.findSession("expired"));
+
+    assertEquals(Collections.singleton(Convention.sessionIdToMetadataKey("expired")), keys());
+    assertEquals(before, redis(jedis -> {
+      return jedis.hgetAll(Convention.sessionIdToMetadataKey("expired"));
+    }));
+  }
+
+}
@@ -0,0 +1,96 @@
+package com.webonise.tomcat8.redisession;
+
+import com.webonise.tomcat8.redisession.redisclient.BooleanConverter;
+import com.webonise.tomcat8.redisession.redisclient.TimestampFormat;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.*;
+
+import static org.junit.Assert.*;
+
+public class SessionMetadataPassTest extends AbstractRedisTest {
+
+  private static final int SESSION_COUNT = RedisSessionManager.PIPELINE_BATCH_SIZE + 100;
+
+  /**
+   * Writes the metadata of the sessions directly, as if they had been created by another server.
+   */
+  private void putSessions(List<String> ids, boolean valid, long lastAccessTime) throws Exception {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put(Convention.IS_VALID_HKEY, new BooleanConverter().convertToString(valid));
+    metadata.put(Convention.CREATION_TIME_HKEY, TimestampFormat.ISO_8601.format(lastAccessTime));
+    metadata.put(Convention.LAST_ACCESS_TIME_HKEY, TimestampFormat.ISO_8601.format(lastAccessTime));
+    metadata.put(Convention.MAX_INACTIVE_INTERVAL_HKEY, "60");
+    manager.getRedis().withRedisPipeline(pipeline -> {
+      ids.forEach(id -> pipeline.hmset(Convention.sessionIdToMetadataKey(id), metadata));
+    });
+  }
+
+  private static List<String> ids(String prefix, int count) {
+    return IntStream.range(0, count).mapToObj(i -> prefix + i).collect(Collectors.toList());
+  }
+
+  private List<Boolean> validity(List<String> ids) {
+    BooleanConverter converter = new BooleanConverter();
+    Map<String, List<String>> metadata = manager.fetchSessionMetadata(ids.stream(), Convention.IS_VALID_HKEY);
+    return ids.stream().map(id -> converter.convertFromString(metadata.get(id).get(0))).collect(Collectors.toList());
+  }
+
+  @Test
+  public void fetchesMetadataAcrossPipelineBatches() throws Exception {
+    List<String> ids = ids("session-", SESSION_COUNT);
+    putSessions(ids, true, System.currentTimeMillis());
+    Stream<String> withDuplicates = Stream.concat(ids.stream(), ids.stream().limit(10));
+
+    Map<String, List<String>> metadata = manager.fetchSessionMetadata(
+        withDuplicates, Convention.MAX_INACTIVE_INTERVAL_HKEY, Convention.IS_VALID_HKEY, "MISSING"
+    );
+
+    assertEquals(ids, new ArrayList<>(metadata.keySet()));
+    metadata.values().forEach(values -> assertEquals(Arrays.asList("60", "1", null), values));
+  }
+
+  @Test
+  public void cleansOnlyTheExpiredSessionsInOnePass() throws Exception {
+    long now = System.currentTimeMillis();
+    List<String> live = ids("live-", SESSION_COUNT);
+    List<String> expired = ids("expired-", SESSION_COUNT);
+    List<String> invalid = ids("invalid-", 10);
+    putSessions(live, true, now);
+    putSessions(expired, true, now - TimeUnit.HOURS.toMillis(1L));
+    putSessions(invalid, false, now - TimeUnit.HOURS.toMillis(1L));
+
+    manager.cleanSessions();
+
+    assertFalse(validity(live).contains(false));
+    assertFalse(validity(expired).contains(true));
+    assertEquals(SESSION_COUNT, manager.getExpiredSessions());
+  }
+
+  @Test
+  public void reconcilesTheActiveCountWithTheValidSessions() throws Exception {
+    putSessions(ids("valid-", 3), true, System.currentTimeMillis());
+    putSessions(ids("invalid-", 2), false, System.currentTimeMillis());
+    manager.setActiveSessions(100);
+
+    manager.reconcileActiveSessions();
+
+    assertEquals(3, manager.getActiveSessions());
+  }
+
+  @Test
+  public void onlyCountsRemovedSessionsAsExpiredWhenAsked() throws Exception {
+    RedisSession removed = manager.createSession(null);
+    RedisSession expired = manager.createSession(null);
+    assertEquals(2, manager.getActiveSessions());
+
+    manager.remove(removed, false);
+    manager.remove(expired, true);
+
+    assertEquals(0, manager.getActiveSessions());
+    assertEquals(1L, manager.getExpiredSessions());
+  }
+
+}
@@ -0,0 +1,189 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SessionNearCacheTest {
+
+  private static final long SESSION_SIZE = RedisSession.ESTIMATED_OVERHEAD;
+
+  private RedisSessionManager manager;
+
+  @Before
+  public void createManager() {
+    manager = new RedisSessionManager();
+  }
+
+  @After
+  public void closeRedis() {
+    manager.getRedis().close();
+  }
+
+  /**
+   * Makes a session without looking it up or creating it in Redis. It has no attributes loaded, so its estimated size
+   * is {@link #SESSION_SIZE}.
+   */
+  private RedisSession session(String id, long version) {
+    RedisSession session = new RedisSession(manager, id, 1800, false);
+    session.setVersion(version);
+    return session;
+  }
+
+  @Test
+  public void returnsSessionsAtTheCurrentVersion() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    RedisSession session = session("a", 3L);
+    cache.put(session);
+
+    assertSame(session, cache.get("a", 3L));
+    assertEquals(1L, cache.getHitCount());
+    assertNull(cache.get("b", 3L));
+    assertEquals(1L, cache.getMissCount());
+  }
+
+  @Test
+  public void checksForSessionsWithoutCountingAHitOrMiss() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    cache.put(session("a", 3L));
+
+    assertTrue(cache.contains("a"));
+    assertFalse(cache.contains("b"));
+    assertEquals(0L, cache.getHitCount());
+    assertEquals(0L, cache.getMissCount());
+  }
+
+  @Test
+  public void evictsSessionsAtAnotherVersion() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    cache.put(session("a", 3L));
+
+    assertNull(cache.get("a", 4L));
+    assertEquals(0, cache.getSessionCount());
+    assertEquals(0L, cache.getSize());
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedSessionsWhenFull() {
+    SessionNearCache cache = new SessionNearCache(3 * SESSION_SIZE);
+    cache.put(session("a", 1L));
+    cache.put(session("b", 1L));
+    cache.put(session("c", 1L));
+    assertNotNull(cache.get("a", 1L));
+
+    cache.put(session("d", 1L));
+
+    assertEquals(3, cache.getSessionCount());
+    assertEquals(3 * SESSION_SIZE, cache.getSize());
+    assertNull(cache.get("b", 1L));
+    assertNotNull(cache.get("a", 1L));
+    assertNotNull(cache.get("c", 1L));
+    assertNotNull(cache.get("d", 1L));
+  }
+
+  @Test
+  public void replacesRatherThanDuplicatesASession() {
+    SessionNearCache cache = new SessionNearCache(3 * SESSION_SIZE);
+    cache.put(session("a", 1L));
+    RedisSession replacement = session("a", 2L);
+    cache.put(replacement);
+
+    assertEquals(1, cache.getSessionCount());
+    assertEquals(SESSION_SIZE, cache.getSize());
+    assertSame(replacement, cache.get("a", 2L));
+  }
+
+  @Test
+  public void doesNotHoldSessionsLargerThanTheCache() {
+    SessionNearCache cache = new SessionNearCache(SESSION_SIZE - 1);
+    cache.put(session("a", 1L));
+
+    assertEquals(0, cache.getSessionCount());
+    assertNull(cache.get("a", 1L));
+  }
+
+  @Test
+  public void holdsNothingWhenTurnedOff() {
+    SessionNearCache cache = new SessionNearCache(0L);
+    cache.put(session("a", 1L));
+
+    assertEquals(0, cache.getSessionCount());
+    assertNull(cache.get("a", 1L));
+  }
+
+  @Test
+  public void removesAndClears() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    cache.put(session("a", 1L));
+    cache.put(session("b", 1L));
+
+    cache.remove("a");
+    assertEquals(1, cache.getSessionCount());
+    assertEquals(SESSION_SIZE, cache.getSize());
+
+    cache.clear();
+    assertEquals(0, cache.getSessionCount());
+    assertEquals(0L, cache.getSize());
+  }
+
+  @Test
+  public void updatesOnlyTheSameSession() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    RedisSession cached = session("a", 1L);
+    cache.put(cached);
+
+    cache.update(session("a", 1L));
+    assertSame(cached, cache.get("a", 1L));
+
+    cache.remove("a");
+    cache.update(cached);
+    assertEquals(0, cache.getSessionCount());
+  }
+
+  @Test
+  public void trustsSessionsWhichWereNotInvalidatedWhileTheyWereChecked() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    RedisSession trusted = session("a", 1L);
+    cache.put(trusted, cache.getInvalidationSequence());
+    cache.put(session("b", 1L));
+
+    assertSame(trusted, cache.getTrusted("a", session -> true));
+    assertEquals(1L, cache.getTrustedHitCount());
+    assertNull(cache.getTrusted("a", session -> false));
+    assertNull(cache.getTrusted("b", session -> true));
+  }
+
+  @Test
+  public void doesNotTrustSessionsInvalidatedWhileTheyWereChecked() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    long checkedAt = cache.getInvalidationSequence();
+    cache.invalidate("a");
+    cache.put(session("a", 1L), checkedAt);
+
+    assertNull(cache.getTrusted("a", session -> true));
+    assertNotNull(cache.get("a", 1L));
+  }
+
+  @Test
+  public void evictsInvalidatedSessions() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    cache.put(session("a", 1L), cache.getInvalidationSequence());
+    cache.invalidate("a");
+
+    assertNull(cache.getTrusted("a", session -> true));
+    assertEquals(0, cache.getSessionCount());
+  }
+
+  @Test
+  public void doesNotTrustChecksStartedBeforeAClear() {
+    SessionNearCache cache = new SessionNearCache(10 * SESSION_SIZE);
+    long checkedAt = cache.getInvalidationSequence();
+    cache.clear();
+    cache.put(session("a", 1L), checkedAt);
+
+    assertNull(cache.getTrusted("a", session -> true));
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SessionRateTest extends AbstractRedisTest {
+
+  private static long currentMinute() {
+    return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+  }
+
+  private void putBucket(String key, long count) throws Exception {
+    redis(jedis -> {
+      return jedis.set(key, Long.toString(count));
+    });
+  }
+
+  private long getBucket(String key) throws Exception {
+    String count = redis(jedis -> {
+      return jedis.get(key);
+    });
+    return count == null ? 0L : Long.parseLong(count);
+  }
+
+  @Test
+  public void countsCreatedAndExpiredSessionsInTheCurrentBucket() throws Exception {
+    long minute = currentMinute();
+    RedisSession session = manager.createSession(null);
+    manager.createSession(null);
+    manager.invalidateSession(session.getIdInternal(), null);
+
+    // The minute may have turned over since the sessions were created
+    long created = 0L;
+    long expired = 0L;
+    for (long m = minute; m <= currentMinute(); m++) {
+      created += getBucket(Convention.sessionsCreatedBucketKey(m));
+      expired += getBucket(Convention.sessionsExpiredBucketKey(m));
+    }
+    assertEquals(2L, created);
+    assertEquals(1L, expired);
+  }
+
+  @Test
+  public void expiresBucketsAfterTheWindow() throws Exception {
+    manager.setRateWindowMinutes(5);
+    manager.createSession(null);
+
+    long ttl = redis(jedis -> {
+      return jedis.ttl(Convention.sessionsCreatedBucketKey(currentMinute()));
+    });
+    assertTrue("TTL was " + ttl, ttl > 0L && ttl <= TimeUnit.MINUTES.toSeconds(6L));
+  }
+
+  @Test
+  public void averagesTheBucketsWithinTheWindow() throws Exception {
+    manager.setRateWindowMinutes(10);
+    long minute = currentMinute();
+    putBucket(Convention.sessionsCreatedBucketKey(minute - 3), 60L);
+    putBucket(Convention.sessionsCreatedBucketKey(minute - 5), 30L);
+    // Outside of the window
+    putBucket(Convention.sessionsCreatedBucketKey(minute - 10), 1000L);
+
+    // 90 sessions over somewhere between 9 and 10 minutes, depending on how far into this minute it is
+    int rate = manager.getSessionCreateRate();
+    assertTrue("Rate was " + rate, rate == 9 || rate == 10);
+    assertEquals(0, manager.getSessionExpireRate());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveWindows() {
+    manager.setRateWindowMinutes(0);
+  }
+
+}
@@ -0,0 +1,75 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SessionTouchTest extends AbstractRedisTest {
+
+  private Map<String, String> metadata(String id) throws Exception {
+    return redis(jedis -> {
+      return jedis.hgetAll(Convention.sessionIdToMetadataKey(id));
+    });
+  }
+
+  @Test
+  public void createsTheMetadataInOneCall() throws Exception {
+    manager.autovivifySession("session-id", 60);
+
+    Map<String, String> metadata = metadata("session-id");
+    assertEquals("60", metadata.get(Convention.MAX_INACTIVE_INTERVAL_HKEY));
+    assertNotNull(metadata.get(Convention.IS_VALID_HKEY));
+    assertNotNull(metadata.get(Convention.CREATION_TIME_HKEY));
+    assertNotNull(metadata.get(Convention.LAST_ACCESS_TIME_HKEY));
+    assertEquals(1L, manager.getSessionCounter());
+    assertEquals(1, manager.getActiveSessions());
+  }
+
+  @Test
+  public void onlyRecordsTheAccessOfExistingSessions() throws Exception {
+    manager.autovivifySession("session-id", 60);
+    redis(jedis -> {
+      return jedis.hset(Convention.sessionIdToMetadataKey("session-id"), Convention.LAST_ACCESS_TIME_HKEY, "old");
+    });
+    String creationTime = metadata("session-id").get(Convention.CREATION_TIME_HKEY);
+
+    manager.autovivifySession("session-id", 120);
+
+    Map<String, String> metadata = metadata("session-id");
+    assertEquals(creationTime, metadata.get(Convention.CREATION_TIME_HKEY));
+    assertEquals("60", metadata.get(Convention.MAX_INACTIVE_INTERVAL_HKEY));
+    assertNotEquals("old", metadata.get(Convention.LAST_ACCESS_TIME_HKEY));
+    assertEquals(1L, manager.getSessionCounter());
+  }
+
+  @Test
+  public void doesNotCreateSessionsWhichMustExist() throws Exception {
+    assertFalse(manager.touchExistingSession("missing", 60));
+
+    assertTrue(metadata("missing").isEmpty());
+    assertEquals(0L, manager.getSessionCounter());
+  }
+
+  @Test
+  public void touchesSessionsWhichMustExist() throws Exception {
+    manager.autovivifySession("session-id", 60);
+
+    assertTrue(manager.touchExistingSession("session-id", 60));
+    assertEquals(1L, manager.getSessionCounter());
+  }
+
+  @Test
+  public void reloadsTheScriptAfterTheServerForgetsIt() throws Exception {
+    manager.autovivifySession("before", 60);
+    redis(jedis -> {
+      return jedis.scriptFlush();
+    });
+
+    manager.autovivifySession("after", 60);
+
+    assertFalse(metadata("after").isEmpty());
+  }
+
+}
@@ -0,0 +1,75 @@
+package com.webonise.tomcat8.redisession;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SessionVersionTest extends AbstractRedisTest {
+
+  @Before
+  public void useTheNearCache() {
+    manager.setNearCacheSize(1024L * 1024L);
+  }
+
+  private long versionInRedis(RedisSession session) throws Exception {
+    return Long.parseLong(redis(jedis -> {
+      return jedis.hget(Convention.sessionIdToMetadataKey(session.getIdInternal()), Convention.VERSION_HKEY);
+    }));
+  }
+
+  @Test
+  public void writesTheVersionAlongWithEachChange() throws Exception {
+    RedisSession session = manager.createSession(null);
+    long created = session.getVersion();
+
+    session.setAttribute("name", "value");
+    assertEquals(created + 1, session.getVersion());
+    assertEquals(session.getVersion(), versionInRedis(session));
+
+    session.removeAttribute("name");
+    assertTrue(session.getVersion() > created + 1);
+    assertEquals(session.getVersion(), versionInRedis(session));
+  }
+
+  @Test
+  public void doesNotWriteTheVersionForUnchangedValues() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("name", "value");
+    long version = session.getVersion();
+
+    session.setAttribute("name", "value");
+
+    assertEquals(version, session.getVersion());
+    assertEquals(version, versionInRedis(session));
+  }
+
+  @Test
+  public void reusesCachedSessionsAtTheSameVersion() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("name", "value");
+
+    assertSame(session, manager.findSession(session.getIdInternal()));
+    assertSame(session, manager.findSession(session.getIdInternal()));
+    assertEquals(2L, manager.getNearCacheHitCount());
+  }
+
+  @Test
+  public void reloadsSessionsChangedByAnotherNode() throws Exception {
+    RedisSession session = manager.createSession(null);
+    session.setAttribute("name", "value");
+    RedisSessionManager other = createManager();
+    try {
+      other.findSession(session.getIdInternal()).setAttribute("name", "changed");
+    } finally {
+      other.getRedis().close();
+    }
+
+    RedisSession found = manager.findSession(session.getIdInternal());
+
+    assertNotSame(session, found);
+    assertEquals("changed", found.getAttribute("name"));
+    assertEquals(session.getCreationTime(), found.getCreationTime());
+  }
+
+}
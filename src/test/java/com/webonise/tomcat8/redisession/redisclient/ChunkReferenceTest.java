@@ -0,0 +1,91 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ChunkReferenceTest {
+
+  private static byte[] valueOfLength(int length) {
+    byte[] value = new byte[length];
+    new Random(length).nextBytes(value);
+    return value;
+  }
+
+  @Test
+  public void countsChunks() {
+    assertEquals(1, ChunkReference.of(valueOfLength(0), 10).getChunkCount());
+    assertEquals(1, ChunkReference.of(valueOfLength(10), 10).getChunkCount());
+    assertEquals(2, ChunkReference.of(valueOfLength(11), 10).getChunkCount());
+    assertEquals(3, ChunkReference.of(valueOfLength(30), 10).getChunkCount());
+  }
+
+  @Test
+  public void roundTripsThroughBytes() {
+    byte[] value = valueOfLength(25);
+    ChunkReference reference = ChunkReference.of(value, 10);
+    byte[] bytes = reference.toBytes();
+
+    assertEquals(ChunkReference.LENGTH, bytes.length);
+    assertEquals(ChunkReference.MAGIC, bytes[0]);
+    ChunkReference parsed = ChunkReference.parse(bytes);
+    assertEquals(reference, parsed);
+    assertEquals(3, parsed.getChunkCount());
+    assertEquals(25, parsed.getLength());
+    assertEquals(Fingerprint.of(value), parsed.getFingerprint());
+  }
+
+  @Test
+  public void doesNotParseOtherValues() {
+    byte[] bytes = ChunkReference.of(valueOfLength(25), 10).toBytes();
+
+    assertNull(ChunkReference.parse(Arrays.copyOf(bytes, bytes.length - 1)));
+    assertNull(ChunkReference.parse(Arrays.copyOf(bytes, bytes.length + 1)));
+    byte[] wrongMagic = bytes.clone();
+    wrongMagic[0] = 0;
+    assertNull(ChunkReference.parse(wrongMagic));
+    assertNull(ChunkReference.parse(new byte[0]));
+  }
+
+  @Test
+  public void doesNotParseNonsensicalCounts() {
+    byte[] noChunks = ByteBuffer.allocate(ChunkReference.LENGTH)
+                          .put(ChunkReference.MAGIC).putInt(0).putInt(5).putLong(1L).array();
+    byte[] negativeLength = ByteBuffer.allocate(ChunkReference.LENGTH)
+                                .put(ChunkReference.MAGIC).putInt(1).putInt(-1).putLong(1L).array();
+
+    assertNull(ChunkReference.parse(noChunks));
+    assertNull(ChunkReference.parse(negativeLength));
+  }
+
+  @Test
+  public void isNeededForLargeValuesAndValuesWhichLookLikeReferences() {
+    assertFalse(ChunkReference.isNeededFor(valueOfLength(10), 10));
+    assertTrue(ChunkReference.isNeededFor(valueOfLength(11), 10));
+    assertFalse(ChunkReference.isNeededFor(valueOfLength(11), 0));
+    assertTrue(ChunkReference.isNeededFor(new byte[] {ChunkReference.MAGIC, 1}, 10));
+    assertFalse(ChunkReference.isNeededFor(new byte[0], 10));
+  }
+
+  @Test
+  public void namesChunkFieldsByTheValue() {
+    ChunkReference first = ChunkReference.of(valueOfLength(25), 10);
+    ChunkReference second = ChunkReference.of(valueOfLength(26), 10);
+
+    List<String> fields = first.getChunkFields("attr");
+    assertEquals(3, fields.size());
+    assertEquals(first.getChunkField("attr", 2), fields.get(2));
+    assertTrue(fields.get(0).startsWith("attr:"));
+    assertEquals(3, new HashSet<>(fields).size());
+    assertTrue(Collections.disjoint(fields, second.getChunkFields("attr")));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rejectsChunksPastTheEnd() {
+    ChunkReference.of(valueOfLength(25), 10).getChunkField("attr", 3);
+  }
+
+}
@@ -0,0 +1,48 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class FingerprintTest {
+
+  @Test
+  public void hashesWithFnv1a() {
+    // The published 64-bit FNV-1a test vectors
+    assertEquals(0xcbf29ce484222325L, Fingerprint.of(new byte[0]).getHash());
+    assertEquals(0xaf63dc4c8601ec8cL, Fingerprint.of("a".getBytes(StandardCharsets.US_ASCII)).getHash());
+    assertEquals(0x85944171f73967e8L, Fingerprint.of("foobar".getBytes(StandardCharsets.US_ASCII)).getHash());
+  }
+
+  @Test
+  public void comparesByLengthAndHash() {
+    byte[] value = {1, 2, 3};
+
+    assertEquals(Fingerprint.of(value), Fingerprint.of(value.clone()));
+    assertEquals(Fingerprint.of(value).hashCode(), Fingerprint.of(value.clone()).hashCode());
+    assertEquals(Fingerprint.of(value), Fingerprint.of(3, Fingerprint.of(value).getHash()));
+    assertNotEquals(Fingerprint.of(value), Fingerprint.of(new byte[] {1, 2, 4}));
+    assertNotEquals(Fingerprint.of(value), Fingerprint.of(4, Fingerprint.of(value).getHash()));
+  }
+
+  @Test
+  public void distinguishesAbsentValuesFromEmptyOnes() {
+    assertNotEquals(Fingerprint.ABSENT, Fingerprint.of(new byte[0]));
+    assertNotEquals(Fingerprint.ABSENT, Fingerprint.of(""));
+    assertEquals(-1, Fingerprint.ABSENT.getLength());
+  }
+
+  @Test
+  public void hashesBothBytesOfEachCharacter() {
+    assertNotEquals(Fingerprint.of("\u0100"), Fingerprint.of("\u0001"));
+    assertEquals(Fingerprint.of("value"), Fingerprint.of(new String("value")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeLengths() {
+    Fingerprint.of(-1, 0L);
+  }
+
+}
@@ -0,0 +1,112 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that raw values preloaded in bulk are only converted when they are used. Nothing listens on the client's
+ * port, so any property which went to Redis instead would fail to load.
+ */
+public class LazyConversionTest {
+
+  private final Redis redis = new Redis(1);
+  private final AtomicInteger conversions = new AtomicInteger();
+  private final AtomicReference<ArrayList<String>> value = new AtomicReference<>();
+
+  private final RedisBinaryConverter<ArrayList<String>> converter = new RedisBinaryConverter<ArrayList<String>>() {
+    private final SerializableBinaryConverter<ArrayList<String>> delegate = new SerializableBinaryConverter<>();
+
+    @Override
+    public byte[] convertToBytes(ArrayList<String> value) {
+      return delegate.convertToBytes(value);
+    }
+
+    @Override
+    public ArrayList<String> convertFromBytes(byte[] value) {
+      conversions.incrementAndGet();
+      return delegate.convertFromBytes(value);
+    }
+  };
+
+  private final RedisBinaryHashBackedPropertySupport<ArrayList<String>> property =
+      new RedisBinaryHashBackedPropertySupport<>(redis, "attributes", "cart", converter, value::set);
+
+  @After
+  public void closeRedis() {
+    redis.close();
+  }
+
+  private byte[] raw(String... items) {
+    return converter.convertToBytes(new ArrayList<>(Arrays.asList(items)));
+  }
+
+  @Test
+  public void convertsThePendingValueWhenFirstUsed() {
+    byte[] raw = raw("book");
+    property.preloadLazily(raw);
+
+    assertTrue(property.hasPendingRawValue());
+    assertEquals(raw.length, property.getStoredLength());
+    assertEquals(0, conversions.get());
+
+    property.trigger();
+    property.trigger();
+
+    assertFalse(property.hasPendingRawValue());
+    assertEquals(Collections.singletonList("book"), value.get());
+    assertEquals(1, conversions.get());
+  }
+
+  @Test
+  public void neverWritesValuesWhichWereNotConverted() {
+    property.preloadLazily(raw("book"));
+    RedisWriteBatch batch = new RedisWriteBatch();
+
+    assertFalse(property.flushChanges(batch));
+    assertTrue(batch.isEmpty());
+    assertEquals(0, conversions.get());
+  }
+
+  @Test
+  public void writesConvertedValuesOnlyIfTheyChanged() {
+    property.preloadLazily(raw("book"));
+    property.trigger();
+    RedisWriteBatch unchanged = new RedisWriteBatch();
+    assertFalse(property.flushChanges(unchanged));
+    assertTrue(unchanged.isEmpty());
+
+    value.get().add("pen");
+    RedisWriteBatch changed = new RedisWriteBatch();
+
+    assertTrue(property.flushChanges(changed));
+    assertFalse(changed.isEmpty());
+  }
+
+  @Test
+  public void replacesThePendingValueWithoutConvertingIt() {
+    property.preloadLazily(raw("book"));
+    property.stage(new ArrayList<>(Collections.singletonList("pen")));
+    RedisWriteBatch batch = new RedisWriteBatch();
+
+    assertFalse(property.hasPendingRawValue());
+    assertTrue(property.flush(batch));
+    assertFalse(batch.isEmpty());
+    assertEquals(0, conversions.get());
+  }
+
+  @Test
+  public void keepsValuesWhichWereAlreadyLoaded() {
+    property.preload(raw("book"));
+    property.preloadLazily(raw("pen"));
+    property.trigger();
+
+    assertFalse(property.hasPendingRawValue());
+    assertEquals(Collections.singletonList("book"), value.get());
+  }
+
+}
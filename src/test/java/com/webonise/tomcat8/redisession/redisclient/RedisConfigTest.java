@@ -0,0 +1,73 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.Test;
+import redis.clients.jedis.JedisPoolConfig;
+
+import static org.junit.Assert.*;
+
+public class RedisConfigTest {
+
+  @Test
+  public void createsThePoolConfigFromTheSettings() {
+    RedisConfig config = new RedisConfig();
+    config.setMaxTotal(20);
+    config.setMaxIdle(10);
+    config.setMinIdle(2);
+    config.setMaxWaitMillis(500L);
+    config.setTimeBetweenEvictionRunsMillis(1000L);
+    config.setMinEvictableIdleTimeMillis(2000L);
+    JedisPoolConfig poolConfig = config.createPoolConfig();
+
+    assertEquals(20, poolConfig.getMaxTotal());
+    assertEquals(10, poolConfig.getMaxIdle());
+    assertEquals(2, poolConfig.getMinIdle());
+    assertTrue(poolConfig.getBlockWhenExhausted());
+    assertEquals(500L, poolConfig.getMaxWaitMillis());
+    assertEquals(1000L, poolConfig.getTimeBetweenEvictionRunsMillis());
+    assertEquals(2000L, poolConfig.getMinEvictableIdleTimeMillis());
+  }
+
+  @Test
+  public void failsFastWhenThePoolIsExhaustedWithoutAWait() {
+    RedisConfig config = new RedisConfig();
+    config.setMaxWaitMillis(0L);
+
+    assertFalse(config.createPoolConfig().getBlockWhenExhausted());
+  }
+
+  @Test
+  public void treatsAnEmptyPasswordAsNone() {
+    RedisConfig config = new RedisConfig();
+    config.setPassword("");
+    assertNull(config.getPassword());
+
+    config.setPassword("secret");
+    assertEquals("secret", config.getPassword());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAnEmptyHost() {
+    new RedisConfig().setHost("");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANonPositivePort() {
+    new RedisConfig().setPort(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANegativeDatabase() {
+    new RedisConfig().setDatabase(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANonPositivePoolSize() {
+    new RedisConfig().setMaxTotal(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTooFewAsyncThreads() {
+    new RedisConfig().setAsyncThreads(1);
+  }
+
+}
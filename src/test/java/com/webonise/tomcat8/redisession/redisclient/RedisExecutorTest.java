@@ -0,0 +1,99 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class RedisExecutorTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private RedisExecutor executor;
+
+  @After
+  public void shutdown() {
+    release.countDown();
+    if (executor != null) executor.shutdown();
+  }
+
+  private Callable<String> blockUntilReleased(CountDownLatch started) {
+    return () -> {
+      started.countDown();
+      release.await();
+      return Thread.currentThread().getName();
+    };
+  }
+
+  @Test
+  public void runsTasksOnNamedDaemonThreads() throws Exception {
+    executor = new RedisExecutor(2, 10, false);
+
+    Thread thread = executor.submit(Thread::currentThread).get();
+
+    assertTrue(thread.getName(), thread.getName().startsWith("redis-async-"));
+    assertTrue(thread.isDaemon());
+    assertNotSame(Thread.currentThread(), thread);
+  }
+
+  @Test
+  public void runsTasksOnNamedThreadsWhetherOrNotVirtualThreadsAreSupported() throws Exception {
+    executor = new RedisExecutor(1, 10, true);
+
+    assertTrue(executor.submit(() -> Thread.currentThread().getName()).get().startsWith("redis-async-"));
+  }
+
+  @Test
+  public void failsTheFutureWhenTheTaskThrows() throws Exception {
+    executor = new RedisExecutor(1, 10, false);
+    IllegalStateException failure = new IllegalStateException("failed");
+
+    try {
+      executor.submit(() -> {
+        throw failure;
+      }).get();
+      fail("The task should have failed");
+    } catch (ExecutionException e) {
+      assertSame(failure, e.getCause());
+    }
+  }
+
+  @Test
+  public void runsTasksOnTheSubmitterWhenTheQueueIsFull() throws Exception {
+    executor = new RedisExecutor(1, 1, false);
+    CountDownLatch started = new CountDownLatch(1);
+    CompletableFuture<String> running = executor.submit(blockUntilReleased(started));
+    started.await();
+    CompletableFuture<String> queued = executor.submit(() -> Thread.currentThread().getName());
+    assertEquals(1, executor.getQueueDepth());
+    assertEquals(1, executor.getActiveCount());
+
+    CompletableFuture<String> rejected = executor.submit(() -> Thread.currentThread().getName());
+
+    assertEquals(Thread.currentThread().getName(), rejected.getNow(null));
+    assertEquals(1L, executor.getRejectedCount());
+    release.countDown();
+    assertTrue(running.get().startsWith("redis-async-"));
+    assertTrue(queued.get().startsWith("redis-async-"));
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void rejectsTasksOnceShutDown() {
+    executor = new RedisExecutor(1, 1, false);
+    executor.shutdown();
+
+    executor.submit(() -> "never run");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveThreadCounts() {
+    new RedisExecutor(0, 1, false);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveQueueSizes() {
+    new RedisExecutor(1, 0, false);
+  }
+
+}
@@ -0,0 +1,117 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class RedisPinnedConnectionTest {
+
+  private Redis redis;
+
+  /**
+   * Connects to the server given by the {@code redis.host} and {@code redis.port} system properties, skipping the
+   * test if it cannot be reached.
+   */
+  private Redis connect(int maxTotal) {
+    RedisConfig config = new RedisConfig();
+    config.setHost(System.getProperty("redis.host", "localhost"));
+    config.setPort(Integer.getInteger("redis.port", 6379));
+    config.setMaxTotal(maxTotal);
+    config.setMaxIdle(maxTotal);
+    config.setMaxWaitMillis(0L);
+    redis = new Redis(config);
+    try {
+      redis.withRedis(jedis -> {
+        jedis.ping();
+      });
+    } catch (Exception e) {
+      redis.close();
+      Assume.assumeNoException("Redis is not reachable", e);
+    }
+    return redis;
+  }
+
+  @After
+  public void closeRedis() {
+    if (redis != null) redis.close();
+  }
+
+  private static Jedis connectionOf(Redis redis) throws Exception {
+    return redis.withRedis(jedis -> {
+      return jedis;
+    });
+  }
+
+  @Test
+  public void usesThePinnedConnectionForEveryCall() throws Exception {
+    Redis redis = connect(1);
+    redis.pinConnection();
+    try {
+      assertTrue(redis.isConnectionPinned());
+      // The pool only has the one connection, so borrowing another would fail
+      assertSame(connectionOf(redis), connectionOf(redis));
+    } finally {
+      redis.unpinConnection();
+    }
+
+    assertFalse(redis.isConnectionPinned());
+    assertNotNull(connectionOf(redis));
+  }
+
+  @Test
+  public void keepsNestedPinsUntilTheOutermostIsReleased() throws Exception {
+    Redis redis = connect(1);
+    redis.pinConnection();
+    redis.pinConnection();
+
+    redis.unpinConnection();
+    assertTrue(redis.isConnectionPinned());
+
+    redis.unpinConnection();
+    assertFalse(redis.isConnectionPinned());
+  }
+
+  @Test
+  public void borrowsAnotherConnectionForCallsWithinACall() throws Exception {
+    Redis redis = connect(2);
+    redis.pinConnection();
+    try {
+      redis.withRedis(outer -> {
+        assertNotSame(outer, connectionOf(redis));
+      });
+    } finally {
+      redis.unpinConnection();
+    }
+  }
+
+  @Test
+  public void onlyPinsToTheCurrentThread() throws Exception {
+    Redis redis = connect(2);
+    redis.pinConnection();
+    try {
+      ExecutorService other = Executors.newSingleThreadExecutor();
+      try {
+        assertFalse(other.submit(redis::isConnectionPinned).get());
+      } finally {
+        other.shutdown();
+      }
+    } finally {
+      redis.unpinConnection();
+    }
+  }
+
+  @Test
+  public void ignoresUnpinningWithoutAPin() throws Exception {
+    Redis redis = connect(1);
+    redis.unpinConnection();
+
+    assertFalse(redis.isConnectionPinned());
+    assertNotNull(connectionOf(redis));
+  }
+
+}
@@ -0,0 +1,17 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RedisScriptTest {
+
+  @Test
+  public void identifiesTheScriptByTheSha1OfItsSource() {
+    RedisScript script = new RedisScript("return 1");
+
+    assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", script.getSha());
+    assertEquals("return 1", script.getSource());
+  }
+
+}
@@ -0,0 +1,244 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.Test;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RedisWriteBatchTest {
+
+  /**
+   * Records the commands queued onto it, as {@code COMMAND key fields...}, rather than sending them.
+   */
+  private static class RecordingPipeline extends Pipeline {
+
+    private final List<String> commands = new ArrayList<>();
+
+    private static String string(byte[] bytes) {
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Response<Long> del(String... keys) {
+      commands.add("DEL " + String.join(" ", keys));
+      return null;
+    }
+
+    @Override
+    public Response<String> set(String key, String value) {
+      commands.add("SET " + key);
+      return null;
+    }
+
+    @Override
+    public Response<Long> hdel(String key, String... fields) {
+      commands.add("HDEL " + key + " " + String.join(" ", fields));
+      return null;
+    }
+
+    @Override
+    public Response<String> hmset(String key, Map<String, String> hash) {
+      commands.add("HMSET " + key + " " + String.join(" ", hash.keySet()));
+      return null;
+    }
+
+    @Override
+    public Response<String> hmset(byte[] key, Map<byte[], byte[]> hash) {
+      StringJoiner fields = new StringJoiner(" ");
+      hash.keySet().forEach(field -> fields.add(string(field)));
+      commands.add("HMSET " + string(key) + " " + fields);
+      return null;
+    }
+
+    @Override
+    public Response<Long> hincrBy(String key, String field, long value) {
+      commands.add("HINCRBY " + key + " " + field + " " + value);
+      return null;
+    }
+
+    @Override
+    public Response<Long> pexpire(String key, long milliseconds) {
+      commands.add("PEXPIRE " + key);
+      return null;
+    }
+
+    @Override
+    public Response<Long> persist(String key) {
+      commands.add("PERSIST " + key);
+      return null;
+    }
+
+    @Override
+    public Response<Long> zadd(String key, Map<String, Double> scoreMembers) {
+      commands.add("ZADD " + key + " " + String.join(" ", scoreMembers.keySet()));
+      return null;
+    }
+
+    @Override
+    public Response<Long> zrem(String key, String... members) {
+      commands.add("ZREM " + key + " " + String.join(" ", members));
+      return null;
+    }
+
+    @Override
+    public Response<Long> publish(String channel, String message) {
+      commands.add("PUBLISH " + channel + " " + message);
+      return null;
+    }
+  }
+
+  private static List<String> queue(RedisWriteBatch batch) {
+    RecordingPipeline pipeline = new RecordingPipeline();
+    batch.queue(pipeline);
+    return pipeline.commands;
+  }
+
+  private static byte[] bytes(int length) {
+    return new byte[length];
+  }
+
+  @Test
+  public void isEmptyUntilSomethingIsQueued() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    assertTrue(batch.isEmpty());
+    assertTrue(queue(batch).isEmpty());
+
+    batch.hsetFirst("chunks", "c0", bytes(1));
+    assertFalse(batch.isEmpty());
+  }
+
+  @Test
+  public void coalescesWritesToTheSameHash() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    batch.hset("hash", "a", "1");
+    batch.hset("hash", "b", "2");
+    batch.hset("hash", "a", "3");
+    batch.hdel("hash", "c");
+    batch.hdel("hash", "d");
+
+    assertEquals(Arrays.asList("HDEL hash c d", "HMSET hash a b"), queue(batch));
+  }
+
+  @Test
+  public void laterWritesReplaceEarlierOnes() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    batch.hset("hash", "a", "1");
+    batch.hdel("hash", "a");
+    batch.hdel("hash", "b");
+    batch.hset("hash", "b", bytes(1));
+    batch.set("key", "value");
+    batch.del("key");
+
+    assertEquals(Arrays.asList("DEL key", "HDEL hash a", "HMSET hash b"), queue(batch));
+  }
+
+  @Test
+  public void writesChunksBeforeTheReferenceAndDeletesStaleChunksAfterIt() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    // Queued in the order that a chunked property stages them, with another attribute written first
+    batch.hset("attributes", "other", bytes(1));
+    batch.hdelLast("chunks", "old:0");
+    batch.hdelLast("chunks", "old:1");
+    batch.hsetFirst("chunks", "new:0", bytes(1));
+    batch.hsetFirst("chunks", "new:1", bytes(1));
+    batch.hset("attributes", "big", bytes(1));
+    batch.hdel("attributes", "removed");
+
+    assertEquals(Arrays.asList(
+        "HMSET chunks new:0 new:1",
+        "HDEL attributes removed",
+        "HMSET attributes other big",
+        "HDEL chunks old:0 old:1"
+    ), queue(batch));
+  }
+
+  @Test
+  public void setsCancelDeletesOfTheSameChunk() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    batch.hdelLast("chunks", "c0");
+    batch.hsetFirst("chunks", "c0", bytes(1));
+    batch.hsetFirst("chunks", "c1", bytes(1));
+    batch.hdelLast("chunks", "c1");
+
+    assertEquals(Arrays.asList("HMSET chunks c0", "HDEL chunks c1"), queue(batch));
+  }
+
+  @Test
+  public void deletingAKeyDropsEarlierWritesToIt() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    batch.hsetFirst("chunks", "c0", bytes(1));
+    batch.hdelLast("chunks", "c1");
+    batch.hset("chunks", "c2", "x");
+    batch.del("chunks");
+
+    assertEquals(Collections.singletonList("DEL chunks"), queue(batch));
+  }
+
+  @Test
+  public void sendsEverythingInOrder() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    batch.publish("channel", "message");
+    batch.zadd("index", 1.0, "member");
+    batch.zrem("index", "gone");
+    batch.persist("forever");
+    batch.pexpire("attributes", 1000L);
+    batch.hincrBy("metadata", "VERSION", 1L);
+    batch.hincrBy("metadata", "VERSION", 1L);
+    batch.hdelLast("chunks", "old");
+    batch.hset("attributes", "attr", bytes(1));
+    batch.hset("metadata", "field", "value");
+    batch.set("key", "value");
+    batch.hdel("attributes", "removed");
+    batch.hsetFirst("chunks", "new", bytes(1));
+    batch.del("deleted");
+
+    assertEquals(Arrays.asList(
+        "DEL deleted",
+        "HMSET chunks new",
+        "HDEL attributes removed",
+        "SET key",
+        "HMSET metadata field",
+        "HMSET attributes attr",
+        "HDEL chunks old",
+        "HINCRBY metadata VERSION 2",
+        "PEXPIRE attributes",
+        "PERSIST forever",
+        "ZREM index gone",
+        "ZADD index member",
+        "PUBLISH channel message"
+    ), queue(batch));
+  }
+
+  @Test
+  public void splitsLargeBinaryWrites() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    int half = RedisWriteBatch.MAX_BINARY_HMSET_BYTES / 2;
+    batch.hsetFirst("chunks", "c0", bytes(half));
+    batch.hsetFirst("chunks", "c1", bytes(half));
+    batch.hsetFirst("chunks", "c2", bytes(half));
+    batch.hset("attributes", "huge", bytes(RedisWriteBatch.MAX_BINARY_HMSET_BYTES + 1));
+    batch.hset("attributes", "small", bytes(1));
+
+    assertEquals(Arrays.asList(
+        "HMSET chunks c0 c1",
+        "HMSET chunks c2",
+        "HMSET attributes huge",
+        "HMSET attributes small"
+    ), queue(batch));
+  }
+
+  @Test
+  public void publishesEachMessageOnce() {
+    RedisWriteBatch batch = new RedisWriteBatch();
+    batch.publish("channel", "a");
+    batch.publish("channel", "a");
+    batch.publish("channel", "b");
+
+    assertEquals(Arrays.asList("PUBLISH channel a", "PUBLISH channel b"), queue(batch));
+  }
+
+}
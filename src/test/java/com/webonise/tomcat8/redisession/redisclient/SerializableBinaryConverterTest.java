@@ -0,0 +1,62 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import com.webonise.tomcat8.redisession.serializer.JdkSessionSerializer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SerializableBinaryConverterTest {
+
+  private static final ArrayList<String> VALUE = new ArrayList<>(Arrays.asList("a", "b", "c"));
+
+  private final SerializableBinaryConverter<ArrayList<String>> converter = new SerializableBinaryConverter<>();
+
+  @Test
+  public void tagsTheSerializedBytes() {
+    byte[] bytes = converter.convertToBytes(VALUE);
+
+    assertEquals(SerializableBinaryConverter.TAG, bytes[0]);
+    assertArrayEquals(new JdkSessionSerializer().serialize(VALUE), Arrays.copyOfRange(bytes, 1, bytes.length));
+    assertEquals(VALUE, converter.convertFromBytes(bytes));
+  }
+
+  @Test
+  public void readsLegacyBase64Values() {
+    String legacy = new SerializableConverter<ArrayList<String>>().convertToString(VALUE);
+
+    assertEquals(VALUE, converter.convertFromBytes(legacy.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void writesBase64WhenAskedWhichTheLegacyConverterCanRead() {
+    SerializableBinaryConverter<ArrayList<String>> base64 =
+        new SerializableBinaryConverter<>(new JdkSessionSerializer(), true);
+
+    byte[] bytes = base64.convertToBytes(VALUE);
+
+    assertEquals(VALUE, new SerializableConverter<ArrayList<String>>()
+                            .convertFromString(new String(bytes, StandardCharsets.UTF_8)));
+    assertEquals(VALUE, converter.convertFromBytes(bytes));
+  }
+
+  @Test
+  public void takesUntaggedBytesWhichAreNotBase64AsTheyAre() {
+    byte[] serialized = new JdkSessionSerializer().serialize(VALUE);
+
+    assertArrayEquals(serialized, SerializableBinaryConverter.untag(serialized));
+  }
+
+  @Test
+  public void streamsTaggedAndUntaggedValues() {
+    byte[] tagged = converter.convertToBytes(VALUE);
+    byte[] untagged = Arrays.copyOfRange(tagged, 1, tagged.length);
+
+    assertEquals(VALUE, converter.convertFromStream(new ByteArrayInputStream(tagged)));
+    assertEquals(VALUE, converter.convertFromStream(new ByteArrayInputStream(untagged)));
+  }
+
+}
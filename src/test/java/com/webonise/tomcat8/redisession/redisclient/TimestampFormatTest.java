@@ -0,0 +1,60 @@
+package com.webonise.tomcat8.redisession.redisclient;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+
+import static org.junit.Assert.*;
+
+public class TimestampFormatTest {
+
+  private static final long MILLIS = 1_433_180_096_123L;
+
+  @Test
+  public void writesEpochMillisAsDecimal() throws Exception {
+    assertEquals("1433180096123", TimestampFormat.EPOCH_MILLIS.format(MILLIS));
+    assertEquals(MILLIS, TimestampFormat.parse("1433180096123"));
+  }
+
+  @Test
+  public void writesIso8601ToTheSecond() throws Exception {
+    String formatted = TimestampFormat.ISO_8601.format(MILLIS);
+
+    assertTrue(formatted, formatted.matches("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}[+-]\\d{2}:\\d{2}"));
+    assertEquals(MILLIS - MILLIS % 1000L, TimestampFormat.parse(formatted));
+  }
+
+  @Test
+  public void readsEitherFormatWhicheverIsWritten() throws Exception {
+    assertEquals(0L, TimestampFormat.parse("1970-01-01T00:00:00+00:00"));
+    assertEquals(0L, TimestampFormat.parse("1970-01-01+00:00"));
+    assertEquals(0L, TimestampFormat.parse("0"));
+    assertEquals(-1000L, TimestampFormat.parse("-1000"));
+  }
+
+  @Test(expected = ParseException.class)
+  public void rejectsEpochMillisOutOfRange() throws Exception {
+    TimestampFormat.parse("99999999999999999999");
+  }
+
+  @Test(expected = ParseException.class)
+  public void rejectsValuesInNoFormat() throws Exception {
+    TimestampFormat.parse("yesterday");
+  }
+
+  @Test(expected = ParseException.class)
+  public void rejectsALoneMinusSign() throws Exception {
+    TimestampFormat.parse("-");
+  }
+
+  @Test
+  public void parsesNamesIgnoringCase() {
+    assertEquals(TimestampFormat.EPOCH_MILLIS, TimestampFormat.fromString(" epoch_millis "));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownNames() {
+    TimestampFormat.fromString("RFC_1123");
+  }
+
+}
@@ -0,0 +1,153 @@
+package com.webonise.tomcat8.redisession.serializer;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CompactSessionSerializerTest {
+
+  private final CompactSessionSerializer serializer = new CompactSessionSerializer();
+
+  private static class Custom implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    private Custom(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Custom && ((Custom) o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode();
+    }
+  }
+
+  private Serializable roundTrip(Serializable value) {
+    byte[] bytes = serializer.serialize(value);
+    return serializer.deserialize(bytes);
+  }
+
+  @Test
+  public void roundTripsScalars() {
+    List<Serializable> values = Arrays.asList(
+        "text", "", "\u00e9\u4e2d\ud83d\ude00", true, (byte) -3, (short) 1234, 'x', 42, -7L, 1.5f, -2.25d, new Date(1234567890L)
+    );
+    for (Serializable value : values) {
+      assertEquals(value, roundTrip(value));
+    }
+  }
+
+  @Test
+  public void roundTripsNull() {
+    assertNull(roundTrip(null));
+  }
+
+  @Test
+  public void roundTripsArrays() {
+    assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) roundTrip(new byte[] {1, 2, 3}));
+    assertArrayEquals(new int[] {4, 5}, (int[]) roundTrip(new int[] {4, 5}));
+    assertArrayEquals(new long[] {6L}, (long[]) roundTrip(new long[] {6L}));
+    assertArrayEquals(new String[] {"a", null, "b"}, (String[]) roundTrip(new String[] {"a", null, "b"}));
+    assertArrayEquals(new Object[] {"a", 1, null}, (Object[]) roundTrip(new Object[] {"a", 1, null}));
+  }
+
+  @Test
+  public void roundTripsCollectionsKeepingTheirTypes() {
+    ArrayList<Object> list = new ArrayList<>(Arrays.asList("a", 1, null));
+    LinkedList<Object> linkedList = new LinkedList<>(Arrays.asList(2L, "b"));
+    HashSet<Object> set = new HashSet<>(Arrays.asList("c", 3));
+    LinkedHashSet<Object> linkedSet = new LinkedHashSet<>(Arrays.asList("z", "y", "x"));
+    HashMap<Object, Object> map = new HashMap<>();
+    map.put("key", list);
+    map.put(5, null);
+    LinkedHashMap<Object, Object> linkedMap = new LinkedHashMap<>();
+    linkedMap.put("second", 2);
+    linkedMap.put("first", 1);
+
+    for (Serializable value : Arrays.<Serializable>asList(list, linkedList, set, linkedSet, map, linkedMap)) {
+      Serializable result = roundTrip(value);
+      assertEquals(value, result);
+      assertSame(value.getClass(), result.getClass());
+    }
+    assertEquals(new ArrayList<>(linkedSet), new ArrayList<>((LinkedHashSet<?>) roundTrip(linkedSet)));
+    assertEquals(new ArrayList<>(linkedMap.keySet()),
+                 new ArrayList<>(((LinkedHashMap<?, ?>) roundTrip(linkedMap)).keySet()));
+  }
+
+  @Test
+  public void embedsOtherTypesWithJavaSerialization() {
+    HashMap<String, Object> map = new HashMap<>();
+    map.put("custom", new Custom("embedded"));
+    byte[] bytes = serializer.serialize(map);
+
+    assertTrue(CompactSessionSerializer.isCompactFormat(bytes));
+    assertEquals(map, serializer.deserialize(bytes));
+  }
+
+  @Test
+  public void startsWithMagic() {
+    byte[] bytes = serializer.serialize("value");
+    assertEquals(CompactSessionSerializer.MAGIC, bytes[0]);
+    assertTrue(CompactSessionSerializer.isCompactFormat(bytes));
+  }
+
+  @Test
+  public void writesValuesNestedTooDeeplyWithJavaSerialization() {
+    ArrayList<Object> deepest = new ArrayList<>();
+    ArrayList<Object> outer = deepest;
+    for (int i = 0; i <= CompactSessionSerializer.MAX_DEPTH; i++) {
+      ArrayList<Object> wrapper = new ArrayList<>();
+      wrapper.add(outer);
+      outer = wrapper;
+    }
+    byte[] bytes = serializer.serialize(outer);
+
+    assertFalse(CompactSessionSerializer.isCompactFormat(bytes));
+    assertEquals(outer, serializer.deserialize(bytes));
+  }
+
+  @Test
+  public void writesValuesAtTheDepthLimitCompactly() {
+    ArrayList<Object> outer = new ArrayList<>();
+    for (int i = 1; i < CompactSessionSerializer.MAX_DEPTH; i++) {
+      ArrayList<Object> wrapper = new ArrayList<>();
+      wrapper.add(outer);
+      outer = wrapper;
+    }
+    byte[] bytes = serializer.serialize(outer);
+
+    assertTrue(CompactSessionSerializer.isCompactFormat(bytes));
+    assertEquals(outer, serializer.deserialize(bytes));
+  }
+
+  @Test
+  public void writesCyclicValuesWithJavaSerialization() {
+    ArrayList<Object> cyclic = new ArrayList<>();
+    cyclic.add(cyclic);
+    byte[] bytes = serializer.serialize(cyclic);
+
+    assertFalse(CompactSessionSerializer.isCompactFormat(bytes));
+    ArrayList<?> result = (ArrayList<?>) serializer.deserialize(bytes);
+    assertSame(result, result.get(0));
+  }
+
+  @Test
+  public void readsAndIsReadByTheJdkSerializer() {
+    JdkSessionSerializer jdk = new JdkSessionSerializer();
+    ArrayList<Object> value = new ArrayList<>(Arrays.asList("a", 1, new Date(5L)));
+
+    assertEquals(value, serializer.deserialize(jdk.serialize(value)));
+    assertEquals(value, jdk.deserialize(serializer.serialize(value)));
+    assertEquals(value, jdk.deserialize(new ByteArrayInputStream(serializer.serialize(value))));
+  }
+
+}
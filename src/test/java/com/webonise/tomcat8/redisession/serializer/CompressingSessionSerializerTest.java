@@ -0,0 +1,96 @@
+package com.webonise.tomcat8.redisession.serializer;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CompressingSessionSerializerTest {
+
+  private final JdkSessionSerializer jdk = new JdkSessionSerializer();
+  private final DeflateCompressionCodec deflate = new DeflateCompressionCodec();
+
+  private static ArrayList<String> compressibleValue() {
+    ArrayList<String> value = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) value.add("repetitive item " + (i % 10));
+    return value;
+  }
+
+  @Test
+  public void framesCompressedValuesWithAHeader() {
+    ArrayList<String> value = compressibleValue();
+    byte[] uncompressed = jdk.serialize(value);
+    byte[] bytes = new CompressingSessionSerializer(jdk, deflate, 1).serialize(value);
+
+    assertTrue(CompressingSessionSerializer.isCompressed(bytes));
+    ByteBuffer header = ByteBuffer.wrap(bytes);
+    assertEquals(CompressingSessionSerializer.MAGIC, header.get());
+    assertEquals(DeflateCompressionCodec.ID, header.get());
+    assertEquals(uncompressed.length, header.getInt());
+    assertTrue(bytes.length < uncompressed.length);
+  }
+
+  @Test
+  public void roundTripsCompressedValues() {
+    ArrayList<String> value = compressibleValue();
+    CompressingSessionSerializer serializer = new CompressingSessionSerializer(jdk, deflate, 1);
+    byte[] bytes = serializer.serialize(value);
+
+    assertEquals(value, serializer.deserialize(bytes));
+    assertEquals(value, serializer.deserialize(new ByteArrayInputStream(bytes)));
+  }
+
+  @Test
+  public void leavesValuesBelowTheThresholdAlone() {
+    ArrayList<String> value = compressibleValue();
+    byte[] uncompressed = jdk.serialize(value);
+
+    assertArrayEquals(uncompressed,
+                      new CompressingSessionSerializer(jdk, deflate, uncompressed.length + 1).serialize(value));
+    assertArrayEquals(uncompressed, new CompressingSessionSerializer(jdk, deflate, 0).serialize(value));
+  }
+
+  @Test
+  public void leavesValuesWhichDoNotShrinkAlone() {
+    byte[] random = new byte[4096];
+    new Random(7L).nextBytes(random);
+    byte[] bytes = new CompressingSessionSerializer(jdk, deflate, 1).serialize(random);
+
+    assertFalse(CompressingSessionSerializer.isCompressed(bytes));
+    assertArrayEquals(jdk.serialize(random), bytes);
+  }
+
+  @Test
+  public void readsUncompressedValues() {
+    ArrayList<String> value = compressibleValue();
+    CompressingSessionSerializer serializer = new CompressingSessionSerializer(jdk, deflate, 1);
+    byte[] uncompressed = jdk.serialize(value);
+
+    assertEquals(value, serializer.deserialize(uncompressed));
+    assertEquals(value, serializer.deserialize(new ByteArrayInputStream(uncompressed)));
+    assertEquals("short", serializer.deserialize(new ByteArrayInputStream(jdk.serialize("short"))));
+  }
+
+  @Test
+  public void readsCompressedValuesAfterCompressionIsTurnedOff() {
+    ArrayList<String> value = compressibleValue();
+    byte[] bytes = new CompressingSessionSerializer(jdk, deflate, 1).serialize(value);
+
+    assertEquals(value, new CompressingSessionSerializer(jdk, deflate, 0).deserialize(bytes));
+  }
+
+  @Test
+  public void compressesTheCompactFormat() {
+    CompactSessionSerializer compact = new CompactSessionSerializer();
+    ArrayList<String> value = compressibleValue();
+    CompressingSessionSerializer serializer = new CompressingSessionSerializer(compact, deflate, 1);
+    byte[] bytes = serializer.serialize(value);
+
+    assertTrue(CompressingSessionSerializer.isCompressed(bytes));
+    assertEquals(value, serializer.deserialize(bytes));
+  }
+
+}